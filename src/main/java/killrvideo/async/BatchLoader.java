@@ -0,0 +1,154 @@
+package killrvideo.async;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Collect the distinct keys requested within a short time window and load them together.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The first key of a batch opens a window of <code>windowMicros</code>, the batch is issued when the window closes
+ * or as soon as it holds <code>maxBatchSize</code> keys. Each caller gets the value of its own key, null when the
+ * batch query did not return it. The batch function decides how a batch is read : a batch of partition keys
+ * should be split by replica (see {@link MultiGet#getMapByReplica(String, java.util.Collection, Function)}) rather
+ * than sent as one multi-partition query. The batch sizes are published as histogram
+ * <code>killrvideo.batchloader.&lt;name&gt;.batchSize</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+public class BatchLoader<K, V> {
+
+    /** Loader of a batch of keys, completing with the values found by key. */
+    private final Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction;
+
+    /** Scheduler closing the windows. */
+    private final ScheduledExecutorService scheduler;
+
+    private final long windowMicros;
+
+    private final int maxBatchSize;
+
+    private final Histogram batchSizes;
+
+    /** Guards the batch being collected. */
+    private final Object lock = new Object();
+
+    /** Keys of the batch being collected, with the futures of their callers. */
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    /** End of the window of the batch being collected. */
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Constructor with all parameters.
+     *
+     * @param name
+     *      name of the batched lookup (videos, ratings...), used for metrics
+     * @param batchFunction
+     *      loader of a batch of keys
+     * @param scheduler
+     *      scheduler closing the windows
+     * @param windowMicros
+     *      time during which keys are collected
+     * @param maxBatchSize
+     *      maximum number of keys in a batch
+     * @param metricRegistry
+     *      registry for the batch size histogram
+     */
+    public BatchLoader(String name, Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction,
+                       ScheduledExecutorService scheduler, long windowMicros, int maxBatchSize, MetricRegistry metricRegistry) {
+        this.batchFunction = batchFunction;
+        this.scheduler     = scheduler;
+        this.windowMicros  = windowMicros;
+        this.maxBatchSize  = Math.max(1, maxBatchSize);
+        this.batchSizes    = metricRegistry.histogram(MetricRegistry.name("killrvideo", "batchloader", name, "batchSize"));
+    }
+
+    /**
+     * Load a key with the next batch.
+     *
+     * @param key
+     *      key to load
+     * @return
+     *      value of the key, null if the batch query did not return it
+     */
+    public CompletableFuture<V> load(K key) {
+        CompletableFuture<V> result;
+        Map<K, CompletableFuture<V>> fullBatch = null;
+        synchronized (lock) {
+            result = pending.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                pending.put(key, result);
+            }
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = takePending();
+            } else if (flushTask == null) {
+                flushTask = scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        }
+        return result;
+    }
+
+    /**
+     * Issue the batch being collected when its window closes.
+     */
+    private void flush() {
+        final Map<K, CompletableFuture<V>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    /**
+     * Detach the batch being collected, must be called holding the lock.
+     */
+    private Map<K, CompletableFuture<V>> takePending() {
+        final Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Run the batch query and complete the futures of the callers.
+     */
+    private void dispatch(Map<K, CompletableFuture<V>> batch) {
+        batchSizes.update(batch.size());
+        try {
+            batchFunction.apply(new ArrayList<>(batch.keySet())).whenComplete((values, ex) -> {
+                batch.forEach((key, future) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        future.complete(values.get(key));
+                    }
+                });
+            });
+        } catch (RuntimeException ex) {
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+        }
+    }
+}
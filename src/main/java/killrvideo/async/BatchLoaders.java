@@ -0,0 +1,68 @@
+package killrvideo.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Create the {@link BatchLoader} of single key reads from the <code>killrvideo.batching</code> settings.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Batching is disabled by default : it adds up to one window of latency to every read in exchange for fewer
+ * requests sent to Cassandra, which only pays off under heavy load.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class BatchLoaders {
+
+    @Inject
+    ScheduledExecutorService scheduler;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Value("${killrvideo.batching.enabled: false}")
+    private boolean enabled;
+
+    @Value("${killrvideo.batching.windowMicros: 1000}")
+    private long windowMicros;
+
+    @Value("${killrvideo.batching.maxBatchSize: 20}")
+    private int maxBatchSize;
+
+    /**
+     * Create a batch loader.
+     *
+     * @param name
+     *      name of the batched lookup, used for metrics
+     * @param batchFunction
+     *      loader of a batch of keys, completing with the values found by key
+     * @return
+     *      batch loader using the configured window and batch size
+     */
+    public <K, V> BatchLoader<K, V> create(String name, Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction) {
+        return new BatchLoader<>(name, batchFunction, scheduler, windowMicros, maxBatchSize, metricRegistry);
+    }
+
+    /**
+     * Tell if single key reads should be batched.
+     *
+     * @return
+     *      value of <code>killrvideo.batching.enabled</code>
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
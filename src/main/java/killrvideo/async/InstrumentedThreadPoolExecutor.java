@@ -0,0 +1,66 @@
+package killrvideo.async;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Bounded thread pool publishing its state as metrics under <code>killrvideo.executor.&lt;name&gt;</code> :
+ * queue depth, active and pool thread counts, completed tasks and rejections.
+ *
+ * <br/>
+ * <br/>
+ *
+ * A task submitted while the queue is full is counted as a rejection and run by the submitting thread, so that
+ * a saturated pool slows its callers down instead of failing their futures.
+ *
+ * @author DataStax evangelist team.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Constructor with all parameters.
+     *
+     * @param name
+     *      name of the pool, used for thread names and metrics
+     * @param minThreads
+     *      core number of threads
+     * @param maxThreads
+     *      maximum number of threads, once the queue is full
+     * @param threadsTTLSeconds
+     *      idle time before a thread above the core number is stopped
+     * @param queueSize
+     *      maximum number of tasks waiting for a thread
+     * @param metricRegistry
+     *      registry of the metrics
+     */
+    public InstrumentedThreadPoolExecutor(String name, int minThreads, int maxThreads, int threadsTTLSeconds,
+                                          int queueSize, MetricRegistry metricRegistry) {
+        super(minThreads, maxThreads, threadsTTLSeconds, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new KillrVideoThreadFactory("killrvideo-" + name),
+                countRejections(metricRegistry.counter(MetricRegistry.name("killrvideo", "executor", name, "rejections"))));
+
+        final String prefix = MetricRegistry.name("killrvideo", "executor", name);
+        metricRegistry.register(MetricRegistry.name(prefix, "queueDepth"), (Gauge<Integer>) () -> getQueue().size());
+        metricRegistry.register(MetricRegistry.name(prefix, "active"), (Gauge<Integer>) this::getActiveCount);
+        metricRegistry.register(MetricRegistry.name(prefix, "poolSize"), (Gauge<Integer>) this::getPoolSize);
+        metricRegistry.register(MetricRegistry.name(prefix, "completed"), (Gauge<Long>) this::getCompletedTaskCount);
+    }
+
+    /**
+     * Count rejected tasks, then run them in the submitting thread.
+     */
+    private static RejectedExecutionHandler countRejections(Counter rejections) {
+        final RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        return (task, executor) -> {
+            rejections.inc();
+            callerRuns.rejectedExecution(task, executor);
+        };
+    }
+}
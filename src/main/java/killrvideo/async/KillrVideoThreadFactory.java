@@ -20,16 +20,30 @@ public class KillrVideoThreadFactory implements ThreadFactory {
     /** Counter keeping track of thread number in executor. */
     private final AtomicInteger threadNumber = new AtomicInteger(10);
     
+    /** Prefix of the thread names. */
+    private final String namePrefix;
+    
     /**
      * Default constructor required for reflection.
      */
     public KillrVideoThreadFactory() {
+        this("killrvideo-default-executor");
+    }
+
+    /**
+     * Constructor with the prefix of the thread names.
+     *
+     * @param namePrefix
+     *      prefix of the thread names
+     */
+    public KillrVideoThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
     }
 
     /** {@inheritDoc} */
     public Thread newThread(Runnable r) {
         Thread thread = new Thread(r);
-        thread.setName("killrvideo-default-executor-" + this.threadNumber.incrementAndGet());
+        thread.setName(namePrefix + "-" + this.threadNumber.incrementAndGet());
         thread.setDaemon(true);
         thread.setUncaughtExceptionHandler(this.uncaughtExceptionHandler);
         return thread;
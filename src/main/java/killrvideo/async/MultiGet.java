@@ -0,0 +1,230 @@
+package killrvideo.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.collect.Lists;
+
+/**
+ * Load a list of entities by id (video ids, user ids...) with a bounded number of requests in flight.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Ids are deduplicated before being loaded and results are returned in the order of the requested ids,
+ * <code>null</code> standing for ids without result. Two flavours are available:
+ * <ul>
+ *     <li>{@link #getAll(List, Function)} loads each id with its own single-partition query, routed to a
+ *     replica by the token aware load balancing policy</li>
+ *     <li>{@link #getAllByReplica(String, List, Function)} groups the ids owned by the same replicas and loads
+ *     each group (split in batches of <code>killrvideo.multiget.maxBatchSize</code> ids) with one query,
+ *     instead of a single <code>IN</code> clause spanning the whole cluster</li>
+ * </ul>
+ *
+ * The number of queries in flight is capped for the whole application by
+ * <code>killrvideo.multiget.maxInFlight</code>, extra queries wait for a slot. Waiting queries are started by a
+ * single thread at a time, so loaders completing synchronously (cache hits) do not recurse into the queue.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class MultiGet {
+
+    @Inject
+    DseSession dseSession;
+
+    @Value("${killrvideo.multiget.maxInFlight: 64}")
+    private int maxInFlight;
+
+    @Value("${killrvideo.multiget.maxBatchSize: 10}")
+    private int maxBatchSize;
+
+    /** Queries in flight. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** Queries waiting for a slot. */
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /** Drain requests not yet handled, the thread moving it from 0 drains for the others. */
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    /**
+     * Load entities one id at a time.
+     *
+     * @param ids
+     *      requested ids, may contain duplicates
+     * @param loader
+     *      single id loader, completing with null when there is no entity
+     * @return
+     *      entities in the order of the requested ids
+     */
+    public <T> CompletableFuture<List<T>> getAll(List<UUID> ids, Function<UUID, CompletableFuture<T>> loader) {
+        final Map<UUID, T> results = new ConcurrentHashMap<>();
+        final List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (UUID id : new LinkedHashSet<>(ids)) {
+            futures.add(submit(() -> loader.apply(id)).thenApply(entity -> {
+                if (entity != null) {
+                    results.put(id, entity);
+                }
+                return entity;
+            }));
+        }
+        return allOf(futures).thenApply(v -> inRequestOrder(ids, results));
+    }
+
+    /**
+     * Load entities by groups of ids owned by the same replicas.
+     *
+     * @param keyspace
+     *      keyspace of the table, used to find the replicas of each id (partition key)
+     * @param ids
+     *      requested ids, may contain duplicates
+     * @param batchLoader
+     *      loader of a group of ids, completing with the entities found by id
+     * @return
+     *      entities in the order of the requested ids
+     */
+    public <T> CompletableFuture<List<T>> getAllByReplica(String keyspace, List<UUID> ids, Function<List<UUID>, CompletableFuture<Map<UUID, T>>> batchLoader) {
+        return getMapByReplica(keyspace, ids, batchLoader).thenApply(results -> inRequestOrder(ids, results));
+    }
+
+    /**
+     * Load entities by groups of ids owned by the same replicas, like
+     * {@link #getAllByReplica(String, List, Function)}, for callers needing the entities by id.
+     *
+     * @param keyspace
+     *      keyspace of the table, used to find the replicas of each id (partition key)
+     * @param ids
+     *      requested ids, may contain duplicates
+     * @param batchLoader
+     *      loader of a group of ids, completing with the entities found by id
+     * @return
+     *      entities found, by id
+     */
+    public <T> CompletableFuture<Map<UUID, T>> getMapByReplica(String keyspace, Collection<UUID> ids, Function<List<UUID>, CompletableFuture<Map<UUID, T>>> batchLoader) {
+        final Map<UUID, T> results = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Map<UUID, T>>> futures = new ArrayList<>();
+        for (List<UUID> group : groupByReplicas(keyspace, new LinkedHashSet<>(ids))) {
+            for (List<UUID> batch : Lists.partition(group, Math.max(1, maxBatchSize))) {
+                futures.add(submit(() -> batchLoader.apply(batch)).thenApply(entities -> {
+                    results.putAll(entities);
+                    return entities;
+                }));
+            }
+        }
+        return allOf(futures).thenApply(v -> results);
+    }
+
+    /**
+     * Group ids (partition keys) by the set of replicas owning them.
+     */
+    private List<List<UUID>> groupByReplicas(String keyspace, Set<UUID> ids) {
+        final Metadata metadata = dseSession.getCluster().getMetadata();
+        final ProtocolVersion protocolVersion = dseSession.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion();
+        final Map<Set<Host>, List<UUID>> groups = new LinkedHashMap<>();
+        for (UUID id : ids) {
+            final Set<Host> replicas = metadata.getReplicas(keyspace, TypeCodec.uuid().serialize(id, protocolVersion));
+            groups.computeIfAbsent(replicas, k -> new ArrayList<>()).add(id);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Run a query as soon as there is a free slot.
+     */
+    private <R> CompletableFuture<R> submit(Supplier<CompletableFuture<R>> query) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        waiting.add(() -> {
+            try {
+                query.get().whenComplete((r, ex) -> {
+                    release();
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(r);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                release();
+                result.completeExceptionally(ex);
+            }
+        });
+        drain();
+        return result;
+    }
+
+    /**
+     * Free a slot and start the next waiting query.
+     */
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Start waiting queries while there are free slots. Not reentrant : a call made while another thread (or a query
+     * completing synchronously in the same thread) is draining only makes that drain loop once more.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (!waiting.isEmpty()) {
+                final int current = inFlight.get();
+                if (current >= maxInFlight) {
+                    break;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    final Runnable next = waiting.poll();
+                    if (next == null) {
+                        inFlight.decrementAndGet();
+                    } else {
+                        next.run();
+                    }
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static <R> CompletableFuture<Void> allOf(List<CompletableFuture<R>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private static <T> List<T> inRequestOrder(List<UUID> ids, Map<UUID, T> results) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<T> ordered = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            ordered.add(results.get(id));
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,344 @@
+package killrvideo.async;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.PagingIterable;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Stream the rows of successive queries to a gRPC client, honoring its flow control.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Rows are sent while the client is ready to receive them. The next page of the current query (or the next query
+ * once the current one is exhausted) is only fetched when the rows already read have been sent, so that a slow
+ * client does not make the server buffer rows. The stream completes after the last row of the last query, or after
+ * <code>limit</code> rows.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Rows are either mapped to entities by a driver {@link Mapper} before being converted into messages, or converted
+ * straight from the {@link Row} (see {@link #ofRows(ServerCallStreamObserver, DseSession, Iterator, Function, long)}).
+ * The queries may also be known only once a first read completed (see
+ * {@link #ofRows(ServerCallStreamObserver, DseSession, CompletableFuture, Function, long)}).
+ *
+ * <br/>
+ * <br/>
+ *
+ * Queries may be run by groups, like the shards of a partition (see
+ * {@link #ResultStreamer(ServerCallStreamObserver, DseSession, Mapper, Iterator, Comparator, Function, long)}) : the
+ * queries of a group are run at once and their rows are merged in the order of the group, a page of a query being
+ * fetched as soon as its rows are needed to know which row comes next.
+ *
+ * @author DataStax evangelist team.
+ */
+public class ResultStreamer<E, T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultStreamer.class);
+
+    private final ServerCallStreamObserver<T> responseObserver;
+
+    private final DseSession dseSession;
+
+    /** Reading of the rows of a query, mapped or raw. */
+    private final Function<ResultSetFuture, ListenableFuture<? extends PagingIterable<?, E>>> reader;
+
+    /**
+     * Groups of queries to run in order, the fetch size of each statement being the number of rows read per round
+     * trip.
+     */
+    private final CompletableFuture<? extends Iterator<? extends List<? extends Statement>>> pendingQueries;
+
+    /** Groups of queries, once known. */
+    private Iterator<? extends List<? extends Statement>> queries;
+
+    /** Order of the rows of a group, null to send the rows of its queries one query after the other. */
+    private final Comparator<? super E> order;
+
+    private final Function<E, T> toMessage;
+
+    /** Maximum number of messages, 0 for no limit. */
+    private final long limit;
+
+    /** Rows of the queries of the current group. */
+    private List<QueryRows<E>> current = Collections.emptyList();
+
+    /** Set while a query or a page is being read. */
+    private boolean fetching;
+
+    private boolean finished;
+
+    private long sent;
+
+    /**
+     * Constructor with all parameters.
+     *
+     * @param responseObserver
+     *      server side of the gRPC stream
+     * @param dseSession
+     *      session running the queries
+     * @param mapper
+     *      mapper of the rows
+     * @param queries
+     *      queries to stream, in order
+     * @param toMessage
+     *      conversion of an entity into a message
+     * @param limit
+     *      maximum number of messages, 0 for no limit
+     */
+    public ResultStreamer(ServerCallStreamObserver<T> responseObserver, DseSession dseSession, Mapper<E> mapper,
+                          Iterator<? extends Statement> queries, Function<E, T> toMessage, long limit) {
+        this(responseObserver, dseSession, mapper::mapAsync, CompletableFuture.completedFuture(alone(queries)), null,
+                toMessage, limit);
+    }
+
+    /**
+     * Stream groups of queries, the rows of the queries of a group being merged.
+     *
+     * @param responseObserver
+     *      server side of the gRPC stream
+     * @param dseSession
+     *      session running the queries
+     * @param mapper
+     *      mapper of the rows
+     * @param queryGroups
+     *      groups of queries to stream, in order, the rows of each query being in <code>order</code>
+     * @param order
+     *      order of the rows of a group
+     * @param toMessage
+     *      conversion of an entity into a message
+     * @param limit
+     *      maximum number of messages, 0 for no limit
+     */
+    public ResultStreamer(ServerCallStreamObserver<T> responseObserver, DseSession dseSession, Mapper<E> mapper,
+                          Iterator<? extends List<? extends Statement>> queryGroups, Comparator<? super E> order,
+                          Function<E, T> toMessage, long limit) {
+        this(responseObserver, dseSession, mapper::mapAsync, CompletableFuture.completedFuture(queryGroups), order,
+                toMessage, limit);
+    }
+
+    private ResultStreamer(ServerCallStreamObserver<T> responseObserver, DseSession dseSession,
+                           Function<ResultSetFuture, ListenableFuture<? extends PagingIterable<?, E>>> reader,
+                           CompletableFuture<? extends Iterator<? extends List<? extends Statement>>> pendingQueries,
+                           Comparator<? super E> order, Function<E, T> toMessage, long limit) {
+        this.responseObserver = responseObserver;
+        this.dseSession       = dseSession;
+        this.reader           = reader;
+        this.pendingQueries   = pendingQueries;
+        this.order            = order;
+        this.toMessage        = toMessage;
+        this.limit            = limit;
+    }
+
+    /**
+     * Stream raw rows, converted into messages without an intermediate entity.
+     *
+     * @param responseObserver
+     *      server side of the gRPC stream
+     * @param dseSession
+     *      session running the queries
+     * @param queries
+     *      queries to stream, in order
+     * @param toMessage
+     *      conversion of a row into a message
+     * @param limit
+     *      maximum number of messages, 0 for no limit
+     * @return
+     *      streamer, to be started
+     */
+    public static <T> ResultStreamer<Row, T> ofRows(ServerCallStreamObserver<T> responseObserver, DseSession dseSession,
+                                                   Iterator<? extends Statement> queries, Function<Row, T> toMessage, long limit) {
+        return ofRows(responseObserver, dseSession, CompletableFuture.completedFuture(queries), toMessage, limit);
+    }
+
+    /**
+     * Stream raw rows of queries which are not known yet.
+     *
+     * @param responseObserver
+     *      server side of the gRPC stream
+     * @param dseSession
+     *      session running the queries
+     * @param pendingQueries
+     *      queries to stream, in order, once known
+     * @param toMessage
+     *      conversion of a row into a message
+     * @param limit
+     *      maximum number of messages, 0 for no limit
+     * @return
+     *      streamer, to be started
+     */
+    public static <T> ResultStreamer<Row, T> ofRows(ServerCallStreamObserver<T> responseObserver, DseSession dseSession,
+                                                   CompletableFuture<? extends Iterator<? extends Statement>> pendingQueries,
+                                                   Function<Row, T> toMessage, long limit) {
+        return new ResultStreamer<Row, T>(responseObserver, dseSession, rs -> rs,
+                pendingQueries.thenApply(ResultStreamer::alone), null, toMessage, limit);
+    }
+
+    /**
+     * Queries run one at a time, each in its own group.
+     */
+    private static Iterator<List<Statement>> alone(Iterator<? extends Statement> queries) {
+        return Iterators.transform(queries, Collections::singletonList);
+    }
+
+    /**
+     * Start streaming, must be called by the gRPC service method before it returns.
+     */
+    public void start() {
+        responseObserver.setOnCancelHandler(this::onCancel);
+        responseObserver.setOnReadyHandler(this::drain);
+        synchronized (this) {
+            fetching = true;
+        }
+        pendingQueries.whenComplete(this::onQueries);
+    }
+
+    /**
+     * Start sending once the queries are known.
+     */
+    private synchronized void onQueries(Iterator<? extends List<? extends Statement>> knownQueries, Throwable ex) {
+        fetching = false;
+        if (finished) {
+            return;
+        }
+        if (ex != null) {
+            fail(ex);
+            return;
+        }
+        queries = knownQueries;
+        drain();
+    }
+
+    /**
+     * Send rows while the client is ready, fetching more when the rows read have all been sent.
+     */
+    private synchronized void drain() {
+        while (!finished && !fetching && responseObserver.isReady()) {
+            if (limit > 0 && sent >= limit) {
+                complete();
+                continue;
+            }
+
+            // Next row of the current group, unless a page must be read to know it
+            QueryRows<E> next = null;
+            QueryRows<E> toFetch = null;
+            for (QueryRows<E> query : current) {
+                if (query.head == null && query.rows.getAvailableWithoutFetching() > 0) {
+                    query.head = query.rows.one();
+                }
+                if (query.head == null && !query.rows.isFullyFetched()) {
+                    toFetch = query;
+                    break;
+                }
+                if (query.head != null && (next == null || order == null || order.compare(query.head, next.head) < 0)) {
+                    next = query;
+                }
+                if (next != null && order == null) {
+                    break;
+                }
+            }
+
+            if (toFetch != null) {
+                fetching = true;
+                FutureUtils.buildCompletableFuture(toFetch.rows.fetchMoreResults())
+                        .whenComplete((rs, ex) -> onFetched(null, ex));
+
+            } else if (next != null) {
+                responseObserver.onNext(toMessage.apply(next.head));
+                next.head = null;
+                sent++;
+
+            } else if (queries.hasNext()) {
+                fetching = true;
+                final List<CompletableFuture<? extends PagingIterable<?, E>>> group = new ArrayList<>();
+                for (Statement query : queries.next()) {
+                    group.add(FutureUtils.buildCompletableFuture(reader.apply(dseSession.executeAsync(query))));
+                }
+                CompletableFuture.allOf(group.toArray(new CompletableFuture[group.size()]))
+                        .whenComplete((v, ex) -> onFetched(group, ex));
+
+            } else {
+                complete();
+            }
+        }
+    }
+
+    /**
+     * Resume sending once the queries of a group or a page have been read.
+     *
+     * @param group
+     *      results of the queries of a new group, null when a page of the current group was read
+     * @param ex
+     *      failure of a read
+     */
+    private synchronized void onFetched(List<CompletableFuture<? extends PagingIterable<?, E>>> group, Throwable ex) {
+        fetching = false;
+        if (finished) {
+            return;
+        }
+        if (ex != null) {
+            fail(ex);
+            return;
+        }
+        if (group != null) {
+            current = new ArrayList<>(group.size());
+            group.forEach(result -> current.add(new QueryRows<>(result.join())));
+        }
+        drain();
+    }
+
+    private void fail(Throwable ex) {
+        LOGGER.error("Exception streaming results : " + mergeStackTrace(ex));
+        finished = true;
+        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+    }
+
+    private void complete() {
+        finished = true;
+        responseObserver.onCompleted();
+        LOGGER.debug("End streaming results, " + sent + " sent");
+    }
+
+    private synchronized void onCancel() {
+        finished = true;
+        LOGGER.debug("Streaming cancelled by client after " + sent + " results");
+    }
+
+    /**
+     * Rows of a query of the current group, and its next row once read.
+     */
+    private static final class QueryRows<E> {
+
+        private final PagingIterable<?, E> rows;
+
+        /** Next row of the query, read but not sent yet. */
+        private E head;
+
+        private QueryRows(PagingIterable<?, E> rows) {
+            this.rows = rows;
+        }
+    }
+}
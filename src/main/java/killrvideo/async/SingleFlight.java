@@ -0,0 +1,100 @@
+package killrvideo.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Coalesce concurrent lookups of the same key : while a load is in flight for a key, other lookups of this key
+ * share its result instead of issuing their own query. Nothing is kept once the load completed, so a loader filling
+ * a cache must do it before the future it returns completes, or a lookup issued in between loads the key again.
+ * Each lookup gets its own future, cancelling or completing it does not affect the other lookups.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Counters <code>killrvideo.singleflight.&lt;name&gt;.loads</code> and
+ * <code>killrvideo.singleflight.&lt;name&gt;.merged</code> count the loads issued and the lookups merged into
+ * a load already in flight.
+ *
+ * @author DataStax evangelist team.
+ */
+public class SingleFlight<K, V> {
+
+    /** Loads in flight by key. */
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /** Loads issued. */
+    private final Counter loads;
+
+    /** Lookups sharing a load already in flight. */
+    private final Counter merged;
+
+    /**
+     * Constructor with the name used for metrics.
+     *
+     * @param name
+     *      name of the coalesced lookup (videos, ratings...)
+     * @param metricRegistry
+     *      registry for the counters
+     */
+    public SingleFlight(String name, MetricRegistry metricRegistry) {
+        this.loads  = metricRegistry.counter(MetricRegistry.name("killrvideo", "singleflight", name, "loads"));
+        this.merged = metricRegistry.counter(MetricRegistry.name("killrvideo", "singleflight", name, "merged"));
+    }
+
+    /**
+     * Lookup a key, joining the load in flight for this key if any.
+     *
+     * @param key
+     *      key to load
+     * @param loader
+     *      load of a key, called only when no load is in flight for it
+     * @return
+     *      future of this lookup, completed with the result of the load shared by all concurrent lookups of this key
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        final CompletableFuture<V> load = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            merged.inc();
+            return dependentCopy(existing);
+        }
+
+        loads.inc();
+        try {
+            loader.apply(key).whenComplete((value, ex) -> {
+                // Remove before completing so that lookups issued after completion load a fresh value
+                inFlight.remove(key, load);
+                if (ex != null) {
+                    load.completeExceptionally(ex);
+                } else {
+                    load.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, load);
+            load.completeExceptionally(ex);
+        }
+        return dependentCopy(load);
+    }
+
+    /**
+     * Future completed like a shared load, with the same exception and not a CompletionException wrapping it.
+     */
+    private static <V> CompletableFuture<V> dependentCopy(CompletableFuture<V> load) {
+        final CompletableFuture<V> copy = new CompletableFuture<>();
+        load.whenComplete((value, ex) -> {
+            if (ex != null) {
+                copy.completeExceptionally(ex);
+            } else {
+                copy.complete(value);
+            }
+        });
+        return copy;
+    }
+}
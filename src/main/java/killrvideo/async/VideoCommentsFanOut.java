@@ -0,0 +1,198 @@
+package killrvideo.async;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.Subscribe;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.comments.events.CommentsEvents.UserCommentedOnVideo;
+
+/**
+ * Push the comments posted through this instance to the gRPC subscribers of their video.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Subscribers are registered by video. Each of them has a buffer of
+ * <code>killrvideo.services.comment.subscriptions.bufferSize</code> comments, drained while its stream is ready :
+ * a subscriber whose buffer is full is dropped with <code>RESOURCE_EXHAUSTED</code>, so that a slow client never
+ * stalls the event bus. At most <code>killrvideo.services.comment.subscriptions.maxSubscribers</code> streams are
+ * open at once. Comments posted through other instances are not received. Subscriber, delivery and drop counts are
+ * published under <code>killrvideo.subscriptions.comments</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class VideoCommentsFanOut {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoCommentsFanOut.class);
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Value("${killrvideo.services.comment.subscriptions.bufferSize: 100}")
+    private int bufferSize;
+
+    @Value("${killrvideo.services.comment.subscriptions.maxSubscribers: 10000}")
+    private int maxSubscribers;
+
+    /** Subscribers by video. */
+    private final Map<UUID, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /** Open streams, all videos included. */
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private Counter delivered;
+
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = MetricRegistry.name("killrvideo", "subscriptions", "comments");
+        metricRegistry.register(MetricRegistry.name(prefix, "subscribers"), (Gauge<Integer>) subscriberCount::get);
+        delivered = metricRegistry.counter(MetricRegistry.name(prefix, "delivered"));
+        dropped   = metricRegistry.counter(MetricRegistry.name(prefix, "dropped"));
+    }
+
+    /**
+     * Register a stream until it is cancelled, must be called by the gRPC service method before it returns.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @param responseObserver
+     *      server side of the gRPC stream
+     */
+    public void subscribe(UUID videoId, ServerCallStreamObserver<VideoComment> responseObserver) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                    .withDescription("Too many comment subscriptions")
+                    .asRuntimeException());
+            return;
+        }
+        final Subscriber subscriber = new Subscriber(videoId, responseObserver);
+        responseObserver.setOnCancelHandler(() -> unsubscribe(subscriber));
+        responseObserver.setOnReadyHandler(subscriber::drain);
+        // Added under the lock of the entry, so that the unsubscription of the last subscriber cannot remove it first
+        subscribers.compute(videoId, (id, videoSubscribers) -> {
+            final Set<Subscriber> registered = (videoSubscribers == null) ? ConcurrentHashMap.newKeySet() : videoSubscribers;
+            registered.add(subscriber);
+            return registered;
+        });
+        // A stream cancelled before it was registered will not call the cancel handler again
+        if (responseObserver.isCancelled()) {
+            unsubscribe(subscriber);
+            return;
+        }
+
+        LOGGER.debug("New subscriber to comments of video {}", videoId);
+    }
+
+    /**
+     * Make @Subscribe subscriber magic happen anytime a comment is posted from
+     * CommentsService.commentOnVideo() with a call to eventBus.post().
+     * @param userCommentedOnVideo
+     */
+    @Subscribe
+    public void handle(UserCommentedOnVideo userCommentedOnVideo) {
+        final Set<Subscriber> videoSubscribers = subscribers.get(UUID.fromString(userCommentedOnVideo.getVideoId().getValue()));
+        if (videoSubscribers == null || videoSubscribers.isEmpty()) {
+            return;
+        }
+        final VideoComment comment = VideoComment.newBuilder()
+                .setCommentId(userCommentedOnVideo.getCommentId())
+                .setUserId(userCommentedOnVideo.getUserId())
+                .setComment(userCommentedOnVideo.getComment())
+                .setCommentTimestamp(userCommentedOnVideo.getCommentTimestamp())
+                .build();
+        for (Subscriber subscriber : videoSubscribers) {
+            subscriber.push(comment);
+        }
+    }
+
+    /**
+     * Remove a subscriber, and the entry of its video with the last one.
+     */
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.videoId, (id, videoSubscribers) -> {
+            if (videoSubscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return videoSubscribers.isEmpty() ? null : videoSubscribers;
+        });
+    }
+
+    /**
+     * Stream of a client and the comments it has not received yet.
+     */
+    private final class Subscriber {
+
+        private final UUID videoId;
+
+        private final ServerCallStreamObserver<VideoComment> responseObserver;
+
+        /** Comments waiting for the stream to be ready, guarded by this. */
+        private final Queue<VideoComment> buffer = new ArrayDeque<>();
+
+        /** Set once dropped, guarded by this. */
+        private boolean closed;
+
+        private Subscriber(UUID videoId, ServerCallStreamObserver<VideoComment> responseObserver) {
+            this.videoId          = videoId;
+            this.responseObserver = responseObserver;
+        }
+
+        /**
+         * Buffer a comment then send what the stream accepts, dropping the subscriber if its buffer is full.
+         */
+        private void push(VideoComment comment) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (buffer.size() < bufferSize) {
+                    buffer.add(comment);
+                    drain();
+                    return;
+                }
+                closed = true;
+                buffer.clear();
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Subscriber too slow, " + bufferSize + " comments pending")
+                        .asRuntimeException());
+            }
+            dropped.inc();
+            unsubscribe(this);
+            LOGGER.info("Slow subscriber to comments of video {} dropped", videoId);
+        }
+
+        /**
+         * Send buffered comments while the stream is ready.
+         */
+        private synchronized void drain() {
+            while (!closed && !buffer.isEmpty() && responseObserver.isReady() && !responseObserver.isCancelled()) {
+                responseObserver.onNext(buffer.poll());
+                delivered.inc();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package killrvideo.async;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Group writes targeting the same partition into single-partition UNLOGGED batches.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Writes are buffered for <code>windowMillis</code> milliseconds after the first write of a window, then each
+ * partition is written with one batch. A partition reaching <code>maxBatchSize</code> writes is flushed right away.
+ * The future of every write completes with the result of its batch. Batch sizes and the number of writes not yet
+ * acknowledged are published under <code>killrvideo.coalescer.&lt;name&gt;</code>.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Batches are not atomic across partitions : a write spanning several partitions (or tables) has to handle the
+ * failure of some of its statements.
+ *
+ * @author DataStax evangelist team.
+ */
+public class WriteCoalescer {
+
+    private final DseSession dseSession;
+
+    private final ScheduledExecutorService scheduler;
+
+    /** Buffering delay. */
+    private final long windowMillis;
+
+    /** Maximum number of statements of a batch. */
+    private final int maxBatchSize;
+
+    /** Buffered writes by partition, guarded by this. */
+    private final Map<Object, List<PendingWrite>> buffer = new LinkedHashMap<>();
+
+    /** Set while a flush of the buffer is scheduled, guarded by this. */
+    private boolean flushScheduled;
+
+    /** Writes not yet acknowledged. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Histogram batchSizes;
+
+    /**
+     * Constructor with all parameters.
+     *
+     * @param name
+     *      name of the coalescer, used for metrics
+     * @param dseSession
+     *      session running the batches
+     * @param scheduler
+     *      scheduler of the flushes
+     * @param windowMillis
+     *      buffering delay
+     * @param maxBatchSize
+     *      maximum number of statements of a batch
+     * @param metricRegistry
+     *      registry of the metrics
+     */
+    public WriteCoalescer(String name, DseSession dseSession, ScheduledExecutorService scheduler,
+                          long windowMillis, int maxBatchSize, MetricRegistry metricRegistry) {
+        this.dseSession   = dseSession;
+        this.scheduler    = scheduler;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+
+        final String prefix = MetricRegistry.name("killrvideo", "coalescer", name);
+        metricRegistry.register(MetricRegistry.name(prefix, "pending"), (Gauge<Integer>) pending::get);
+        batchSizes = metricRegistry.histogram(MetricRegistry.name(prefix, "batchSize"));
+    }
+
+    /**
+     * Buffer a write.
+     *
+     * @param partitionKey
+     *      key of the partition written, including the table (equals and hashCode are used for grouping)
+     * @param statement
+     *      statement writing in this partition only
+     * @return
+     *      future completed once the batch holding the statement is written
+     */
+    public CompletableFuture<Void> write(Object partitionKey, Statement statement) {
+        final PendingWrite write = new PendingWrite(statement);
+        pending.incrementAndGet();
+
+        List<PendingWrite> fullBatch = null;
+        synchronized (this) {
+            final List<PendingWrite> partition = buffer.computeIfAbsent(partitionKey, k -> new ArrayList<>());
+            partition.add(write);
+            if (partition.size() >= maxBatchSize) {
+                fullBatch = buffer.remove(partitionKey);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            execute(fullBatch);
+        }
+        return write.future;
+    }
+
+    /**
+     * Write every buffered partition.
+     */
+    private void flush() {
+        final List<List<PendingWrite>> batches;
+        synchronized (this) {
+            flushScheduled = false;
+            batches = new ArrayList<>(buffer.values());
+            buffer.clear();
+        }
+        batches.forEach(this::execute);
+    }
+
+    /**
+     * Write the statements of a partition, a single statement being sent as is.
+     */
+    private void execute(List<PendingWrite> writes) {
+        final Statement statement;
+        if (writes.size() == 1) {
+            statement = writes.get(0).statement;
+        } else {
+            final BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            writes.forEach(write -> batch.add(write.statement));
+            if (writes.get(0).statement.getConsistencyLevel() != null) {
+                batch.setConsistencyLevel(writes.get(0).statement.getConsistencyLevel());
+            }
+            statement = batch;
+        }
+        batchSizes.update(writes.size());
+
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
+                .whenComplete((rs, ex) -> writes.forEach(write -> {
+                    pending.decrementAndGet();
+                    if (ex != null) {
+                        write.future.completeExceptionally(ex);
+                    } else {
+                        write.future.complete(null);
+                    }
+                }));
+    }
+
+    /**
+     * Buffered statement and the future of its caller.
+     */
+    private static final class PendingWrite {
+
+        private final Statement statement;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Statement statement) {
+            this.statement = statement;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package killrvideo.async;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.eventbus.EventBus;
+
+import killrvideo.dao.event.CassandraMutationError;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Local outbox completing the writes left behind by a partially failed multi-table mutation.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Statements are retried on the shared scheduler with an exponential backoff. They must be idempotent and carry
+ * their own write timestamp so that a retry always produces the same cells as the original write. After
+ * <code>killrvideo.outbox.maxAttempts</code> attempts the write is given up and a {@link CassandraMutationError} is
+ * posted on the bus. The outbox is in memory only : writes still pending when the instance stops are lost.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class WriteOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteOutbox.class);
+
+    @Inject
+    DseSession dseSession;
+
+    @Inject
+    ScheduledExecutorService scheduler;
+
+    @Inject
+    EventBus eventBus;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Value("${killrvideo.outbox.maxAttempts: 10}")
+    private int maxAttempts;
+
+    @Value("${killrvideo.outbox.retryDelayMillis: 500}")
+    private long retryDelayMillis;
+
+    /** Writes waiting for a successful retry. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private Counter retries;
+
+    private Counter abandoned;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = MetricRegistry.name("killrvideo", "outbox");
+        metricRegistry.register(MetricRegistry.name(prefix, "pending"), (Gauge<Integer>) pending::get);
+        retries   = metricRegistry.counter(MetricRegistry.name(prefix, "retries"));
+        abandoned = metricRegistry.counter(MetricRegistry.name(prefix, "abandoned"));
+    }
+
+    /**
+     * Retry a failed write until it succeeds.
+     *
+     * @param request
+     *      request at the origin of the write, reported if the write is given up
+     * @param statement
+     *      idempotent statement with a default timestamp
+     */
+    public void add(Object request, Statement statement) {
+        pending.incrementAndGet();
+        scheduleRetry(request, statement, 1);
+    }
+
+    /**
+     * Schedule an attempt, the delay doubling at each attempt.
+     */
+    private void scheduleRetry(Object request, Statement statement, int attempt) {
+        final long delay = retryDelayMillis << Math.min(attempt - 1, 6);
+        scheduler.schedule(() -> retry(request, statement, attempt), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Execute a statement again.
+     */
+    private void retry(Object request, Statement statement, int attempt) {
+        retries.inc();
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
+                .whenComplete((rs, ex) -> {
+                    if (ex == null) {
+                        pending.decrementAndGet();
+                        LOGGER.debug("Outbox write succeeded after " + attempt + " attempt(s)");
+
+                    } else if (attempt >= maxAttempts) {
+                        pending.decrementAndGet();
+                        abandoned.inc();
+                        LOGGER.error("Outbox write given up after " + attempt + " attempts : " + mergeStackTrace(ex));
+                        eventBus.post(new CassandraMutationError(request, ex));
+
+                    } else {
+                        scheduleRetry(request, statement, attempt + 1);
+                    }
+                });
+    }
+}
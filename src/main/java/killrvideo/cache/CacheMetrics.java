@@ -0,0 +1,37 @@
+package killrvideo.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+
+/**
+ * Utility class publishing the statistics of the Guava caches.
+ *
+ * @author DataStax evangelist team.
+ */
+public class CacheMetrics {
+
+    /**
+     * Hide constructor.
+     */
+    private CacheMetrics() {}
+
+    /**
+     * Publish hit, miss and eviction counts, hit ratio and size of a cache as gauges. The cache must be built with
+     * <code>recordStats()</code>.
+     *
+     * @param metricRegistry
+     *      registry of the metrics
+     * @param prefix
+     *      name prefix of the gauges, like <code>killrvideo.cache.videos</code>
+     * @param cache
+     *      cache to publish
+     */
+    public static void register(MetricRegistry metricRegistry, String prefix, Cache<?, ?> cache) {
+        metricRegistry.register(MetricRegistry.name(prefix, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        metricRegistry.register(MetricRegistry.name(prefix, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        metricRegistry.register(MetricRegistry.name(prefix, "evictions"), (Gauge<Long>) () -> cache.stats().evictionCount());
+        metricRegistry.register(MetricRegistry.name(prefix, "hitRatio"), (Gauge<Double>) () -> cache.stats().hitRate());
+        metricRegistry.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) cache::size);
+    }
+}
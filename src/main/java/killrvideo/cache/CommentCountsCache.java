@@ -0,0 +1,144 @@
+package killrvideo.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import killrvideo.dao.dse.CommentDseDao;
+
+/**
+ * Read-through cache of the comment counters of the videos (table 'comment_counts_by_video'), bounded by
+ * <code>killrvideo.cache.commentCounts.maxVideos</code> videos.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Misses of a request are read together from Cassandra (see {@link CommentDseDao#findCommentCountsAsync(List)}),
+ * cached counts are invalidated by the comments posted through this instance once their counter is written : a read
+ * cannot tell whether it already saw the new comment, adding it to the cached count could count it twice. A count
+ * read while a comment of its video was counted is returned but not cached, it may miss that comment.
+ * Comments posted through other instances show up once the entry expired
+ * (<code>killrvideo.cache.commentCounts.ttlSeconds</code>). Hit/miss/eviction counts are published as gauges under
+ * <code>killrvideo.cache.commentCounts</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class CommentCountsCache {
+
+    /** Number of generation counters, videos sharing a counter only lose some cache loads. */
+    private static final int GENERATION_STRIPES = 256;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    CommentDseDao commentDseDao;
+
+    @Value("${killrvideo.cache.commentCounts.maxVideos: 10000}")
+    private long maxVideos;
+
+    @Value("${killrvideo.cache.commentCounts.ttlSeconds: 60}")
+    private long ttlSeconds;
+
+    /** Comment count by video. */
+    private Cache<UUID, Long> commentCounts;
+
+    /**
+     * Comments counted by stripe of videos : a count read while the generation of its video changed
+     * may miss a comment and must not be cached.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        commentCounts = CacheBuilder.newBuilder()
+                .maximumSize(maxVideos)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        CacheMetrics.register(metricRegistry, MetricRegistry.name("killrvideo", "cache", "commentCounts"), commentCounts);
+    }
+
+    /**
+     * Get the comment counts of several videos from the cache, or from Cassandra on a miss.
+     *
+     * @param videoIds
+     *      video unique identifiers, may contain duplicates
+     * @return
+     *      counts in the order of the requested ids, 0 for videos never commented
+     */
+    public CompletableFuture<List<Long>> getCommentCounts(List<UUID> videoIds) {
+        final Map<UUID, Long> counts = new HashMap<>();
+        final List<UUID> misses = new ArrayList<>();
+        for (UUID videoId : new LinkedHashSet<>(videoIds)) {
+            final Long count = commentCounts.getIfPresent(videoId);
+            if (count != null) {
+                counts.put(videoId, count);
+            } else {
+                misses.add(videoId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return CompletableFuture.completedFuture(inRequestOrder(videoIds, counts));
+        }
+        final long[] readGenerations = new long[misses.size()];
+        for (int i = 0; i < misses.size(); i++) {
+            readGenerations[i] = generations.get(stripe(misses.get(i)));
+        }
+        return commentDseDao.findCommentCountsAsync(misses).thenApply(loaded -> {
+            for (int i = 0; i < misses.size(); i++) {
+                final UUID videoId = misses.get(i);
+                final Long count = (loaded.get(i) == null) ? 0L : loaded.get(i);
+                if (generations.get(stripe(videoId)) == readGenerations[i]) {
+                    commentCounts.put(videoId, count);
+                    // A comment counted between the check and the put may have been invalidated before the put
+                    if (generations.get(stripe(videoId)) != readGenerations[i]) {
+                        commentCounts.invalidate(videoId);
+                    }
+                }
+                counts.put(videoId, count);
+            }
+            return inRequestOrder(videoIds, counts);
+        });
+    }
+
+    /**
+     * Drop the cached count of a video once the counter of a new comment is written, the generation being changed
+     * first so that no read started before it caches its count afterwards.
+     *
+     * @param videoId
+     *      video unique identifier
+     */
+    public void commentCounted(UUID videoId) {
+        generations.incrementAndGet(stripe(videoId));
+        commentCounts.invalidate(videoId);
+    }
+
+    private static int stripe(UUID videoId) {
+        return Math.floorMod(videoId.hashCode(), GENERATION_STRIPES);
+    }
+
+    private static List<Long> inRequestOrder(List<UUID> videoIds, Map<UUID, Long> counts) {
+        final List<Long> ordered = new ArrayList<>(videoIds.size());
+        videoIds.forEach(videoId -> ordered.add(counts.get(videoId)));
+        return ordered;
+    }
+}
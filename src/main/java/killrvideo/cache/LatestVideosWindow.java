@@ -0,0 +1,186 @@
+package killrvideo.cache;
+
+import static java.util.stream.Collectors.toList;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.eventbus.Subscribe;
+
+import killrvideo.dao.bean.LatestVideosBuckets;
+import killrvideo.entity.LatestVideos;
+import killrvideo.service.VideoCatalogService;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
+
+/**
+ * Bounded in-memory copy of the newest rows of table 'latest_videos', newest first.
+ *
+ * <br/>
+ * <br/>
+ *
+ * It is filled with the {@link YouTubeVideoAdded} events posted on this instance and merged periodically with
+ * the content of the table (see {@link VideoCatalogService}) to pick up the videos submitted on other instances.
+ * Until the first merge succeeded the window is not ready and should not be used to serve requests.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class LatestVideosWindow {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatestVideosWindow.class);
+
+    /** Maximum number of videos kept in memory, 0 disables the window. */
+    @Value("${killrvideo.services.video.latest.window.size: 50}")
+    private int capacity;
+
+    /** Same layout as VideoCatalogService, for the partition keys of the videos added. */
+    @Value("${killrvideo.services.video.latest.bucketHours: 24}")
+    private int bucketHours;
+
+    @Value("${killrvideo.services.video.latest.shards: 1}")
+    private int shards;
+
+    /** Partitions of 'latest_videos'. */
+    private LatestVideosBuckets buckets;
+
+    /** Videos, sorted as the rows of a 'latest_videos' partition. */
+    private final ConcurrentSkipListSet<LatestVideos> videos = new ConcurrentSkipListSet<>(LatestVideos.NEWEST_FIRST);
+
+    /** Set once the window has been seeded from Cassandra. */
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        buckets = new LatestVideosBuckets(bucketHours, shards);
+    }
+
+    /**
+     * Make @Subscribe subscriber magic happen anytime a youTube video is added from
+     * VideoCatalogService.submitYouTubeVideo() with a call to eventBus.post().
+     * @param youTubeVideoAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideoAdded youTubeVideoAdded) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        /**
+         * Keep the milliseconds of the added date, they are part of
+         * the clustering key of the row written in 'latest_videos'
+         */
+        final Date addedDate = Date.from(Instant.ofEpochSecond(
+                youTubeVideoAdded.getAddedDate().getSeconds(),
+                youTubeVideoAdded.getAddedDate().getNanos()));
+
+        final UUID videoId = UUID.fromString(youTubeVideoAdded.getVideoId().getValue());
+        videos.add(new LatestVideos(
+                buckets.partitionKey(addedDate, videoId),
+                UUID.fromString(youTubeVideoAdded.getUserId().getValue()),
+                videoId,
+                youTubeVideoAdded.getName(),
+                youTubeVideoAdded.getPreviewImageLocation(),
+                addedDate));
+        trim();
+
+        LOGGER.debug("Video " + youTubeVideoAdded.getVideoId().getValue() + " added to latest videos window");
+    }
+
+    /**
+     * Merge rows read from table 'latest_videos' into the window and mark it as ready.
+     *
+     * @param rows
+     *      newest rows of the table
+     */
+    public void merge(Collection<LatestVideos> rows) {
+        videos.addAll(rows);
+        trim();
+        ready = true;
+    }
+
+    /**
+     * Newest videos of the window.
+     *
+     * @param count
+     *      maximum number of videos
+     * @return
+     *      videos, newest first
+     */
+    public List<LatestVideos> latest(int count) {
+        evictExpired();
+        return videos.stream().limit(count).collect(toList());
+    }
+
+    /**
+     * Tell if the window can serve a page.
+     *
+     * @param pageSize
+     *      requested number of videos
+     * @return
+     *      true if the window is ready and large enough
+     */
+    public boolean canServe(int pageSize) {
+        return isEnabled() && ready && pageSize <= capacity;
+    }
+
+    /**
+     * Getter for attribute 'capacity'.
+     *
+     * @return
+     *       current value of 'capacity'
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Tell if the window is enabled.
+     *
+     * @return
+     *      true if the capacity is positive
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Drop the oldest videos above capacity.
+     */
+    private void trim() {
+        while (videos.size() > capacity && videos.pollLast() != null);
+    }
+
+    /**
+     * Drop the videos whose row has expired in 'latest_videos'.
+     */
+    private void evictExpired() {
+        final Date oldest = new Date(System.currentTimeMillis() - VideoCatalogService.LATEST_VIDEOS_TTL_SECONDS * 1000L);
+        final Iterator<LatestVideos> oldestFirst = videos.descendingIterator();
+        while (oldestFirst.hasNext() && oldestFirst.next().getAddedDate().before(oldest)) {
+            oldestFirst.remove();
+        }
+    }
+
+    /**
+     * Add the videos of a bulk submission to the window. Each video is trimmed on its own so that the
+     * window never holds more than its capacity.
+     * @param youTubeVideosAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideosAdded youTubeVideosAdded) {
+        youTubeVideosAdded.getVideosList().forEach(this::handle);
+    }
+}
@@ -0,0 +1,210 @@
+package killrvideo.cache;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.Subscribe;
+
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetUserVideoPreviewsResponse;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
+
+/**
+ * Cache of the first page of 'user_videos' (response without starting point nor paging state) by user and page size.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The cached response keeps the Cassandra paging state of the second page. The pages of a user are invalidated by
+ * the {@link YouTubeVideoAdded} events of this instance, videos submitted through other instances show up once the
+ * entry expired (<code>killrvideo.cache.userVideos.ttlSeconds</code>). Hit/miss/eviction counts (a page size not
+ * cached for the user being a miss) are published as gauges under <code>killrvideo.cache.userVideos</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class UserVideosFirstPageCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserVideosFirstPageCache.class);
+
+    /** Number of generation counters, users sharing a counter only lose some cache loads. */
+    private static final int GENERATION_STRIPES = 256;
+
+    /** Distinct page sizes cached, bounding the invalidations of a user. */
+    private static final int MAX_PAGE_SIZES = 16;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Value("${killrvideo.cache.userVideos.maxSize: 10000}")
+    private long maxSize;
+
+    @Value("${killrvideo.cache.userVideos.ttlSeconds: 60}")
+    private long ttlSeconds;
+
+    /** First pages by user and page size. */
+    private Cache<FirstPageKey, GetUserVideoPreviewsResponse> firstPages;
+
+    /** Page sizes ever cached, to invalidate the pages of a user. */
+    private final Set<Integer> pageSizes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Incremented on every invalidation of the users of the stripe : a page read before an invalidation
+     * may miss the new video and must not be cached.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        firstPages = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        CacheMetrics.register(metricRegistry, MetricRegistry.name("killrvideo", "cache", "userVideos"), firstPages);
+    }
+
+    /**
+     * Get the first page of the videos of a user.
+     *
+     * @param userId
+     *      user unique identifier
+     * @param pageSize
+     *      requested page size
+     * @return
+     *      cached response, empty on a miss
+     */
+    public Optional<GetUserVideoPreviewsResponse> getFirstPage(UUID userId, int pageSize) {
+        return Optional.ofNullable(firstPages.getIfPresent(new FirstPageKey(userId, pageSize)));
+    }
+
+    /**
+     * Current generation of a user, to be read before querying the first page.
+     *
+     * @param userId
+     *      user unique identifier
+     * @return
+     *      invalidation count of the stripe of the user
+     */
+    public long generation(UUID userId) {
+        return generations.get(stripe(userId));
+    }
+
+    /**
+     * Cache the first page of the videos of a user, unless an invalidation happened while it was read or too many
+     * page sizes are already cached.
+     *
+     * @param userId
+     *      user unique identifier
+     * @param pageSize
+     *      requested page size
+     * @param firstPage
+     *      response sent to the client
+     * @param readGeneration
+     *      generation read before querying the page
+     */
+    public void putFirstPage(UUID userId, int pageSize, GetUserVideoPreviewsResponse firstPage, long readGeneration) {
+        if (generations.get(stripe(userId)) != readGeneration) {
+            return;
+        }
+        if (!pageSizes.contains(pageSize) && pageSizes.size() >= MAX_PAGE_SIZES) {
+            return;
+        }
+        final FirstPageKey key = new FirstPageKey(userId, pageSize);
+        pageSizes.add(pageSize);
+        firstPages.put(key, firstPage);
+        // An invalidation between the check and the put may have run before the put
+        if (generations.get(stripe(userId)) != readGeneration) {
+            firstPages.invalidate(key);
+        }
+    }
+
+    /**
+     * Drop the first pages of a user, the generation being changed first so that no read started before it caches
+     * its page afterwards.
+     */
+    private void invalidate(UUID userId) {
+        generations.incrementAndGet(stripe(userId));
+        for (Integer pageSize : pageSizes) {
+            firstPages.invalidate(new FirstPageKey(userId, pageSize));
+        }
+    }
+
+    private static int stripe(UUID userId) {
+        return Math.floorMod(userId.hashCode(), GENERATION_STRIPES);
+    }
+
+    /**
+     * Make @Subscribe subscriber magic happen anytime a youTube video is added from
+     * VideoCatalogService.submitYouTubeVideo() with a call to eventBus.post().
+     * @param youTubeVideoAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideoAdded youTubeVideoAdded) {
+        final UUID userId = UUID.fromString(youTubeVideoAdded.getUserId().getValue());
+        invalidate(userId);
+
+        LOGGER.debug("First pages of videos of user " + userId + " invalidated");
+    }
+
+    /**
+     * Invalidate the first pages of the users of a bulk submission, once per user whatever its number of videos.
+     * @param youTubeVideosAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideosAdded youTubeVideosAdded) {
+        final Set<UUID> userIds = new HashSet<>();
+        youTubeVideosAdded.getVideosList().forEach(video -> userIds.add(UUID.fromString(video.getUserId().getValue())));
+        userIds.forEach(this::invalidate);
+
+        LOGGER.debug("First pages of videos of users " + userIds + " invalidated");
+    }
+
+    /**
+     * Key of a first page.
+     */
+    private static final class FirstPageKey {
+
+        private final UUID userId;
+
+        private final int pageSize;
+
+        private FirstPageKey(UUID userId, int pageSize) {
+            this.userId   = userId;
+            this.pageSize = pageSize;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof FirstPageKey)) {
+                return false;
+            }
+            final FirstPageKey that = (FirstPageKey) other;
+            return pageSize == that.pageSize && userId.equals(that.userId);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * userId.hashCode() + pageSize;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package killrvideo.cache;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+
+import killrvideo.async.BatchLoader;
+import killrvideo.async.BatchLoaders;
+import killrvideo.async.MultiGet;
+import killrvideo.async.SingleFlight;
+import killrvideo.entity.Schema;
+import killrvideo.entity.Video;
+import killrvideo.utils.FutureUtils;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoLocationType;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
+
+/**
+ * Read-through cache of table 'videos' keyed by video id.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Video rows are written once by VideoCatalogService.submitYouTubeVideo() and never updated, the cache is filled
+ * with the {@link YouTubeVideoAdded} events of this instance and on every miss, concurrent misses of the same video
+ * sharing a single query (see {@link SingleFlight}) and misses of distinct videos being grouped in IN(..) queries by replica
+ * when batching is enabled (see {@link BatchLoaders}). Entries are evicted by size and
+ * after a TTL, hit/miss/eviction counts are published as gauges under <code>killrvideo.cache.videos</code>.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The version of a video (latest write timestamp of its columns, in microseconds) is kept in a separate and larger
+ * map, read with the <code>WRITETIME</code> of every column by the same query as the video on a miss, or alone by
+ * conditional reads of a video that compare versions without loading the video.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class VideoCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoCache.class);
+
+    /**
+     * Regular columns whose latest write timestamp is the version of a video, an update of any of them changes it
+     * ('tags' is a non-frozen collection, WRITETIME is not allowed on it).
+     */
+    private static final String[] VERSIONED_COLUMNS = {
+            "userid", "name", "description", "location", "location_type", "preview_image_location", "added_date" };
+
+    @Inject
+    Mapper<Video> videoMapper;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    DseSession dseSession;
+
+    @Inject
+    BatchLoaders batchLoaders;
+
+    @Inject
+    MultiGet multiGet;
+
+    @Value("${killrvideo.cache.videos.maxSize: 10000}")
+    private long maxSize;
+
+    @Value("${killrvideo.cache.videos.ttlSeconds: 600}")
+    private long ttlSeconds;
+
+    @Value("${killrvideo.cache.videos.versions.maxSize: 100000}")
+    private long versionsMaxSize;
+
+    private Cache<UUID, Video> videos;
+
+    /** Version (write timestamp in microseconds) of the videos. */
+    private Cache<UUID, Long> versions;
+
+    /** Concurrent misses of the version of the same video share one query. */
+    private SingleFlight<UUID, Long> versionLoads;
+
+    private PreparedStatement getVideoVersion_byIdPrepared;
+
+    /** Video and its version in one query. */
+    private PreparedStatement getVideo_byIdPrepared;
+
+    /** Concurrent misses of the same video share one query. */
+    private SingleFlight<UUID, Video> videoLoads;
+
+    /** Misses of distinct videos grouped in IN(..) queries by replica, when batching is enabled. */
+    private BatchLoader<UUID, Video> videoBatches;
+
+    private PreparedStatement getVideos_byIdsPrepared;
+
+    @PostConstruct
+    public void init() {
+        videos = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        videoLoads = new SingleFlight<>("videos", metricRegistry);
+        versions = CacheBuilder.newBuilder()
+                .maximumSize(versionsMaxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        versionLoads = new SingleFlight<>("videoVersions", metricRegistry);
+        final Select.Selection versionSelection = QueryBuilder.select();
+        for (String column : VERSIONED_COLUMNS) {
+            versionSelection.writeTime(column).as(writeTimeAlias(column));
+        }
+        getVideoVersion_byIdPrepared = dseSession.prepare(
+                versionSelection
+                        .from(Schema.KEYSPACE, videoMapper.getTableMetadata().getName())
+                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        getVideo_byIdPrepared = dseSession.prepare(
+                selectVideosWithVersion()
+                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        if (batchLoaders.isEnabled()) {
+            getVideos_byIdsPrepared = dseSession.prepare(
+                    selectVideosWithVersion()
+                            .where(QueryBuilder.in("videoid", QueryBuilder.bindMarker()))
+            ).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            videoBatches = batchLoaders.create("videos", this::getVideos);
+        }
+
+        CacheMetrics.register(metricRegistry, MetricRegistry.name("killrvideo", "cache", "videos"), videos);
+    }
+
+    /**
+     * Get a video from the cache, or from Cassandra on a miss.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      the video, null if it does not exist
+     */
+    public CompletableFuture<Video> getVideo(UUID videoId) {
+        final Video video = videos.getIfPresent(videoId);
+        if (video != null) {
+            return CompletableFuture.completedFuture(video);
+        }
+
+        return videoLoads.get(videoId, this::loadVideo);
+    }
+
+    /**
+     * Load a video and its version from Cassandra and keep both in the cache, before the returned future completes
+     * so that a lookup following the end of the {@link SingleFlight} load is a hit.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      the video, null if it does not exist
+     */
+    private CompletableFuture<Video> loadVideo(UUID videoId) {
+        if (videoBatches != null) {
+            return videoBatches.load(videoId);
+        }
+        final BoundStatement getVideoQuery = getVideo_byIdPrepared.bind()
+                .setUUID(0, videoId);
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(getVideoQuery))
+                .thenApply(rs -> {
+                    final Row row = rs.one();
+                    return (row == null) ? null : cacheRow(row);
+                });
+    }
+
+    /**
+     * Get the version of a video from the cache, or its write timestamp from Cassandra on a miss.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      write timestamp of the video in microseconds, null if it does not exist
+     */
+    public CompletableFuture<Long> getVersion(UUID videoId) {
+        final Long version = versions.getIfPresent(videoId);
+        if (version != null) {
+            return CompletableFuture.completedFuture(version);
+        }
+
+        return versionLoads.get(videoId, this::loadVersion);
+    }
+
+    /**
+     * Read the write timestamp of a video and keep it in the cache.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      write timestamp of the video in microseconds, null if it does not exist
+     */
+    private CompletableFuture<Long> loadVersion(UUID videoId) {
+        final BoundStatement getVersionQuery = getVideoVersion_byIdPrepared.bind()
+                .setUUID(0, videoId);
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(getVersionQuery))
+                .thenApply(rs -> {
+                    final Row row = rs.one();
+                    final Long version = (row == null) ? null : version(row);
+                    if (version != null) {
+                        versions.put(videoId, version);
+                    }
+                    return version;
+                });
+    }
+
+    /**
+     * Load a batch of videos with one IN(..) query per group of videos owned by the same replicas
+     * (see {@link MultiGet#getMapByReplica(String, java.util.Collection, java.util.function.Function)}),
+     * so that a batch never makes its coordinator gather partitions from other nodes.
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      videos found, by video id
+     */
+    private CompletableFuture<Map<UUID, Video>> getVideos(List<UUID> videoIds) {
+        return multiGet.getMapByReplica(Schema.KEYSPACE, videoIds, this::getVideosByIds);
+    }
+
+    /**
+     * Load videos owned by the same replicas and their versions with a single IN(..) query, keeping them in the cache.
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      videos found, by video id
+     */
+    private CompletableFuture<Map<UUID, Video>> getVideosByIds(List<UUID> videoIds) {
+        BoundStatement getVideosQuery = getVideos_byIdsPrepared.bind()
+                .setList(0, videoIds, UUID.class);
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(getVideosQuery))
+                .thenApply(rows -> {
+                    final Map<UUID, Video> videosById = new HashMap<>();
+                    rows.forEach(row -> {
+                        final Video video = cacheRow(row);
+                        videosById.put(video.getVideoid(), video);
+                    });
+                    return videosById;
+                });
+    }
+
+    /**
+     * Select of the columns of table 'videos' and of the write timestamps giving their version.
+     */
+    private Select selectVideosWithVersion() {
+        final Select.Selection selection = QueryBuilder.select()
+                .column("videoid")
+                .column("tags");
+        for (String column : VERSIONED_COLUMNS) {
+            selection.column(column).writeTime(column).as(writeTimeAlias(column));
+        }
+        return selection.from(Schema.KEYSPACE, videoMapper.getTableMetadata().getName());
+    }
+
+    /**
+     * Keep the video and the version read from a row in the cache.
+     *
+     * @param row
+     *      row read by {@link #selectVideosWithVersion()}
+     * @return
+     *      the video
+     */
+    private Video cacheRow(Row row) {
+        final Video video = new Video(
+                row.getUUID("videoid"),
+                row.getUUID("userid"),
+                row.getString("name"),
+                row.getString("description"),
+                row.getString("location"),
+                row.getInt("location_type"),
+                row.getString("preview_image_location"),
+                row.getSet("tags", String.class),
+                row.getTimestamp("added_date"));
+        final Long version = version(row);
+        if (version != null) {
+            versions.put(video.getVideoid(), version);
+        }
+        videos.put(video.getVideoid(), video);
+        return video;
+    }
+
+    /**
+     * Latest write timestamp of the versioned columns of a row, null if none of them is set.
+     */
+    private static Long version(Row row) {
+        Long version = null;
+        for (String column : VERSIONED_COLUMNS) {
+            final String alias = writeTimeAlias(column);
+            if (!row.isNull(alias)) {
+                version = (version == null) ? row.getLong(alias) : Math.max(version, row.getLong(alias));
+            }
+        }
+        return version;
+    }
+
+    private static String writeTimeAlias(String column) {
+        return "writetime_" + column;
+    }
+
+    /**
+     * Make @Subscribe subscriber magic happen anytime a youTube video is added from
+     * VideoCatalogService.submitYouTubeVideo() with a call to eventBus.post().
+     * @param youTubeVideoAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideoAdded youTubeVideoAdded) {
+        final UUID videoId = UUID.fromString(youTubeVideoAdded.getVideoId().getValue());
+        final Date addedDate = Date.from(Instant.ofEpochSecond(
+                youTubeVideoAdded.getAddedDate().getSeconds(),
+                youTubeVideoAdded.getAddedDate().getNanos()));
+
+        videos.put(videoId, new Video(
+                videoId,
+                UUID.fromString(youTubeVideoAdded.getUserId().getValue()),
+                youTubeVideoAdded.getName(),
+                youTubeVideoAdded.getDescription(),
+                youTubeVideoAdded.getLocation(),
+                VideoLocationType.YOUTUBE.ordinal(),
+                youTubeVideoAdded.getPreviewImageLocation(),
+                Sets.newHashSet(youTubeVideoAdded.getTagsList()),
+                addedDate));
+        // Rows of a submission are written with the added date as timestamp
+        versions.put(videoId, TimeUnit.MILLISECONDS.toMicros(addedDate.getTime()));
+
+        LOGGER.debug("Video " + videoId + " added to video cache");
+    }
+
+    /**
+     * Cache the videos of a bulk submission, as if each was submitted alone : they are in memory already.
+     * @param youTubeVideosAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideosAdded youTubeVideosAdded) {
+        youTubeVideosAdded.getVideosList().forEach(this::handle);
+    }
+}
@@ -0,0 +1,228 @@
+package killrvideo.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import killrvideo.dao.bean.CommentListResult;
+import killrvideo.dao.bean.CommentPagingState;
+import killrvideo.entity.Comment;
+
+/**
+ * Cache of the newest comments of the videos (first pages of 'comments_by_video', without starting point nor
+ * paging state), bounded by <code>killrvideo.cache.comments.maxVideos</code> videos of at most
+ * <code>killrvideo.cache.comments.maxCommentsPerVideo</code> comments.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Entries are loaded from the first pages read in Cassandra, then kept current by appending the comments posted
+ * through this instance once written. Comments posted through other instances show up once the entry expired
+ * (<code>killrvideo.cache.comments.ttlSeconds</code>). A page served from the cache resumes after its last comment
+ * (see {@link CommentPagingState}) as the Cassandra paging state of a page shifted by new comments is not known.
+ * Hit/miss/eviction counts are published as gauges under <code>killrvideo.cache.comments</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+@Component
+public class VideoCommentsCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoCommentsCache.class);
+
+    /** Number of generation counters, videos sharing a counter only lose some cache loads. */
+    private static final int GENERATION_STRIPES = 256;
+
+    /** Order of 'comments_by_video' : newest comment (timeuuid) first. */
+    private static final Comparator<Comment> NEWEST_FIRST = Comparator
+            .comparingLong((Comment c) -> c.getCommentid().timestamp())
+            .thenComparingLong(c -> c.getCommentid().getLeastSignificantBits())
+            .reversed();
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Value("${killrvideo.cache.comments.maxVideos: 1000}")
+    private long maxVideos;
+
+    @Value("${killrvideo.cache.comments.maxCommentsPerVideo: 50}")
+    private int maxCommentsPerVideo;
+
+    @Value("${killrvideo.cache.comments.ttlSeconds: 300}")
+    private long ttlSeconds;
+
+    /** Newest comments by video. */
+    private Cache<UUID, NewestComments> newestComments;
+
+    /**
+     * Incremented on every comment of the videos of the stripe : a page read before a comment
+     * may miss it and must not be cached.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        newestComments = CacheBuilder.newBuilder()
+                .maximumSize(maxVideos)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        CacheMetrics.register(metricRegistry, MetricRegistry.name("killrvideo", "cache", "comments"), newestComments);
+    }
+
+    /**
+     * Get the first page of the comments of a video.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @param pageSize
+     *      requested page size
+     * @return
+     *      comments and paging state of the next page, empty on a miss or if fewer comments are cached
+     */
+    public Optional<CommentListResult> getFirstPage(UUID videoId, int pageSize) {
+        final NewestComments cached = newestComments.getIfPresent(videoId);
+        if (cached == null || (cached.comments.size() < pageSize && !cached.complete)) {
+            return Optional.empty();
+        }
+        final CommentListResult firstPage = new CommentListResult();
+        firstPage.setComments(new ArrayList<>(cached.comments.subList(0, Math.min(pageSize, cached.comments.size()))));
+        if (cached.comments.size() > pageSize || !cached.complete) {
+            final Comment last = firstPage.getComments().get(firstPage.getComments().size() - 1);
+            firstPage.setPagingState(Optional.of(CommentPagingState.resumeAfter(last.getCommentid()).serialize()));
+        }
+        return Optional.of(firstPage);
+    }
+
+    /**
+     * Current generation of a video, to be read before querying the first page.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      comment count of the stripe of the video
+     */
+    public long generation(UUID videoId) {
+        return generations.get(stripe(videoId));
+    }
+
+    /**
+     * Cache the first page of the comments of a video, unless a comment was posted while it was read.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @param firstPage
+     *      first page read in Cassandra, newest first
+     * @param readGeneration
+     *      generation read before querying the page
+     */
+    public void putFirstPage(UUID videoId, CommentListResult firstPage, long readGeneration) {
+        if (generations.get(stripe(videoId)) != readGeneration) {
+            return;
+        }
+        final List<Comment> comments = firstPage.getComments();
+        final boolean truncated = comments.size() > maxCommentsPerVideo;
+        newestComments.put(videoId, new NewestComments(
+                new ArrayList<>(truncated ? comments.subList(0, maxCommentsPerVideo) : comments),
+                !truncated && !firstPage.getPagingState().isPresent()));
+        // A comment appended between the check and the put was overwritten by the older page
+        if (generations.get(stripe(videoId)) != readGeneration) {
+            newestComments.invalidate(videoId);
+        }
+    }
+
+    /**
+     * Add a comment to the cached comments of its video, once written in Cassandra.
+     *
+     * @param comment
+     *      new comment
+     */
+    public void append(Comment comment) {
+        final UUID videoId = comment.getVideoid();
+        generations.incrementAndGet(stripe(videoId));
+        if (comment.getCommentid().version() != 1) {
+            // Not a timeuuid, its position in the partition is unknown
+            newestComments.invalidate(videoId);
+            return;
+        }
+        newestComments.asMap().computeIfPresent(videoId, (id, cached) -> cached.with(copyOf(comment), maxCommentsPerVideo));
+
+        LOGGER.debug("Comment {} appended to cached comments of video {}", comment.getCommentid(), videoId);
+    }
+
+    private static int stripe(UUID videoId) {
+        return Math.floorMod(videoId.hashCode(), GENERATION_STRIPES);
+    }
+
+    /**
+     * Cached comments are shared between requests, the date of the comment is the time of its timeuuid
+     * as computed by the queries.
+     */
+    private static Comment copyOf(Comment comment) {
+        final Comment copy = new Comment();
+        copy.setVideoid(comment.getVideoid());
+        copy.setCommentid(comment.getCommentid());
+        copy.setUserid(comment.getUserid());
+        copy.setComment(comment.getComment());
+        copy.setDateOfComment(new Date(UUIDs.unixTimestamp(comment.getCommentid())));
+        return copy;
+    }
+
+    /**
+     * Newest comments of a video, immutable.
+     */
+    private static final class NewestComments {
+
+        /** Newest first. */
+        private final List<Comment> comments;
+
+        /** True when the comments are all the comments of the video. */
+        private final boolean complete;
+
+        private NewestComments(List<Comment> comments, boolean complete) {
+            this.comments = Collections.unmodifiableList(comments);
+            this.complete = complete;
+        }
+
+        /**
+         * Same comments with a new one, dropping the oldest beyond the limit.
+         */
+        private NewestComments with(Comment comment, int maxComments) {
+            final List<Comment> updated = new ArrayList<>(comments.size() + 1);
+            updated.addAll(comments);
+            for (Comment cached : comments) {
+                if (cached.getCommentid().equals(comment.getCommentid())) {
+                    return this;
+                }
+            }
+            int position = Collections.binarySearch(updated, comment, NEWEST_FIRST);
+            position = (position < 0) ? -position - 1 : position;
+            if (position == updated.size() && !complete) {
+                // Older than the cached comments, not part of the newest ones
+                return this;
+            }
+            updated.add(position, comment);
+            final boolean truncated = updated.size() > maxComments;
+            return new NewestComments(truncated ? updated.subList(0, maxComments) : updated, complete && !truncated);
+        }
+    }
+}
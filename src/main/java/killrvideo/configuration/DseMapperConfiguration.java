@@ -16,6 +16,7 @@ import killrvideo.entity.Video;
 import killrvideo.entity.VideoPlaybackStats;
 import killrvideo.entity.VideoRating;
 import killrvideo.entity.VideoRatingByUser;
+import killrvideo.entity.VideosByTag;
 
 /**
  * Setting up mapping between entities and Cassandra UDT.
@@ -67,4 +68,9 @@ public class DseMapperConfiguration {
     public Mapper< VideoRatingByUser > videoRatingByUserMapper() { 
         return manager.mapper(VideoRatingByUser.class); 
     }
+
+    @Bean
+    public Mapper< VideosByTag > videosByTagMapper() { 
+        return manager.mapper(VideosByTag.class); 
+    }
 }
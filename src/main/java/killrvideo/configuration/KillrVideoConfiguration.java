@@ -1,9 +1,8 @@
 package killrvideo.configuration;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.validation.Validation;
 import javax.validation.Validator;
@@ -12,8 +11,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
 
+import killrvideo.async.InstrumentedThreadPoolExecutor;
 import killrvideo.async.KillrVideoThreadFactory;
 
 /**
@@ -43,18 +45,24 @@ public class KillrVideoConfiguration {
     
     // --- ThreadPool Settings
    
-    @Value("${killrvideo.threadpool.min.threads:5}")
+    @Value("${killrvideo.threadpool.name:dao}")
+    private String threadPoolName;
+    
+    @Value("${killrvideo.threadpool.minThreads:5}")
     private int minThreads;
     
-    @Value("${killrvideo.threadpool.max.threads:10}")
+    @Value("${killrvideo.threadpool.maxThreads:10}")
     private int maxThreads;
     
-    @Value("${killrvideo.thread.ttl.seconds:60}")
+    @Value("${killrvideo.threadpool.ttlThreads:60}")
     private int threadsTTLSeconds;
     
-    @Value("${killrvideo.thread.queue.size:1000}")
+    @Value("${killrvideo.threadpool.queueSize:1000}")
     private int threadPoolQueueSize;
     
+    @Value("${killrvideo.scheduler.threads:2}")
+    private int schedulerThreads;
+    
     // --- Bean definition
     
     @Bean
@@ -63,17 +71,54 @@ public class KillrVideoConfiguration {
     }
 
     /**
-     * Initialize the threadPool.
+     * Initialize the threadPool running the continuations of the DAOs (mapping of result sets...),
+     * instead of the JVM-wide ForkJoin common pool.
      *
+     * @param metricRegistry
+     *      registry of the pool metrics
      * @return
      *      current executor for this
      */
     @Bean(destroyMethod = "shutdownNow")
-    public ExecutorService threadPool() {
-        return new ThreadPoolExecutor(getMinThreads(), getMaxThreads(), 
-                getThreadsTTLSeconds(), TimeUnit.SECONDS, 
-                new LinkedBlockingQueue<>(getThreadPoolQueueSize()), 
-                new KillrVideoThreadFactory());
+    public ExecutorService threadPool(MetricRegistry metricRegistry) {
+        return new InstrumentedThreadPoolExecutor(getThreadPoolName(), getMinThreads(), getMaxThreads(),
+                getThreadsTTLSeconds(), getThreadPoolQueueSize(), metricRegistry);
+    }
+
+    /**
+     * Initialize the scheduler used for periodic background tasks (cache refresh, retries...).
+     *
+     * @return
+     *      shared scheduler
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService scheduler() {
+        return Executors.newScheduledThreadPool(getSchedulerThreads(), 
+                new KillrVideoThreadFactory("killrvideo-scheduler"));
+    }
+
+    /**
+     * Registry of the application metrics (caches, executors...).
+     *
+     * @return
+     *      metric registry
+     */
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    /**
+     * Publish the application metrics as JMX MBeans.
+     *
+     * @param metricRegistry
+     *      metric registry
+     * @return
+     *      started reporter
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public JmxReporter jmxReporter(MetricRegistry metricRegistry) {
+        return JmxReporter.forRegistry(metricRegistry).inDomain("killrvideo").build();
     }
 
     @Bean
@@ -121,6 +166,16 @@ public class KillrVideoConfiguration {
         return mutationErrorLog;
     }
 
+    /**
+     * Getter for attribute 'threadPoolName'.
+     *
+     * @return
+     *       current value of 'threadPoolName'
+     */
+    public String getThreadPoolName() {
+        return threadPoolName;
+    }
+
     /**
      * Getter for attribute 'minThreads'.
      *
@@ -161,6 +216,16 @@ public class KillrVideoConfiguration {
         return threadPoolQueueSize;
     }
 
+    /**
+     * Getter for attribute 'schedulerThreads'.
+     *
+     * @return
+     *       current value of 'schedulerThreads'
+     */
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
     /**
      * Getter for attribute 'applicationHost'.
      *
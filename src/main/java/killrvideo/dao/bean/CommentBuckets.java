@@ -0,0 +1,65 @@
+package killrvideo.dao.bean;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import com.datastax.driver.core.utils.UUIDs;
+
+/**
+ * Optional bucketed layout of the comments of a video : one partition per video and month, so that the comments of
+ * a viral video do not end up in a single unbounded partition.
+ *
+ * <pre>
+ * CREATE TABLE IF NOT EXISTS killrvideo.comments_by_video_bucketed (
+ *     videoid uuid,
+ *     bucket int,
+ *     commentid timeuuid,
+ *     userid uuid,
+ *     comment text,
+ *     PRIMARY KEY ((videoid, bucket), commentid)
+ * ) WITH CLUSTERING ORDER BY (commentid DESC);
+ *
+ * CREATE TABLE IF NOT EXISTS killrvideo.comment_buckets_by_video (
+ *     videoid uuid,
+ *     bucket int,
+ *     PRIMARY KEY (videoid, bucket)
+ * ) WITH CLUSTERING ORDER BY (bucket DESC);
+ * </pre>
+ *
+ * The bucket is the month (<code>yyyyMM</code>, UTC) of the time of the comment id. 'comment_buckets_by_video' is
+ * the index of the buckets holding comments, written with each comment, so that reads skip the months without
+ * comments. Comments written before the layout was enabled stay in 'comments_by_video', read after the oldest
+ * bucket as {@link #NO_BUCKET}.
+ *
+ * @author DataStax evangelist team.
+ */
+public class CommentBuckets {
+
+    /** Bucket column of both tables. */
+    public static final String COLUMN_BUCKET = "bucket";
+
+    /** Bucket of the unbucketed table 'comments_by_video', read after every other bucket. */
+    public static final int NO_BUCKET = 0;
+
+    /** Bucket bound of a first page, after any month. */
+    public static final int NEWEST_BUCKET = 999912;
+
+    private CommentBuckets() {
+    }
+
+    /**
+     * Bucket of a comment.
+     *
+     * @param commentId
+     *      comment unique identifier, the current time is used if it is not a timeuuid
+     * @return
+     *      month of the comment as <code>yyyyMM</code>
+     */
+    public static int bucketOf(UUID commentId) {
+        final long epochMillis = (commentId.version() == 1) ? UUIDs.unixTimestamp(commentId) : System.currentTimeMillis();
+        final YearMonth month = YearMonth.from(Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC));
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+}
@@ -0,0 +1,173 @@
+package killrvideo.dao.bean;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.driver.core.PagingState;
+
+/**
+ * Paging state of the comments of a video, exchanged with the web app as an opaque token.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The token is either the native Cassandra paging state (hexadecimal), as issued before the comments cache, or the
+ * comment id to resume after optionally followed by <code>,</code> and the native Cassandra paging state of the query
+ * starting after this comment, for instance <code>5b6962dd-3f90-4c93-8f61-eabfa4a803e2,0011002200...</code>. Pages
+ * served from the cache have no Cassandra paging state and resume after their last comment.
+ *
+ * <br/>
+ * <br/>
+ *
+ * With the bucketed layout ({@link CommentBuckets}) the token is prefixed by the bucket to read next and
+ * <code>/</code>, for instance <code>201803/5b6962dd-3f90-4c93-8f61-eabfa4a803e2</code> or <code>201802/</code> :
+ * the next page is read from the newest bucket of the video not after this one, the client never sees the
+ * transitions between buckets. Tokens without bucket are read from the unbucketed table.
+ *
+ * @author DataStax evangelist team.
+ */
+public class CommentPagingState {
+
+    private static final Pattern NATIVE_FORMAT = Pattern.compile("[0-9a-fA-F]+");
+
+    private static final Pattern RESUME_AFTER_FORMAT = Pattern.compile(
+            "([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})(?:,([0-9a-fA-F]+))?");
+
+    /** Bucket to read next, the newest bucket of the video not after this one. */
+    private final Optional<Integer> bucket;
+
+    /** Comment to resume after (exclusive). */
+    private final Optional<UUID> resumeAfter;
+
+    /** Native Cassandra paging state. */
+    private final Optional<PagingState> cassandraPagingState;
+
+    /**
+     * Constructor for the unbucketed table.
+     */
+    public CommentPagingState(Optional<UUID> resumeAfter, Optional<PagingState> cassandraPagingState) {
+        this(Optional.empty(), resumeAfter, cassandraPagingState);
+    }
+
+    /**
+     * Constructor with all parameters.
+     */
+    public CommentPagingState(Optional<Integer> bucket, Optional<UUID> resumeAfter, Optional<PagingState> cassandraPagingState) {
+        this.bucket               = bucket;
+        this.resumeAfter          = resumeAfter;
+        this.cassandraPagingState = cassandraPagingState;
+    }
+
+    /**
+     * Paging state of the page following a comment.
+     *
+     * @param commentId
+     *      last comment of the current page
+     * @return
+     *      paging state resuming after this comment
+     */
+    public static CommentPagingState resumeAfter(UUID commentId) {
+        return new CommentPagingState(Optional.of(commentId), Optional.empty());
+    }
+
+    /**
+     * Parse a token sent by the web app.
+     *
+     * @param token
+     *      paging state of the request, may be blank
+     * @return
+     *      paging state, empty for the first page or an invalid token
+     */
+    public static Optional<CommentPagingState> parse(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        final int bucketSeparator = token.indexOf('/');
+        if (bucketSeparator >= 0) {
+            return parseBucketed(token.substring(0, bucketSeparator), token.substring(bucketSeparator + 1));
+        }
+        try {
+            if (NATIVE_FORMAT.matcher(token).matches()) {
+                return Optional.of(new CommentPagingState(Optional.empty(), Optional.of(PagingState.fromString(token))));
+            }
+            final Matcher matcher = RESUME_AFTER_FORMAT.matcher(token);
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            return Optional.of(new CommentPagingState(
+                    Optional.of(UUID.fromString(matcher.group(1))),
+                    Optional.ofNullable(matcher.group(2)).map(PagingState::fromString)));
+        } catch (RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parse a token of the bucketed layout, the part after the bucket being optional.
+     */
+    private static Optional<CommentPagingState> parseBucketed(String bucket, String token) {
+        try {
+            final Optional<Integer> parsedBucket = Optional.of(Integer.parseInt(bucket));
+            if (token.isEmpty()) {
+                return Optional.of(new CommentPagingState(parsedBucket, Optional.empty(), Optional.empty()));
+            }
+            return parse(token)
+                    .filter(state -> !state.getBucket().isPresent())
+                    .map(state -> new CommentPagingState(parsedBucket, state.getResumeAfter(), state.getCassandraPagingState()));
+        } catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Token sent to the web app.
+     *
+     * @return
+     *      serialized paging state
+     */
+    public String serialize() {
+        final String prefix = bucket.map(b -> b + "/").orElse("");
+        if (!resumeAfter.isPresent()) {
+            return prefix + cassandraPagingState.map(PagingState::toString).orElse("");
+        }
+        return prefix + resumeAfter.get().toString() + cassandraPagingState.map(ps -> "," + ps.toString()).orElse("");
+    }
+
+    /**
+     * Getter for attribute 'bucket'.
+     *
+     * @return
+     *       current value of 'bucket'
+     */
+    public Optional<Integer> getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Getter for attribute 'resumeAfter'.
+     *
+     * @return
+     *       current value of 'resumeAfter'
+     */
+    public Optional<UUID> getResumeAfter() {
+        return resumeAfter;
+    }
+
+    /**
+     * Getter for attribute 'cassandraPagingState'.
+     *
+     * @return
+     *       current value of 'cassandraPagingState'
+     */
+    public Optional<PagingState> getCassandraPagingState() {
+        return cassandraPagingState;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}
@@ -0,0 +1,199 @@
+package killrvideo.dao.bean;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Layout of the partitions of table 'latest_videos' : time buckets of <code>bucketHours</code> hours, each of them
+ * optionally split in <code>shards</code> partitions by a hash of the video id.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Buckets are numbered from the epoch in the local time of the server, the partition key is the start of the bucket
+ * formatted as <code>yyyyMMdd</code> for daily buckets (the historical layout) or <code>yyyyMMddHH</code> otherwise,
+ * followed by <code>_&lt;shard&gt;</code> when there is more than one shard. For instance with 6 hours buckets and
+ * 4 shards a video added on 2018-03-01 at 14:12 goes to one of <code>2018030112_0</code> ...
+ * <code>2018030112_3</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+public class LatestVideosBuckets {
+
+    /** Historical layout, one partition per day. */
+    public static final LatestVideosBuckets DAILY = new LatestVideosBuckets(24, 1);
+
+    /** Number of days covered by the buckets, matching the TTL of 'latest_videos'. */
+    public static final int NUMBER_OF_DAYS = 8;
+
+    /** Maximum number of shards, stored as a byte in the paging state. */
+    public static final int MAX_SHARDS = 127;
+
+    private static final DateTimeFormatter DAY_FORMAT  = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+
+    /** Duration of a bucket, dividing 24. */
+    private final int bucketHours;
+
+    /** Number of partitions of a bucket. */
+    private final int shards;
+
+    /**
+     * Constructor with all parameters.
+     *
+     * @param bucketHours
+     *      duration of a bucket in hours, 1 to 24 and dividing 24
+     * @param shards
+     *      number of partitions of a bucket, 1 to {@link #MAX_SHARDS}
+     */
+    public LatestVideosBuckets(int bucketHours, int shards) {
+        if (bucketHours < 1 || bucketHours > 24 || 24 % bucketHours != 0) {
+            throw new IllegalArgumentException("Bucket hours must divide 24, got " + bucketHours);
+        }
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shards must be between 1 and " + MAX_SHARDS + ", got " + shards);
+        }
+        this.bucketHours = bucketHours;
+        this.shards      = shards;
+    }
+
+    /**
+     * Bucket of a local date time.
+     *
+     * @param dateTime
+     *      local date time
+     * @return
+     *      bucket number
+     */
+    public long bucketOf(LocalDateTime dateTime) {
+        return Math.floorDiv(Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 3600L), (long) bucketHours);
+    }
+
+    /**
+     * Bucket of a date, in the local time of the server.
+     *
+     * @param date
+     *      date (added date of a video)
+     * @return
+     *      bucket number
+     */
+    public long bucketOf(Date date) {
+        return bucketOf(LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Shard of a video.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      shard, 0 when there is a single shard
+     */
+    public int shardOf(UUID videoId) {
+        return Math.floorMod(videoId.hashCode(), shards);
+    }
+
+    /**
+     * Partition key of a video.
+     *
+     * @param addedDate
+     *      added date of the video
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      partition key
+     */
+    public String partitionKey(Date addedDate, UUID videoId) {
+        return partitionKey(bucketOf(addedDate), shardOf(videoId));
+    }
+
+    /**
+     * Partition key of a shard of a bucket.
+     *
+     * @param bucket
+     *      bucket number
+     * @param shard
+     *      shard
+     * @return
+     *      partition key
+     */
+    public String partitionKey(long bucket, int shard) {
+        final LocalDateTime start = LocalDateTime.ofEpochSecond(bucket * bucketHours * 3600L, 0, ZoneOffset.UTC);
+        final String key = start.format(bucketHours == 24 ? DAY_FORMAT : HOUR_FORMAT);
+        return (shards == 1) ? key : key + "_" + shard;
+    }
+
+    /**
+     * Partition keys of all the shards of a bucket.
+     *
+     * @param bucket
+     *      bucket number
+     * @return
+     *      partition keys, one per shard
+     */
+    public List<String> partitionKeys(long bucket) {
+        final List<String> keys = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            keys.add(partitionKey(bucket, shard));
+        }
+        return keys;
+    }
+
+    /**
+     * Number of buckets covering {@link #NUMBER_OF_DAYS} days.
+     *
+     * @return
+     *      number of buckets
+     */
+    public int numberOfBuckets() {
+        return NUMBER_OF_DAYS * 24 / bucketHours;
+    }
+
+    /**
+     * Getter for attribute 'bucketHours'.
+     *
+     * @return
+     *       current value of 'bucketHours'
+     */
+    public int getBucketHours() {
+        return bucketHours;
+    }
+
+    /**
+     * Getter for attribute 'shards'.
+     *
+     * @return
+     *       current value of 'shards'
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof LatestVideosBuckets)) {
+            return false;
+        }
+        final LatestVideosBuckets that = (LatestVideosBuckets) other;
+        return bucketHours == that.bucketHours && shards == that.shards;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * bucketHours + shards;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return bucketHours + "h x " + shards;
+    }
+}
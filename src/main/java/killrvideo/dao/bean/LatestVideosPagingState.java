@@ -0,0 +1,305 @@
+package killrvideo.dao.bean;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.driver.core.PagingState;
+
+import killrvideo.entity.LatestVideos;
+
+/**
+ * Paging state of the latest videos, exchanged with the web app as an opaque token.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The buckets of table 'latest_videos' are not stored but computed from an anchor bucket going back in the
+ * past, with the layout of the partitions ({@link LatestVideosBuckets}) the token was issued with. The token is
+ * the URL-safe base64 form of the following binary layout :
+ * <ul>
+ *     <li>version (1 byte)</li>
+ *     <li>bucket duration in hours and number of shards (1 byte each)</li>
+ *     <li>anchor bucket number (4 bytes)</li>
+ *     <li>offset of the current bucket from the anchor bucket (2 bytes)</li>
+ *     <li>flags telling which of the optional fields below are present (1 byte)</li>
+ *     <li>length and raw bytes of the native Cassandra paging state for the current bucket (optional)</li>
+ *     <li>added date (epoch millis) and video id of the row to resume after in the current bucket (optional)</li>
+ * </ul>
+ *
+ * When both optional fields are present, the Cassandra paging state is the one of the query resuming after the row.
+ *
+ * Tokens of version 1 (daily buckets only, no bucket layout, offset on 1 byte) and of the previous text format
+ * (8 <code>yyyyMMdd</code> buckets joined by <code>_</code>, bucket index and Cassandra paging state as
+ * hexadecimal) are still accepted, both use {@link LatestVideosBuckets#DAILY}.
+ *
+ * @author DataStax evangelist team.
+ */
+public class LatestVideosPagingState {
+
+    /** Format of the daily buckets in the legacy text format. */
+    private static final DateTimeFormatter LEGACY_BUCKET_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /** First version of the binary layout, daily buckets only. */
+    private static final byte VERSION_1 = 1;
+
+    /** Current version of the binary layout. */
+    private static final byte VERSION = 2;
+
+    private static final byte FLAG_CASSANDRA_PAGING_STATE = 0x01;
+    private static final byte FLAG_RESUME_AFTER = 0x02;
+
+    /** Previous text format, parsed only for tokens issued before the binary format. */
+    private static final Pattern LEGACY_FORMAT = Pattern.compile("((?:[0-9]{8}_){7}[0-9]{8}),([0-9]),([^,]*)(?:,([0-9]+),([0-9a-fA-F-]{36}))?");
+
+    /** Layout of the partitions. */
+    private final LatestVideosBuckets bucketing;
+
+    /** Newest bucket. */
+    private final long anchorBucket;
+
+    /** Offset of the current bucket from the anchor. */
+    private final int bucketOffset;
+
+    /** Native Cassandra paging state in the current bucket. */
+    private final Optional<PagingState> cassandraPagingState;
+
+    /** Row to resume after in the current bucket (added date and video id only). */
+    private final Optional<LatestVideos> resumeAfter;
+
+    /**
+     * Constructor with all parameters.
+     */
+    public LatestVideosPagingState(LatestVideosBuckets bucketing, long anchorBucket, int bucketOffset, Optional<PagingState> cassandraPagingState, Optional<LatestVideos> resumeAfter) {
+        this.bucketing            = bucketing;
+        this.anchorBucket         = anchorBucket;
+        this.bucketOffset         = bucketOffset;
+        this.cassandraPagingState = cassandraPagingState;
+        this.resumeAfter          = resumeAfter;
+    }
+
+    /**
+     * Paging state of the first page.
+     *
+     * @param now
+     *      current local date time
+     * @param bucketing
+     *      current layout of the partitions
+     * @return
+     *      paging state at the beginning of the newest bucket
+     */
+    public static LatestVideosPagingState firstPage(LocalDateTime now, LatestVideosBuckets bucketing) {
+        return new LatestVideosPagingState(bucketing, bucketing.bucketOf(now), 0, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * Buckets covered by this paging state, newest first.
+     *
+     * @return
+     *      partition keys of each bucket, one per shard
+     */
+    public List<List<String>> buckets() {
+        final List<List<String>> buckets = new ArrayList<>(bucketing.numberOfBuckets());
+        for (int i = 0; i < bucketing.numberOfBuckets(); i++) {
+            buckets.add(bucketing.partitionKeys(anchorBucket - i));
+        }
+        return buckets;
+    }
+
+    /**
+     * Serialize as a token.
+     *
+     * @return
+     *      URL-safe base64 token
+     */
+    public String serialize() {
+        final byte[] pagingStateBytes = cassandraPagingState.map(PagingState::toBytes).orElse(new byte[0]);
+        final ByteBuffer buffer = ByteBuffer.allocate(10
+                + (cassandraPagingState.isPresent() ? 2 + pagingStateBytes.length : 0)
+                + (resumeAfter.isPresent() ? 24 : 0));
+
+        buffer.put(VERSION);
+        buffer.put((byte) bucketing.getBucketHours());
+        buffer.put((byte) bucketing.getShards());
+        buffer.putInt((int) anchorBucket);
+        buffer.putShort((short) bucketOffset);
+        buffer.put((byte) ((cassandraPagingState.isPresent() ? FLAG_CASSANDRA_PAGING_STATE : 0)
+                | (resumeAfter.isPresent() ? FLAG_RESUME_AFTER : 0)));
+        if (cassandraPagingState.isPresent()) {
+            buffer.putShort((short) pagingStateBytes.length);
+            buffer.put(pagingStateBytes);
+        }
+        if (resumeAfter.isPresent()) {
+            buffer.putLong(resumeAfter.get().getAddedDate().getTime());
+            buffer.putLong(resumeAfter.get().getVideoid().getMostSignificantBits());
+            buffer.putLong(resumeAfter.get().getVideoid().getLeastSignificantBits());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Parse a token, binary or legacy text format.
+     *
+     * @param token
+     *      token sent back by the web app
+     * @return
+     *      paging state, empty if the token is blank or invalid
+     */
+    public static Optional<LatestVideosPagingState> parse(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        // Base64 never contains a comma, text tokens always do
+        if (token.indexOf(',') >= 0) {
+            return parseLegacy(token);
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            final byte version = buffer.get();
+            final LatestVideosBuckets bucketing;
+            final long anchorBucket;
+            final int bucketOffset;
+            if (version == VERSION) {
+                bucketing    = new LatestVideosBuckets(buffer.get(), buffer.get());
+                anchorBucket = buffer.getInt();
+                bucketOffset = buffer.getShort();
+            } else if (version == VERSION_1) {
+                // Daily buckets, the anchor bucket is the epoch day
+                bucketing    = LatestVideosBuckets.DAILY;
+                anchorBucket = buffer.getInt();
+                bucketOffset = buffer.get();
+            } else {
+                return Optional.empty();
+            }
+            final byte flags = buffer.get();
+
+            Optional<PagingState> cassandraPagingState = Optional.empty();
+            if ((flags & FLAG_CASSANDRA_PAGING_STATE) != 0) {
+                final byte[] pagingStateBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(pagingStateBytes);
+                cassandraPagingState = Optional.of(PagingState.fromBytes(pagingStateBytes));
+            }
+
+            Optional<LatestVideos> resumeAfter = Optional.empty();
+            if ((flags & FLAG_RESUME_AFTER) != 0) {
+                final Date addedDate = new Date(buffer.getLong());
+                resumeAfter = Optional.of(resumeAfter(addedDate, new UUID(buffer.getLong(), buffer.getLong())));
+            }
+
+            if (bucketOffset < 0 || bucketOffset > bucketing.numberOfBuckets()) {
+                return Optional.empty();
+            }
+            return Optional.of(new LatestVideosPagingState(bucketing, anchorBucket, bucketOffset, cassandraPagingState, resumeAfter));
+
+        } catch (RuntimeException ex) {
+            // Truncated buffer, invalid base64, bucket layout or Cassandra paging state
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parse a token of the previous text format.
+     */
+    private static Optional<LatestVideosPagingState> parseLegacy(String token) {
+        final Matcher matcher = LEGACY_FORMAT.matcher(token);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        try {
+            final String newestBucket = matcher.group(1).substring(0, 8);
+            final Optional<PagingState> cassandraPagingState = Optional
+                    .of(matcher.group(3))
+                    .filter(x -> !x.isEmpty())
+                    .map(PagingState::fromString);
+            final Optional<LatestVideos> resumeAfter = Optional
+                    .ofNullable(matcher.group(4))
+                    .map(x -> resumeAfter(new Date(Long.parseLong(x)), UUID.fromString(matcher.group(5))));
+            return Optional.of(new LatestVideosPagingState(
+                    LatestVideosBuckets.DAILY,
+                    LocalDate.parse(newestBucket, LEGACY_BUCKET_FORMAT).toEpochDay(),
+                    Integer.parseInt(matcher.group(2)),
+                    cassandraPagingState,
+                    resumeAfter));
+
+        } catch (RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Key of the row to resume after.
+     */
+    private static LatestVideos resumeAfter(Date addedDate, UUID videoId) {
+        final LatestVideos resumeAfter = new LatestVideos();
+        resumeAfter.setAddedDate(addedDate);
+        resumeAfter.setVideoid(videoId);
+        return resumeAfter;
+    }
+
+    /**
+     * Getter for attribute 'bucketing'.
+     *
+     * @return
+     *       current value of 'bucketing'
+     */
+    public LatestVideosBuckets getBucketing() {
+        return bucketing;
+    }
+
+    /**
+     * Getter for attribute 'anchorBucket'.
+     *
+     * @return
+     *       current value of 'anchorBucket'
+     */
+    public long getAnchorBucket() {
+        return anchorBucket;
+    }
+
+    /**
+     * Getter for attribute 'bucketOffset'.
+     *
+     * @return
+     *       current value of 'bucketOffset'
+     */
+    public int getBucketOffset() {
+        return bucketOffset;
+    }
+
+    /**
+     * Getter for attribute 'cassandraPagingState'.
+     *
+     * @return
+     *       current value of 'cassandraPagingState'
+     */
+    public Optional<PagingState> getCassandraPagingState() {
+        return cassandraPagingState;
+    }
+
+    /**
+     * Getter for attribute 'resumeAfter'.
+     *
+     * @return
+     *       current value of 'resumeAfter'
+     */
+    public Optional<LatestVideos> getResumeAfter() {
+        return resumeAfter;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "buckets: " + bucketing + " anchor: " + bucketing.partitionKey(anchorBucket, 0) + " offset: " + bucketOffset
+                + " state: " + cassandraPagingState.map(PagingState::toString).orElse("")
+                + " resumeAfter: " + resumeAfter.map(x -> x.getAddedDate().getTime() + "," + x.getVideoid()).orElse("");
+    }
+}
@@ -0,0 +1,106 @@
+package killrvideo.dao.bean;
+
+import java.time.YearMonth;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.driver.core.PagingState;
+
+import killrvideo.entity.VideosByTag;
+
+/**
+ * Paging state of the videos of a tag, exchanged with the web app as an opaque token.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The token is the bucket of table 'videos_by_tag' to read next, optionally followed by <code>,</code> and the
+ * native Cassandra paging state in this bucket (hexadecimal), for instance <code>201803,0011002200...</code>.
+ *
+ * @author DataStax evangelist team.
+ */
+public class VideosByTagPagingState {
+
+    private static final Pattern FORMAT = Pattern.compile("([0-9]+)(?:,([0-9a-fA-F]+))?");
+
+    /** Bucket to read next. */
+    private final int bucket;
+
+    /** Native Cassandra paging state in this bucket. */
+    private final Optional<PagingState> cassandraPagingState;
+
+    /**
+     * Constructor with all parameters.
+     */
+    public VideosByTagPagingState(int bucket, Optional<PagingState> cassandraPagingState) {
+        this.bucket               = bucket;
+        this.cassandraPagingState = cassandraPagingState;
+    }
+
+    /**
+     * Parse a token sent by the web app.
+     *
+     * @param token
+     *      paging state of the request, may be blank
+     * @return
+     *      paging state, empty for the first page or an invalid token
+     */
+    public static Optional<VideosByTagPagingState> parse(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        final Matcher matcher = FORMAT.matcher(token);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        try {
+            final int bucket = Integer.parseInt(matcher.group(1));
+            if (bucket != VideosByTag.NO_BUCKET) {
+                // Monthly buckets are yyyyMM
+                YearMonth.of(bucket / 100, bucket % 100);
+            }
+            return Optional.of(new VideosByTagPagingState(
+                    bucket,
+                    Optional.ofNullable(matcher.group(2)).map(PagingState::fromString)));
+        } catch (RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Token sent to the web app.
+     *
+     * @return
+     *      serialized paging state
+     */
+    public String serialize() {
+        return bucket + cassandraPagingState.map(ps -> "," + ps.toString()).orElse("");
+    }
+
+    /**
+     * Getter for attribute 'bucket'.
+     *
+     * @return
+     *       current value of 'bucket'
+     */
+    public int getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Getter for attribute 'cassandraPagingState'.
+     *
+     * @return
+     *       current value of 'cassandraPagingState'
+     */
+    public Optional<PagingState> getCassandraPagingState() {
+        return cassandraPagingState;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}
@@ -0,0 +1,58 @@
+package killrvideo.dao.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import killrvideo.entity.VideosByTag;
+
+/**
+ * A page of the videos of a tag, newest first.
+ *
+ * @author DataStax evangelist team.
+ */
+public class VideosByTagResult {
+
+    private List < VideosByTag > videos = new ArrayList<>();
+
+    private Optional < String > pagingState = Optional.empty();
+
+    /**
+     * Getter for attribute 'videos'.
+     *
+     * @return
+     *       current value of 'videos'
+     */
+    public List<VideosByTag> getVideos() {
+        return videos;
+    }
+
+    /**
+     * Setter for attribute 'videos'.
+     * @param videos
+     * 		new value for 'videos '
+     */
+    public void setVideos(List<VideosByTag> videos) {
+        this.videos = videos;
+    }
+
+    /**
+     * Getter for attribute 'pagingState'.
+     *
+     * @return
+     *       current value of 'pagingState'
+     */
+    public Optional<String> getPagingState() {
+        return pagingState;
+    }
+
+    /**
+     * Setter for attribute 'pagingState'.
+     * @param pagingState
+     * 		new value for 'pagingState '
+     */
+    public void setPagingState(Optional<String> pagingState) {
+        this.pagingState = pagingState;
+    }
+
+}
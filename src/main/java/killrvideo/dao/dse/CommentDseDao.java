@@ -1,22 +1,45 @@
 package killrvideo.dao.dse;
 
+import static killrvideo.dao.bean.CommentBuckets.COLUMN_BUCKET;
 import static killrvideo.entity.Comment.COLUMN_COMMENT;
 import static killrvideo.entity.Comment.COLUMN_COMMENTID;
 import static killrvideo.entity.Comment.COLUMN_USERID;
 import static killrvideo.entity.Comment.COLUMN_VIDEOID;
+import static killrvideo.utils.TypeConverter.epochMillisToTimestamp;
+import static killrvideo.utils.TypeConverter.uuidToTimeUuid;
+import static killrvideo.utils.TypeConverter.uuidToUuid;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.MetricRegistry;
 
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
@@ -25,14 +48,29 @@ import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+import com.datastax.driver.core.utils.UUIDs;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 
+import io.grpc.stub.ServerCallStreamObserver;
+import killrvideo.async.MultiGet;
+import killrvideo.async.ResultStreamer;
+import killrvideo.async.WriteCoalescer;
+import killrvideo.async.WriteOutbox;
+import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+
 import killrvideo.dao.bean.QueryCommentByVideo;
+import killrvideo.dao.bean.CommentBuckets;
 import killrvideo.dao.bean.CommentListResult;
+import killrvideo.dao.bean.CommentPagingState;
 import killrvideo.dao.bean.QueryCommentByUser;
 import killrvideo.entity.Comment;
 import killrvideo.entity.CommentByUser;
@@ -50,6 +88,9 @@ public class CommentDseDao implements Schema {
 
     /** Loger for that class. */
     private static Logger LOGGER = LoggerFactory.getLogger(CommentDseDao.class);
+
+    /** Counter column of table 'comment_counts_by_video'. */
+    private static final String COLUMN_COMMENT_COUNT = "comments";
     
     /** Hold Connectivity to DSE. */
     @Inject
@@ -59,6 +100,65 @@ public class CommentDseDao implements Schema {
     @Inject
     private MappingManager manager;
 
+    /** Run the mapping of result sets, off the driver I/O threads and the ForkJoin common pool. */
+    @Inject
+    @Named("threadPool")
+    private ExecutorService threadPool;
+
+    @Inject
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    /** Retry the half of a coalesced comment which failed. */
+    @Inject
+    private WriteOutbox writeOutbox;
+
+    /** Read the comment counts of several videos. */
+    @Inject
+    private MultiGet multiGet;
+
+    /** Opt-in grouping of the comments of a partition in UNLOGGED batches, instead of one LOGGED batch per comment. */
+    @Value("${killrvideo.services.comment.coalesce.enabled: false}")
+    private boolean coalesceWrites;
+
+    /** Buffering delay of the coalesced comments. */
+    @Value("${killrvideo.services.comment.coalesce.windowMillis: 5}")
+    private long coalesceWindowMillis;
+
+    /** Maximum number of comments of a coalesced batch. */
+    @Value("${killrvideo.services.comment.coalesce.maxBatchSize: 100}")
+    private int coalesceMaxBatchSize;
+
+    /** Coalescer of the comment writes, null unless enabled. */
+    private WriteCoalescer writeCoalescer;
+
+    /**
+     * Opt-in monthly buckets of the comments of a video ({@link CommentBuckets}), tables 'comments_by_video_bucketed'
+     * and 'comment_buckets_by_video' must exist.
+     */
+    @Value("${killrvideo.services.comment.bucketing.enabled: false}")
+    private boolean bucketedComments;
+
+    /**
+     * Opt-in comment counter of the videos, table 'comment_counts_by_video' must exist :
+     * <pre>
+     * CREATE TABLE IF NOT EXISTS killrvideo.comment_counts_by_video (
+     *     videoid uuid PRIMARY KEY,
+     *     comments counter
+     * );
+     * </pre>
+     */
+    @Value("${killrvideo.services.comment.counts.enabled: false}")
+    private boolean commentCounts;
+
+    /**
+     * Column indices of the results of the comment queries, by result metadata (compared by identity, the driver
+     * sharing the result metadata of a prepared statement between its executions).
+     */
+    private final Cache<ColumnDefinitions, CommentColumns> commentColumns = CacheBuilder.newBuilder().weakKeys().build();
+
     /** Map {@link ResultSet} to bean {@link CommentByVideo} through Mappers. */
     private Mapper< CommentByVideo > commentByVideoMapper;
     
@@ -94,6 +194,36 @@ public class CommentDseDao implements Schema {
 
     /** PreCompiled instruction  to Get comments from a single video but with filtering on comment id. */
     private PreparedStatement statementSearchCommentsForVideoWithStartingPoint;
+
+    /** PreCompiled instruction  to Get comments from a single video older than a comment (next page of a cached page). */
+    private PreparedStatement statementSearchCommentsForVideoAfter;
+
+    /** PreCompiled instruction to Insert comment in table comments_by_video_bucketed. */
+    private PreparedStatement statementInsertCommentByVideoBucketed;
+
+    /** PreCompiled instruction to Insert a bucket in table comment_buckets_by_video. */
+    private PreparedStatement statementInsertCommentBucket;
+
+    /** PreCompiled instruction to Get the newest bucket of a video not after a bucket. */
+    private PreparedStatement statementSearchCommentBucket;
+
+    /** PreCompiled instruction to Get the buckets of a video not after a bucket. */
+    private PreparedStatement statementSearchCommentBuckets;
+
+    /** PreCompiled instruction to Get all comments of a bucket of a video. */
+    private PreparedStatement statementSearchAllCommentsForVideoBucket;
+
+    /** PreCompiled instruction to Get comments of a bucket of a video from a starting point. */
+    private PreparedStatement statementSearchCommentsForVideoBucketWithStartingPoint;
+
+    /** PreCompiled instruction to Get comments of a bucket of a video older than a comment. */
+    private PreparedStatement statementSearchCommentsForVideoBucketAfter;
+
+    /** PreCompiled instruction to Increment the comment counter of a video. */
+    private PreparedStatement statementIncrementCommentCount;
+
+    /** PreCompiled instruction to Get the comment counters of several videos. */
+    private PreparedStatement statementSearchCommentCounts;
     
     /**
      * Prepariation of statement before queries allow signifiant performance improvements.
@@ -115,6 +245,22 @@ public class CommentDseDao implements Schema {
         prepareStatementSearchCommentsForUserWithStartingPoint();
         prepareStatementSearchAllCommentsForVideo();
         prepareStatementSearchCommentsForVideoWithStartingPoint();
+        prepareStatementSearchCommentsForVideoAfter();
+
+        if (bucketedComments) {
+            prepareStatementsCommentsForVideoBucketed();
+            LOGGER.info("Comments of videos bucketed by month");
+        }
+
+        if (commentCounts) {
+            prepareStatementsCommentCounts();
+        }
+
+        if (coalesceWrites) {
+            writeCoalescer = new WriteCoalescer("comments", dseSession, scheduler,
+                    coalesceWindowMillis, coalesceMaxBatchSize, metricRegistry);
+            LOGGER.info("Comment writes coalesced by partition every {} millis", coalesceWindowMillis);
+        }
     }
     
     /**
@@ -135,6 +281,9 @@ public class CommentDseDao implements Schema {
      *     comment to be inserted by signup user.
      */
     public CompletableFuture<Void> insertCommentAsync(final Comment comment) {
+        if (writeCoalescer != null) {
+            return insertCommentCoalesced(comment);
+        }
         BatchStatement stmt = buildInsertCommentBatchStatement(comment);
         CompletableFuture<Void> cfv = new CompletableFuture<>();
         Futures.addCallback(dseSession.executeAsync(stmt), new FutureCallback<ResultSet>() {
@@ -148,6 +297,52 @@ public class CommentDseDao implements Schema {
         return cfv;
     }
     
+    /**
+     * Insert a comment through the {@link WriteCoalescer}, each table being written in the batch of its partition.
+     * The comment fails if both tables fail. When only one of them fails the comment succeeds and the failed
+     * statement is retried by the {@link WriteOutbox}, with the time of the comment as write timestamp.
+     *
+     * @param comment
+     *     comment to be inserted by signup user.
+     */
+    private CompletableFuture<Void> insertCommentCoalesced(final Comment comment) {
+        final CompletableFuture<Void> byVideo;
+        if (bucketedComments) {
+            // The comment and its bucket, retried together
+            byVideo = CompletableFuture.allOf(
+                    writeCoalescer.write(Arrays.asList(TABLENAME_COMMENTS_BY_VIDEO_BUCKETED, comment.getVideoid(),
+                            CommentBuckets.bucketOf(comment.getCommentid())), bindInsertCommentByVideo(comment)),
+                    writeCoalescer.write(Arrays.asList(TABLENAME_COMMENT_BUCKETS_BY_VIDEO, comment.getVideoid()),
+                            bindInsertCommentBucket(comment)));
+        } else {
+            byVideo = writeCoalescer.write(
+                    Arrays.asList(commentByVideoTableName, comment.getVideoid()), bindInsertCommentByVideo(comment));
+        }
+        final CompletableFuture<Void> byUser = writeCoalescer.write(
+                Arrays.asList(commentByUserTableName, comment.getUserid()), bindInsertCommentByUser(comment));
+
+        CompletableFuture<Void> cfv = new CompletableFuture<>();
+        byVideo.whenComplete((r1, errorByVideo) -> byUser.whenComplete((r2, errorByUser) -> {
+            if (errorByVideo != null && errorByUser != null) {
+                cfv.completeExceptionally(errorByVideo);
+                return;
+            }
+            if (errorByVideo != null) {
+                LOGGER.warn("Insert of comment {} in {} failed, retrying", comment.getCommentid(), commentByVideoTableName);
+                writeOutbox.add(comment, retryableInsert(bindInsertCommentByVideo(comment), comment));
+                if (bucketedComments) {
+                    writeOutbox.add(comment, retryableInsert(bindInsertCommentBucket(comment), comment));
+                }
+            }
+            if (errorByUser != null) {
+                LOGGER.warn("Insert of comment {} in {} failed, retrying", comment.getCommentid(), commentByUserTableName);
+                writeOutbox.add(comment, retryableInsert(bindInsertCommentByUser(comment), comment));
+            }
+            cfv.complete(null);
+        }));
+        return cfv;
+    }
+
     /**
      * Search comment_by_video Asynchronously with Pagination.
      *
@@ -166,7 +361,13 @@ public class CommentDseDao implements Schema {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Retrieving SYNCHRONOUSLY comments for video {}", query.getVideoId());
         }
-        return mapToCommentByVideoResultBean(dseSession.execute(buildStatementVideoComments(query)));
+        if (bucketedComments) {
+            // A page may span several buckets
+            return findCommentsByVideosIdAsync(query).join();
+        }
+        final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
+        return withResumeAfter(mapToCommentByVideoResultBean(
+                dseSession.execute(buildStatementVideoComments(query, pagingState))), pagingState);
     }
     
     /**
@@ -185,11 +386,271 @@ public class CommentDseDao implements Schema {
      */
     public CompletableFuture < CommentListResult > findCommentsByVideosIdAsync(final QueryCommentByVideo query) {
         if (LOGGER.isDebugEnabled()) LOGGER.debug("Retrieving ASYNCHRONOUSLY comments for video {}", query.getVideoId());
+        if (bucketedComments) {
+            final CommentListResult result = new CommentListResult();
+            return readBucketedVideoComments(query, (columns, row) -> result.getComments().add(mapRowToComment(row)))
+                    .thenApply(nextPagingState -> {
+                        result.setPagingState(nextPagingState);
+                        return result;
+                    });
+        }
+        final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
+        return FutureUtils.buildCompletableFuture(dseSession
+                            .executeAsync(buildStatementVideoComments(query, pagingState)))
+                            .thenApplyAsync(rs -> withResumeAfter(mapToCommentByVideoResultBean(rs), pagingState), threadPool);
+    }
+    
+    /**
+     * Read a page of comment_by_video, each comment being handed to <code>action</code> as soon as its row is
+     * mapped (no {@link CommentListResult} is built). Only the rows of the page are read, the next page is never
+     * fetched.
+     *
+     * @param query
+     *      video, optional starting comment, page size and paging state
+     * @param action
+     *      consumer of the comments, called in order on the DAO thread pool
+     * @return
+     *      paging state of the next page, once every comment of the page has been consumed
+     */
+    public CompletableFuture< Optional<String> > forEachCommentByVideoAsync(final QueryCommentByVideo query, Consumer<Comment> action) {
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Reading ASYNCHRONOUSLY comments for video {}", query.getVideoId());
+        if (bucketedComments) {
+            return readBucketedVideoComments(query, (columns, row) -> action.accept(mapRowToComment(row)));
+        }
+        final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
         return FutureUtils.buildCompletableFuture(dseSession
-                            .executeAsync(buildStatementVideoComments(query)))
-                            .thenApplyAsync(this::mapToCommentByVideoResultBean);
+                            .executeAsync(buildStatementVideoComments(query, pagingState)))
+                            .thenApplyAsync(rs -> {
+                                int remaining = rs.getAvailableWithoutFetching();
+                                while (remaining-- > 0) {
+                                    action.accept(mapRowToComment(rs.one()));
+                                }
+                                return Optional.ofNullable(rs.getExecutionInfo().getPagingState())
+                                        .map(ps -> new CommentPagingState(
+                                                pagingState.flatMap(CommentPagingState::getResumeAfter), Optional.of(ps)).serialize());
+                            }, threadPool);
     }
     
+    /**
+     * Increment the comment counter of a video, once its comment is written. Counter updates are not idempotent,
+     * a failed increment is never retried.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      future completed once the counter is updated
+     */
+    public CompletableFuture<Void> incrementCommentCountAsync(final UUID videoId) {
+        Assert.state(commentCounts, "Comment counts are disabled");
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(statementIncrementCommentCount.bind()
+                            .setUUID(COLUMN_VIDEOID, videoId)))
+                            .thenApply(rs -> null);
+    }
+
+    /**
+     * Read the comment counters of several videos with IN(..) queries, one per group of videos owned by the same
+     * replicas (see {@link MultiGet#getAllByReplica(String, List, java.util.function.Function)}).
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      counts in the order of the requested ids, null when a video has never been commented
+     */
+    public CompletableFuture<List<Long>> findCommentCountsAsync(final List<UUID> videoIds) {
+        Assert.state(commentCounts, "Comment counts are disabled");
+        return multiGet.getAllByReplica(commentByVideoKeyspace, videoIds, ids ->
+                FutureUtils.buildCompletableFuture(dseSession.executeAsync(statementSearchCommentCounts.bind()
+                                .setList(0, ids, UUID.class)))
+                        .thenApply(rs -> {
+                            final Map<UUID, Long> countsById = new HashMap<>();
+                            rs.forEach(row -> countsById.put(row.getUUID(COLUMN_VIDEOID), row.getLong(COLUMN_COMMENT_COUNT)));
+                            return countsById;
+                        }));
+    }
+
+    /**
+     * Tell if the comment counters are maintained.
+     *
+     * @return
+     *      true when 'comment_counts_by_video' is written and read
+     */
+    public boolean isCommentCountsEnabled() {
+        return commentCounts;
+    }
+
+    /**
+     * Read a page of comment_by_video straight into a gRPC response, without {@link Comment} beans nor
+     * {@link CommentListResult} : columns are read by index and the comment date is the time of the comment id.
+     * Only the rows of the page are read, the next page is never fetched.
+     *
+     * @param query
+     *      video, optional starting comment, page size and paging state
+     * @return
+     *      response with the comments of the page and the paging state of the next page
+     */
+    public CompletableFuture< GetVideoCommentsResponse > findVideoCommentsAsync(final QueryCommentByVideo query) {
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Retrieving ASYNCHRONOUSLY comments for video {}", query.getVideoId());
+        final GetVideoCommentsResponse.Builder response = GetVideoCommentsResponse.newBuilder();
+        final CompletableFuture<Optional<String>> nextPagingState;
+        if (bucketedComments) {
+            nextPagingState = readBucketedVideoComments(query, (columns, row) -> addVideoComment(response, columns, row));
+        } else {
+            final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
+            nextPagingState = FutureUtils.buildCompletableFuture(dseSession
+                            .executeAsync(buildStatementVideoComments(query, pagingState)))
+                            .thenApplyAsync(rs -> addVideoComments(response, rs, pagingState), threadPool);
+        }
+        return nextPagingState.thenApply(ps -> buildVideoCommentsResponse(query, response, ps));
+    }
+
+    /**
+     * Read a page of comment_by_video straight into a gRPC response (SYNC), see
+     * {@link #findVideoCommentsAsync(QueryCommentByVideo)}.
+     *
+     * @param query
+     *      video, optional starting comment, page size and paging state
+     * @return
+     *      response with the comments of the page and the paging state of the next page
+     */
+    public GetVideoCommentsResponse findVideoComments(final QueryCommentByVideo query) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Retrieving SYNCHRONOUSLY comments for video {}", query.getVideoId());
+        }
+        if (bucketedComments) {
+            // A page may span several buckets
+            return findVideoCommentsAsync(query).join();
+        }
+        final GetVideoCommentsResponse.Builder response = GetVideoCommentsResponse.newBuilder();
+        final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
+        return buildVideoCommentsResponse(query, response, addVideoComments(response,
+                dseSession.execute(buildStatementVideoComments(query, pagingState)), pagingState));
+    }
+
+    /**
+     * Add the rows of a page of comment_by_video (unbucketed) to a gRPC response.
+     *
+     * @return
+     *      paging state of the next page
+     */
+    private Optional<String> addVideoComments(GetVideoCommentsResponse.Builder response, ResultSet rs,
+            Optional<CommentPagingState> pagingState) {
+        consumeRows(rs, (columns, row) -> addVideoComment(response, columns, row));
+        return Optional.ofNullable(rs.getExecutionInfo().getPagingState())
+                .map(ps -> new CommentPagingState(
+                        pagingState.flatMap(CommentPagingState::getResumeAfter), Optional.of(ps)).serialize());
+    }
+
+    private static GetVideoCommentsResponse buildVideoCommentsResponse(QueryCommentByVideo query,
+            GetVideoCommentsResponse.Builder response, Optional<String> nextPagingState) {
+        if (response.getCommentsCount() > 0) {
+            response.setVideoId(uuidToUuid(query.getVideoId()));
+        }
+        nextPagingState.ifPresent(response::setPagingState);
+        return response.build();
+    }
+
+    /**
+     * Stream comment_by_video rows to a gRPC client as the driver pages through the partition, each row being
+     * converted straight into a {@link VideoComment} : whatever the size of the partition, only one page is held
+     * in memory. The page size of the query is the fetch size of the stream.
+     *
+     * @param query
+     *      video, optional starting comment and fetch size
+     * @param responseObserver
+     *      server side of the gRPC stream
+     * @param limit
+     *      maximum number of comments, 0 for no limit
+     * @return
+     *      streamer, to be started by the caller
+     */
+    public ResultStreamer<Row, VideoComment> streamVideoComments(final QueryCommentByVideo query,
+            ServerCallStreamObserver<VideoComment> responseObserver, long limit) {
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Streaming comments for video {}", query.getVideoId());
+        final CompletableFuture<Iterator<BoundStatement>> queries;
+        if (bucketedComments) {
+            // Buckets of the video, newest first, then the unbucketed table
+            final int bucketBound = query.getCommentId().map(CommentBuckets::bucketOf).orElse(CommentBuckets.NEWEST_BUCKET);
+            queries = FutureUtils.buildCompletableFuture(dseSession.executeAsync(statementSearchCommentBuckets.bind()
+                            .setUUID(COLUMN_VIDEOID, query.getVideoId())
+                            .setInt(COLUMN_BUCKET, bucketBound)))
+                    .thenApply(rs -> {
+                        final List<BoundStatement> statements = new ArrayList<>();
+                        for (Row row : rs) {
+                            statements.add(bindVideoComments(query, row.getInt(COLUMN_BUCKET), Optional.empty()));
+                        }
+                        statements.add(bindVideoComments(query, CommentBuckets.NO_BUCKET, Optional.empty()));
+                        statements.forEach(statement -> statement.setFetchSize(query.getPageSize()));
+                        return statements.iterator();
+                    });
+        } else {
+            queries = CompletableFuture.completedFuture(
+                    Collections.singletonList(buildStatementVideoComments(query, Optional.empty())).iterator());
+        }
+        return ResultStreamer.ofRows(responseObserver, dseSession, queries,
+                row -> {
+                    final CommentColumns columns = columnsOf(row.getColumnDefinitions());
+                    final UUID commentId = row.getUUID(columns.commentId);
+                    return VideoComment.newBuilder()
+                            .setComment(row.getString(columns.comment))
+                            .setUserId(uuidToUuid(row.getUUID(columns.userId)))
+                            .setCommentId(uuidToTimeUuid(commentId))
+                            .setCommentTimestamp(epochMillisToTimestamp(UUIDs.unixTimestamp(commentId)))
+                            .build();
+                }, limit);
+    }
+
+    /**
+     * Read a page of comment_by_user straight into a gRPC response, see {@link #findVideoCommentsAsync(QueryCommentByVideo)}.
+     *
+     * @param query
+     *      user, optional starting comment, page size and paging state
+     * @return
+     *      response with the comments of the page and the paging state of the next page
+     */
+    public CompletableFuture< GetUserCommentsResponse > findUserCommentsAsync(final QueryCommentByUser query) {
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Retrieving ASYNCHRONOUSLY comments for user {}", query.getUserId());
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(buildStatementUserComments(query)))
+                            .thenApplyAsync(rs -> mapToUserCommentsResponse(query, rs), threadPool);
+    }
+
+    /**
+     * Read a page of comment_by_user straight into a gRPC response (SYNC), see
+     * {@link #findVideoCommentsAsync(QueryCommentByVideo)}.
+     *
+     * @param query
+     *      user, optional starting comment, page size and paging state
+     * @return
+     *      response with the comments of the page and the paging state of the next page
+     */
+    public GetUserCommentsResponse findUserComments(final QueryCommentByUser query) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Retrieving SYNCHRONOUSLY comments for user {}", query.getUserId());
+        }
+        return mapToUserCommentsResponse(query, dseSession.execute(buildStatementUserComments(query)));
+    }
+
+    /**
+     * Map the rows of a page of comment_by_user into a gRPC response, reading the columns by index.
+     */
+    private GetUserCommentsResponse mapToUserCommentsResponse(QueryCommentByUser query, ResultSet rs) {
+        final GetUserCommentsResponse.Builder response = GetUserCommentsResponse.newBuilder();
+        if (rs.getAvailableWithoutFetching() > 0) {
+            response.setUserId(uuidToUuid(query.getUserId()));
+        }
+        consumeRows(rs, (columns, row) -> {
+            final UUID commentId = row.getUUID(columns.commentId);
+            response.addCommentsBuilder()
+                    .setComment(row.getString(columns.comment))
+                    .setCommentId(uuidToTimeUuid(commentId))
+                    .setVideoId(uuidToUuid(row.getUUID(columns.videoId)))
+                    .setCommentTimestamp(epochMillisToTimestamp(UUIDs.unixTimestamp(commentId)));
+        });
+        Optional.ofNullable(rs.getExecutionInfo().getPagingState())
+                .map(PagingState::toString)
+                .ifPresent(response::setPagingState);
+        return response.build();
+    }
+
     /**
      * Execute a query against the 'comment_by_user' table.
      *
@@ -217,7 +678,7 @@ public class CommentDseDao implements Schema {
         if (LOGGER.isDebugEnabled()) LOGGER.debug("Retrieving ASYNCHRONOUSLY comments for user {}", query.getUserId());
         return FutureUtils.buildCompletableFuture(dseSession
                             .executeAsync(buildStatementUserComments(query)))
-                            .thenApplyAsync(this::mapToCommentByVideoResultBean);
+                            .thenApplyAsync(this::mapToCommentByVideoResultBean, threadPool);
     }
     
     /**
@@ -231,25 +692,177 @@ public class CommentDseDao implements Schema {
     private CommentListResult mapToCommentByVideoResultBean(ResultSet rs) {
         CommentListResult result = new CommentListResult();
         for (Row row : rs) {
-            Comment c = new Comment();
-            c.setComment(row.getString(COLUMN_COMMENT));
-            c.setUserid(row.getUUID(COLUMN_USERID));
-            c.setCommentid(row.getUUID(COLUMN_COMMENTID));
-            c.setVideoid(row.getUUID(COLUMN_VIDEOID));
-            /**
-             * Explicitly set dateOfComment because the @Computed
-             * annotation set on the dateOfComment field when using QueryBuilder is not executed
-             * This gives us the "proper" return object expected for the response to the front-end
-             * UI.  It does not function if this value is null or not the correct type.
-             * This is the reason why we did not (simply) use commentByVideoMapper.map(rs).  
-             */
-            c.setDateOfComment(row.getTimestamp("comment_timestamp"));
+            Comment c = mapRowToComment(row);
             result.getComments().add(c);
             LOGGER.debug(" + Parsing comment {}", c.getCommentid().toString());
         }
         result.setPagingState(Optional.ofNullable(rs.getExecutionInfo().getPagingState()).map(PagingState::toString));
         return result;
     }
+
+    /**
+     * Add a row of a comments_by_video query to a gRPC response, reading its columns by index.
+     *
+     * @param response
+     *      response being built
+     * @param columns
+     *      column indices of the result
+     * @param row
+     *      current row
+     */
+    static void addVideoComment(GetVideoCommentsResponse.Builder response, CommentColumns columns, Row row) {
+        final UUID commentId = row.getUUID(columns.commentId);
+        response.addCommentsBuilder()
+                .setComment(row.getString(columns.comment))
+                .setUserId(uuidToUuid(row.getUUID(columns.userId)))
+                .setCommentId(uuidToTimeUuid(commentId))
+                .setCommentTimestamp(epochMillisToTimestamp(UUIDs.unixTimestamp(commentId)));
+    }
+
+    /**
+     * Column indices of the results of a comment query, resolved once per prepared statement.
+     */
+    private CommentColumns columnsOf(ColumnDefinitions definitions) {
+        CommentColumns columns = commentColumns.getIfPresent(definitions);
+        if (columns == null) {
+            columns = new CommentColumns(definitions);
+            commentColumns.put(definitions, columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Hand the rows of the current page to a consumer, without fetching the next page.
+     *
+     * @return
+     *      number of rows
+     */
+    private int consumeRows(ResultSet rs, BiConsumer<CommentColumns, Row> onRow) {
+        final CommentColumns columns = columnsOf(rs.getColumnDefinitions());
+        final int available = rs.getAvailableWithoutFetching();
+        for (int i = 0; i < available; i++) {
+            onRow.accept(columns, rs.one());
+        }
+        return available;
+    }
+
+    /**
+     * Read a page of the comments of a video with the bucketed layout, going on with the older buckets (then the
+     * unbucketed table) until the page is full. The rows are handed to <code>onRow</code> in order, on the DAO
+     * thread pool.
+     *
+     * @param query
+     *      video, optional starting comment, page size and paging state
+     * @param onRow
+     *      consumer of the rows
+     * @return
+     *      paging state of the next page, with the bucket to read next
+     */
+    private CompletableFuture<Optional<String>> readBucketedVideoComments(final QueryCommentByVideo query, BiConsumer<CommentColumns, Row> onRow) {
+        final Optional<CommentPagingState> pagingState = parseVideoCommentsPagingState(query);
+        final Optional<UUID> resumeAfter = pagingState.flatMap(CommentPagingState::getResumeAfter);
+        final Optional<PagingState> cassandraPagingState = pagingState.flatMap(CommentPagingState::getCassandraPagingState);
+
+        final int bucketBound;
+        if (pagingState.flatMap(CommentPagingState::getBucket).isPresent()) {
+            bucketBound = pagingState.get().getBucket().get();
+        } else if (cassandraPagingState.isPresent()) {
+            // Token issued before the buckets, in the unbucketed table
+            bucketBound = CommentBuckets.NO_BUCKET;
+        } else if (resumeAfter.isPresent()) {
+            bucketBound = CommentBuckets.bucketOf(resumeAfter.get());
+        } else {
+            bucketBound = query.getCommentId().map(CommentBuckets::bucketOf).orElse(CommentBuckets.NEWEST_BUCKET);
+        }
+        return readVideoCommentsBuckets(query, bucketBound, cassandraPagingState, resumeAfter, query.getPageSize(), onRow);
+    }
+
+    /**
+     * Read the newest bucket not after <code>bucketBound</code>, then the previous ones while the page is not full.
+     */
+    private CompletableFuture<Optional<String>> readVideoCommentsBuckets(final QueryCommentByVideo query, int bucketBound,
+            Optional<PagingState> cassandraPagingState, Optional<UUID> resumeAfter, int remaining, BiConsumer<CommentColumns, Row> onRow) {
+        final CompletableFuture<Integer> bucket;
+        if (bucketBound == CommentBuckets.NO_BUCKET) {
+            bucket = CompletableFuture.completedFuture(CommentBuckets.NO_BUCKET);
+        } else {
+            bucket = FutureUtils.buildCompletableFuture(dseSession.executeAsync(statementSearchCommentBucket.bind()
+                            .setUUID(COLUMN_VIDEOID, query.getVideoId())
+                            .setInt(COLUMN_BUCKET, bucketBound)))
+                    .thenApply(rs -> Optional.ofNullable(rs.one()).map(row -> row.getInt(COLUMN_BUCKET)).orElse(CommentBuckets.NO_BUCKET));
+        }
+
+        return bucket.thenCompose(currentBucket -> {
+            final BoundStatement statement = bindVideoComments(query, currentBucket, resumeAfter);
+            statement.setFetchSize(remaining);
+            cassandraPagingState.ifPresent(statement::setPagingState);
+            return FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
+                    .thenComposeAsync(rs -> {
+                        final int stillNeeded = remaining - consumeRows(rs, onRow);
+                        final PagingState nextPagingState = rs.getExecutionInfo().getPagingState();
+                        if (nextPagingState != null) {
+                            return CompletableFuture.completedFuture(Optional.of(new CommentPagingState(
+                                    Optional.of(currentBucket), resumeAfter, Optional.of(nextPagingState)).serialize()));
+                        }
+                        if (currentBucket == CommentBuckets.NO_BUCKET) {
+                            return CompletableFuture.completedFuture(Optional.<String>empty());
+                        }
+                        if (stillNeeded <= 0) {
+                            return CompletableFuture.completedFuture(Optional.of(new CommentPagingState(
+                                    Optional.of(currentBucket - 1), resumeAfter, Optional.empty()).serialize()));
+                        }
+                        return readVideoCommentsBuckets(query, currentBucket - 1, Optional.empty(), resumeAfter, stillNeeded, onRow);
+                    }, threadPool);
+        });
+    }
+
+    /**
+     * Mapping of a row of a comments query.
+     *
+     * @param row
+     *      current row
+     * @return
+     *      comment
+     */
+    static Comment mapRowToComment(Row row) {
+        Comment c = new Comment();
+        c.setComment(row.getString(COLUMN_COMMENT));
+        c.setUserid(row.getUUID(COLUMN_USERID));
+        c.setCommentid(row.getUUID(COLUMN_COMMENTID));
+        c.setVideoid(row.getUUID(COLUMN_VIDEOID));
+        /**
+         * Explicitly set dateOfComment because the @Computed
+         * annotation set on the dateOfComment field when using QueryBuilder is not executed
+         * This gives us the "proper" return object expected for the response to the front-end
+         * UI.  It does not function if this value is null or not the correct type.
+         * This is the reason why we did not (simply) use commentByVideoMapper.map(rs).  
+         */
+        c.setDateOfComment(row.getTimestamp("comment_timestamp"));
+        return c;
+    }
+    
+    /**
+     * Paging state of a query on 'comments_by_video', native or resuming after a comment.
+     */
+    private Optional<CommentPagingState> parseVideoCommentsPagingState(final QueryCommentByVideo query) {
+        // Tokens of the bucketed layout restart from the first page if it has been disabled
+        return query.getPageState()
+                .flatMap(CommentPagingState::parse)
+                .filter(pagingState -> bucketedComments || !pagingState.getBucket().isPresent());
+    }
+
+    /**
+     * A page read after a comment keeps resuming after this comment : the Cassandra paging state of the next page
+     * is only valid for the same query.
+     */
+    private CommentListResult withResumeAfter(CommentListResult result, Optional<CommentPagingState> pagingState) {
+        final Optional<UUID> resumeAfter = pagingState.flatMap(CommentPagingState::getResumeAfter);
+        if (resumeAfter.isPresent()) {
+            result.setPagingState(result.getPagingState()
+                    .map(ps -> new CommentPagingState(resumeAfter, Optional.of(PagingState.fromString(ps))).serialize()));
+        }
+        return result;
+    }
     
     /** 
      * When inserting a comment in (multiple) Cassandra tables it is important that the same data is written to
@@ -258,15 +871,47 @@ public class CommentDseDao implements Schema {
      **/
     private BatchStatement buildInsertCommentBatchStatement(final Comment comment) {
         final BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
-        batchStatement.add(statementInsertCommentByUser.bind(
-                comment.getUserid(), comment.getCommentid(), 
-                comment.getComment(), comment.getVideoid()));
-        batchStatement.add(statementInsertCommentByVideo.bind(
-                comment.getVideoid(), comment.getCommentid(), 
-                comment.getComment(), comment.getUserid()));
+        batchStatement.add(bindInsertCommentByUser(comment));
+        batchStatement.add(bindInsertCommentByVideo(comment));
+        if (bucketedComments) {
+            batchStatement.add(bindInsertCommentBucket(comment));
+        }
         batchStatement.setDefaultTimestamp(System.currentTimeMillis());
         return batchStatement;
     }
+
+    private BoundStatement bindInsertCommentByUser(final Comment comment) {
+        return statementInsertCommentByUser.bind(
+                comment.getUserid(), comment.getCommentid(), 
+                comment.getComment(), comment.getVideoid());
+    }
+
+    private BoundStatement bindInsertCommentByVideo(final Comment comment) {
+        if (bucketedComments) {
+            return statementInsertCommentByVideoBucketed.bind(
+                    comment.getVideoid(), CommentBuckets.bucketOf(comment.getCommentid()), comment.getCommentid(),
+                    comment.getComment(), comment.getUserid());
+        }
+        return statementInsertCommentByVideo.bind(
+                comment.getVideoid(), comment.getCommentid(), 
+                comment.getComment(), comment.getUserid());
+    }
+
+    private BoundStatement bindInsertCommentBucket(final Comment comment) {
+        return statementInsertCommentBucket.bind(comment.getVideoid(), CommentBuckets.bucketOf(comment.getCommentid()));
+    }
+
+    /**
+     * Every attempt writes with the time of the comment id (when a timeuuid), a retry produces the same cells.
+     */
+    private BoundStatement retryableInsert(BoundStatement insert, final Comment comment) {
+        final long commentTime = (comment.getCommentid().version() == 1)
+                ? UUIDs.unixTimestamp(comment.getCommentid())
+                : System.currentTimeMillis();
+        insert.setDefaultTimestamp(TimeUnit.MILLISECONDS.toMicros(commentTime));
+        insert.setIdempotent(true);
+        return insert;
+    }
     
     /**
      * This statement is dynamic this is the reason why it is not implemented as a
@@ -305,23 +950,40 @@ public class CommentDseDao implements Schema {
      *  
      * @param request
      *      current request
+     * @param pagingState
+     *      parsed paging state of the request
      * @return
      *      statement
      */
-    private BoundStatement buildStatementVideoComments(final QueryCommentByVideo query) {
+    private BoundStatement buildStatementVideoComments(final QueryCommentByVideo query, Optional<CommentPagingState> pagingState) {
+        final BoundStatement statement = bindVideoComments(query, CommentBuckets.NO_BUCKET,
+                pagingState.flatMap(CommentPagingState::getResumeAfter));
+        pagingState.flatMap(CommentPagingState::getCassandraPagingState).ifPresent(statement::setPagingState);
+        statement.setFetchSize(query.getPageSize());
+        return statement;
+    }
+
+    /**
+     * Bind the query of the comments of a video in a bucket, {@link CommentBuckets#NO_BUCKET} being the unbucketed table.
+     */
+    private BoundStatement bindVideoComments(final QueryCommentByVideo query, int bucket, Optional<UUID> resumeAfter) {
+        final boolean bucketed = (bucket != CommentBuckets.NO_BUCKET);
         BoundStatement statement = null;
-        if (query.getCommentId().isPresent()) {
-            statement = statementSearchCommentsForVideoWithStartingPoint.bind()
+        if (resumeAfter.isPresent()) {
+            statement = (bucketed ? statementSearchCommentsForVideoBucketAfter : statementSearchCommentsForVideoAfter).bind()
+                        .setUUID(COLUMN_VIDEOID, query.getVideoId())
+                        .setUUID(COLUMN_COMMENTID, resumeAfter.get());
+        } else if (query.getCommentId().isPresent()) {
+            statement = (bucketed ? statementSearchCommentsForVideoBucketWithStartingPoint : statementSearchCommentsForVideoWithStartingPoint).bind()
                         .setUUID(COLUMN_VIDEOID, query.getVideoId())
                         .setUUID(COLUMN_COMMENTID, query.getCommentId().get());
         } else {
-            statement = statementSearchAllCommentsForVideo.bind()
+            statement = (bucketed ? statementSearchAllCommentsForVideoBucket : statementSearchAllCommentsForVideo).bind()
                         .setUUID(COLUMN_VIDEOID, query.getVideoId());
         }
-        if (query.getPageState().isPresent() && query.getPageState().get().length() > 0) {
-            statement.setPagingState(PagingState.fromString(query.getPageState().get()));
+        if (bucketed) {
+            statement.setInt(COLUMN_BUCKET, bucket);
         }
-        statement.setFetchSize(query.getPageSize());
         return statement;
     }
     
@@ -427,5 +1089,108 @@ public class CommentDseDao implements Schema {
         statementSearchCommentsForVideoWithStartingPoint = dseSession.prepare(auerySearchCommentForVideo)
                                                                      .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     }
-            
+
+    /**
+     * Building static prepareStatement in advance to speed up queries.
+     */
+    private void prepareStatementSearchCommentsForVideoAfter() {
+        RegularStatement querySearchCommentForVideoAfter = QueryBuilder
+                .select()
+                    .column(COLUMN_VIDEOID).column(COLUMN_COMMENTID)
+                    .column(COLUMN_USERID).column(COLUMN_COMMENT)
+                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
+                .from(commentByVideoKeyspace, commentByVideoTableName)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.lt(COLUMN_COMMENTID, QueryBuilder.bindMarker()));
+        statementSearchCommentsForVideoAfter = dseSession.prepare(querySearchCommentForVideoAfter)
+                                                         .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+    }
+
+    /**
+     * Building static prepareStatements of the bucketed layout, same columns as the unbucketed ones.
+     */
+    private void prepareStatementsCommentsForVideoBucketed() {
+        statementInsertCommentByVideoBucketed = dseSession.prepare(QueryBuilder
+                .insertInto(commentByVideoKeyspace, TABLENAME_COMMENTS_BY_VIDEO_BUCKETED)
+                    .value(COLUMN_VIDEOID, QueryBuilder.bindMarker()).value(COLUMN_BUCKET, QueryBuilder.bindMarker())
+                    .value(COLUMN_COMMENTID, QueryBuilder.bindMarker()).value(COLUMN_COMMENT, QueryBuilder.bindMarker())
+                    .value(COLUMN_USERID, QueryBuilder.bindMarker()))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        statementInsertCommentBucket = dseSession.prepare(QueryBuilder
+                .insertInto(commentByVideoKeyspace, TABLENAME_COMMENT_BUCKETS_BY_VIDEO)
+                    .value(COLUMN_VIDEOID, QueryBuilder.bindMarker()).value(COLUMN_BUCKET, QueryBuilder.bindMarker()))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        statementSearchCommentBucket = dseSession.prepare(QueryBuilder
+                .select().column(COLUMN_BUCKET)
+                .from(commentByVideoKeyspace, TABLENAME_COMMENT_BUCKETS_BY_VIDEO)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.lte(COLUMN_BUCKET, QueryBuilder.bindMarker()))
+                .limit(1))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        statementSearchCommentBuckets = dseSession.prepare(QueryBuilder
+                .select().column(COLUMN_BUCKET)
+                .from(commentByVideoKeyspace, TABLENAME_COMMENT_BUCKETS_BY_VIDEO)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.lte(COLUMN_BUCKET, QueryBuilder.bindMarker())))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        statementSearchAllCommentsForVideoBucket = dseSession.prepare(selectCommentsForVideoBucket())
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        statementSearchCommentsForVideoBucketWithStartingPoint = dseSession.prepare(selectCommentsForVideoBucket()
+                .and(QueryBuilder.lte(COLUMN_COMMENTID, QueryBuilder.bindMarker())))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        statementSearchCommentsForVideoBucketAfter = dseSession.prepare(selectCommentsForVideoBucket()
+                .and(QueryBuilder.lt(COLUMN_COMMENTID, QueryBuilder.bindMarker())))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+    }
+
+    private Select.Where selectCommentsForVideoBucket() {
+        return QueryBuilder
+                .select()
+                    .column(COLUMN_VIDEOID).column(COLUMN_COMMENTID)
+                    .column(COLUMN_USERID).column(COLUMN_COMMENT)
+                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
+                .from(commentByVideoKeyspace, TABLENAME_COMMENTS_BY_VIDEO_BUCKETED)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.eq(COLUMN_BUCKET, QueryBuilder.bindMarker()));
+    }
+
+    /**
+     * Building static prepareStatements of the comment counters.
+     */
+    private void prepareStatementsCommentCounts() {
+        statementIncrementCommentCount = dseSession.prepare(QueryBuilder
+                .update(commentByVideoKeyspace, TABLENAME_COMMENT_COUNTS_BY_VIDEO)
+                .with(QueryBuilder.incr(COLUMN_COMMENT_COUNT))
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker())))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        statementSearchCommentCounts = dseSession.prepare(QueryBuilder
+                .select().column(COLUMN_VIDEOID).column(COLUMN_COMMENT_COUNT)
+                .from(commentByVideoKeyspace, TABLENAME_COMMENT_COUNTS_BY_VIDEO)
+                .where(QueryBuilder.in(COLUMN_VIDEOID, QueryBuilder.bindMarker())))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+    }
+
+    /**
+     * Indices of the columns of a comment query, whatever the order of the columns of the query.
+     */
+    static final class CommentColumns {
+
+        private final int videoId;
+
+        private final int userId;
+
+        private final int commentId;
+
+        private final int comment;
+
+        CommentColumns(ColumnDefinitions definitions) {
+            this.videoId   = definitions.getIndexOf(COLUMN_VIDEOID);
+            this.userId    = definitions.getIndexOf(COLUMN_USERID);
+            this.commentId = definitions.getIndexOf(COLUMN_COMMENTID);
+            this.comment   = definitions.getIndexOf(COLUMN_COMMENT);
+        }
+    }
+
 }
@@ -0,0 +1,353 @@
+package killrvideo.dao.dse;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+
+import killrvideo.async.WriteOutbox;
+import killrvideo.dao.bean.VideosByTagPagingState;
+import killrvideo.dao.bean.VideosByTagResult;
+import killrvideo.entity.Schema;
+import killrvideo.entity.VideosByTag;
+import killrvideo.utils.FutureUtils;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
+
+/**
+ * Read model of the videos of a tag (table 'videos_by_tag'), written from the {@link YouTubeVideoAdded} events
+ * of this instance so that tag pages are partition reads instead of DSE Search queries.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Tags are lower-cased. The tags listed in <code>killrvideo.services.video.tags.popular</code> as
+ * <code>tag:yyyyMM</code> are bucketed by month from the given month on to bound their partitions : their pages walk
+ * the months back from the current one down to the month the tag became popular, then the unbucketed partition
+ * holding the videos added before. The other tags use a single partition. Failed writes are retried by the
+ * {@link WriteOutbox}.
+ *
+ * @author DataStax evangelist team.
+ */
+@Repository
+public class VideosByTagDseDao {
+
+    /** Loger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideosByTagDseDao.class);
+
+    @Inject
+    private DseSession dseSession;
+
+    @Inject
+    private Mapper<VideosByTag> videosByTagMapper;
+
+    @Inject
+    private WriteOutbox writeOutbox;
+
+    /** Comma separated tags bucketed by month, each with the first bucketed month : <code>tag:yyyyMM</code>. */
+    @Value("${killrvideo.services.video.tags.popular: }")
+    private String popularTagList;
+
+    /** First monthly bucket of each popular tag, older videos are in the unbucketed partition. */
+    private final Map<String, YearMonth> popularTags = new HashMap<>();
+
+    /** Maximum number of rows of a batch written by a bulk submission. */
+    @Value("${killrvideo.services.video.tags.maxBatchSize: 50}")
+    private int maxBatchSize;
+
+    /** PreCompiled instruction to insert a video in table videos_by_tag. */
+    private PreparedStatement statementInsertVideoByTag;
+
+    /** PreCompiled instruction to get the videos of a bucket of a tag. */
+    private PreparedStatement statementSearchVideosByTag;
+
+    @PostConstruct
+    public void init() {
+        for (String entry : popularTagList.split(",")) {
+            if (StringUtils.isNotBlank(entry)) {
+                final String[] tagAndMonth = entry.split(":");
+                if (tagAndMonth.length != 2 || StringUtils.isBlank(tagAndMonth[0])) {
+                    throw new IllegalArgumentException("Popular tag '" + entry.trim() + "' should be 'tag:yyyyMM'");
+                }
+                try {
+                    popularTags.put(normalize(tagAndMonth[0]), YearMonth.parse(tagAndMonth[1].trim(), DateTimeFormatter.ofPattern("yyyyMM")));
+                } catch (DateTimeParseException ex) {
+                    throw new IllegalArgumentException("Popular tag '" + entry.trim() + "' should be 'tag:yyyyMM'", ex);
+                }
+            }
+        }
+
+        final String videosByTagTableName = videosByTagMapper.getTableMetadata().getName();
+        statementInsertVideoByTag = dseSession.prepare(
+                QueryBuilder
+                        .insertInto(Schema.KEYSPACE, videosByTagTableName)
+                        .value("tag", QueryBuilder.bindMarker())
+                        .value("bucket", QueryBuilder.bindMarker())
+                        .value("added_date", QueryBuilder.bindMarker())
+                        .value("videoid", QueryBuilder.bindMarker())
+                        .value("userid", QueryBuilder.bindMarker())
+                        .value("name", QueryBuilder.bindMarker())
+                        .value("preview_image_location", QueryBuilder.bindMarker())
+                        .using(QueryBuilder.timestamp(QueryBuilder.bindMarker("write_timestamp")))
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+         .setIdempotent(true);
+
+        statementSearchVideosByTag = dseSession.prepare(
+                QueryBuilder
+                        .select()
+                        .all()
+                        .from(Schema.KEYSPACE, videosByTagTableName)
+                        .where(QueryBuilder.eq("tag", QueryBuilder.bindMarker()))
+                        .and(QueryBuilder.eq("bucket", QueryBuilder.bindMarker()))
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        LOGGER.info("Videos by tag read model initialized, popular tags bucketed by month: " + popularTags);
+    }
+
+    /**
+     * Get a page of the videos of a tag, newest first.
+     *
+     * @param tag
+     *      tag
+     * @param pageSize
+     *      page size
+     * @param pagingState
+     *      paging state of the previous page, empty for the first page
+     * @return
+     *      videos of the page and paging state of the next page
+     */
+    public CompletableFuture<VideosByTagResult> findVideosByTagAsync(String tag, int pageSize, Optional<VideosByTagPagingState> pagingState) {
+        final String normalizedTag = normalize(tag);
+        final int firstBucket = pagingState
+                .map(VideosByTagPagingState::getBucket)
+                .orElse(bucket(normalizedTag, YearMonth.now(ZoneId.systemDefault())));
+        final Optional<PagingState> cassandraPagingState = pagingState.flatMap(VideosByTagPagingState::getCassandraPagingState);
+
+        return findVideosByTagAsync(normalizedTag, pageSize, new VideosByTagResult(), firstBucket, cassandraPagingState);
+    }
+
+    /**
+     * Read a bucket and go on with the previous one until the page is full.
+     */
+    private CompletableFuture<VideosByTagResult> findVideosByTagAsync(String tag, int pageSize, VideosByTagResult page,
+            int bucket, Optional<PagingState> cassandraPagingState) {
+        final BoundStatement bound = statementSearchVideosByTag.bind()
+                .setString("tag", tag)
+                .setInt("bucket", bucket);
+        bound.setFetchSize(pageSize - page.getVideos().size());
+        cassandraPagingState.ifPresent(bound::setPagingState);
+
+        return FutureUtils.buildCompletableFuture(videosByTagMapper.mapAsync(dseSession.executeAsync(bound)))
+                .thenCompose(videos -> {
+                    int remaining = videos.getAvailableWithoutFetching();
+                    for (VideosByTag video : videos) {
+                        page.getVideos().add(video);
+                        if (--remaining == 0) {
+                            break;
+                        }
+                    }
+
+                    final PagingState nextPagingState = videos.getExecutionInfo().getPagingState();
+                    if (nextPagingState != null) {
+                        page.setPagingState(Optional.of(new VideosByTagPagingState(bucket, Optional.of(nextPagingState)).serialize()));
+                        return CompletableFuture.completedFuture(page);
+                    }
+
+                    final Optional<Integer> previousBucket = previousBucket(tag, bucket);
+                    if (!previousBucket.isPresent()) {
+                        return CompletableFuture.completedFuture(page);
+                    }
+                    if (page.getVideos().size() == pageSize) {
+                        page.setPagingState(Optional.of(new VideosByTagPagingState(previousBucket.get(), Optional.empty()).serialize()));
+                        return CompletableFuture.completedFuture(page);
+                    }
+                    return findVideosByTagAsync(tag, pageSize, page, previousBucket.get(), Optional.empty());
+                });
+    }
+
+    /**
+     * Bucket read after a bucket : previous month down to the month the tag became popular, then the unbucketed
+     * partition, then none.
+     */
+    private Optional<Integer> previousBucket(String tag, int bucket) {
+        if (bucket == VideosByTag.NO_BUCKET) {
+            return Optional.empty();
+        }
+        return Optional.of(bucket(tag, YearMonth.of(bucket / 100, bucket % 100).minusMonths(1)));
+    }
+
+    /**
+     * Bucket of the videos of a tag added in a month : the month for a popular tag from the month it became
+     * popular on, the unbucketed partition otherwise.
+     */
+    private int bucket(String tag, YearMonth month) {
+        final YearMonth popularSince = popularTags.get(tag);
+        return (popularSince == null || month.isBefore(popularSince)) ? VideosByTag.NO_BUCKET : monthBucket(month);
+    }
+
+    /**
+     * Insert the tag rows of a video added by this instance, each row on its own. Failed rows go to the
+     * {@link WriteOutbox}.
+     *
+     * @param youTubeVideoAdded
+     *      video added
+     */
+    @Subscribe
+    public void handle(YouTubeVideoAdded youTubeVideoAdded) {
+        final Map<List<Object>, BoundStatement> inserts = bindInserts(youTubeVideoAdded);
+        inserts.values().forEach(insert -> execute(insert, Collections.singletonList(youTubeVideoAdded)));
+
+        LOGGER.debug("Video " + youTubeVideoAdded.getVideoId().getValue() + " added to videos by tag for partitions " + inserts.keySet());
+    }
+
+    /**
+     * Insert the tag rows of a bulk submission, the rows of a partition (tag and bucket) being written by
+     * single-partition UNLOGGED batches of at most <code>killrvideo.services.video.tags.maxBatchSize</code> rows.
+     * The rows of a failed batch go to the {@link WriteOutbox} one by one.
+     *
+     * @param youTubeVideosAdded
+     *      videos added
+     */
+    @Subscribe
+    public void handle(YouTubeVideosAdded youTubeVideosAdded) {
+        final Map<List<Object>, List<BoundStatement>> insertsByPartition = new LinkedHashMap<>();
+        final Map<BoundStatement, YouTubeVideoAdded> videoOfInsert = new IdentityHashMap<>();
+        for (YouTubeVideoAdded youTubeVideoAdded : youTubeVideosAdded.getVideosList()) {
+            bindInserts(youTubeVideoAdded).forEach((partition, insert) -> {
+                insertsByPartition.computeIfAbsent(partition, k -> new ArrayList<>()).add(insert);
+                videoOfInsert.put(insert, youTubeVideoAdded);
+            });
+        }
+
+        insertsByPartition.values().forEach(inserts -> Lists.partition(inserts, maxBatchSize).forEach(batchInserts -> {
+            final List<YouTubeVideoAdded> videos = batchInserts.stream().map(videoOfInsert::get).collect(Collectors.toList());
+            if (batchInserts.size() == 1) {
+                execute(batchInserts.get(0), videos);
+            } else {
+                final BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                batchInserts.forEach(batch::add);
+                batch.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                batch.setIdempotent(true);
+                execute(batch, videos);
+            }
+        }));
+
+        LOGGER.debug(youTubeVideosAdded.getVideosCount() + " videos added to videos by tag in " + insertsByPartition.size() + " partitions");
+    }
+
+    /**
+     * Bind the rows of a video, one by distinct tag.
+     *
+     * @param youTubeVideoAdded
+     *      video added
+     * @return
+     *      insert of each partition (tag and bucket) written
+     */
+    private Map<List<Object>, BoundStatement> bindInserts(YouTubeVideoAdded youTubeVideoAdded) {
+        final UUID videoId = UUID.fromString(youTubeVideoAdded.getVideoId().getValue());
+        final Date addedDate = Date.from(Instant.ofEpochSecond(
+                youTubeVideoAdded.getAddedDate().getSeconds(),
+                youTubeVideoAdded.getAddedDate().getNanos()));
+
+        // Same write timestamp on every attempt, a retried write produces the same row. Bound in the statement
+        // rather than set as default timestamp, which a batch would override.
+        final long writeTimestamp = TimeUnit.MILLISECONDS.toMicros(addedDate.getTime());
+
+        final Set<String> tags = new HashSet<>();
+        youTubeVideoAdded.getTagsList().stream()
+                .filter(StringUtils::isNotBlank)
+                .map(VideosByTagDseDao::normalize)
+                .forEach(tags::add);
+
+        final Map<List<Object>, BoundStatement> inserts = new LinkedHashMap<>();
+        for (String tag : tags) {
+            final int bucket = bucket(tag, YearMonth.from(addedDate.toInstant().atZone(ZoneId.systemDefault())));
+            inserts.put(Arrays.asList(tag, bucket), statementInsertVideoByTag.bind()
+                    .setString("tag", tag)
+                    .setInt("bucket", bucket)
+                    .setTimestamp("added_date", addedDate)
+                    .setUUID("videoid", videoId)
+                    .setUUID("userid", UUID.fromString(youTubeVideoAdded.getUserId().getValue()))
+                    .setString("name", youTubeVideoAdded.getName())
+                    .setString("preview_image_location", youTubeVideoAdded.getPreviewImageLocation())
+                    .setLong("write_timestamp", writeTimestamp));
+        }
+        return inserts;
+    }
+
+    /**
+     * Write a row or a batch of rows, each row being handed to the {@link WriteOutbox} on failure.
+     *
+     * @param statement
+     *      insert or batch of inserts of a single partition
+     * @param videos
+     *      video of each row of the statement
+     */
+    private void execute(Statement statement, List<YouTubeVideoAdded> videos) {
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
+                .whenComplete((rs, ex) -> {
+                    if (ex != null) {
+                        final Collection<Statement> inserts = (statement instanceof BatchStatement)
+                                ? ((BatchStatement) statement).getStatements()
+                                : Collections.singletonList(statement);
+                        LOGGER.warn("Insert of " + inserts.size() + " videos by tag failed, retrying : " + mergeStackTrace(ex));
+                        final Iterator<YouTubeVideoAdded> video = videos.iterator();
+                        inserts.forEach(insert -> writeOutbox.add(video.next(), insert));
+                    }
+                });
+    }
+
+    /**
+     * Tags are matched case insensitively.
+     */
+    private static String normalize(String tag) {
+        return tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int monthBucket(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+}
@@ -41,6 +41,7 @@ public class MessagingDao {
                 .setCommentId(request.getCommentId())
                 .setVideoId(request.getVideoId())
                 .setUserId(request.getUserId())
+                .setComment(request.getComment())
                 .setCommentTimestamp(TypeConverter.instantToTimeStamp(commentCreationDate))
                 .build());
     }
@@ -1,5 +1,6 @@
 package killrvideo.entity;
 
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Optional;
 import java.util.UUID;
@@ -9,6 +10,7 @@ import com.datastax.driver.mapping.annotations.PartitionKey;
 import com.datastax.driver.mapping.annotations.Table;
 
 import killrvideo.utils.TypeConverter;
+import killrvideo.utils.UuidOrder;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
 
 /**
@@ -22,6 +24,14 @@ public class LatestVideos extends AbstractVideoList {
     /** Serial. */
     private static final long serialVersionUID = -8527565276521920973L;
 
+    /**
+     * Order of rows in a 'latest_videos' partition (added_date DESC, videoid ASC) : newest first, videos added at
+     * the same date in the order of the CQL uuid type (not {@link UUID#compareTo(UUID)}).
+     */
+    public static final Comparator<LatestVideos> NEWEST_FIRST = Comparator
+            .comparing(LatestVideos::getAddedDate, Comparator.reverseOrder())
+            .thenComparing(LatestVideos::getVideoid, UuidOrder.CQL_UUID);
+
     @PartitionKey
     private String yyyymmdd;
 
@@ -13,6 +13,9 @@ public interface Schema {
     /** Table Names in Keyspace previously defined. */
     String TABLENAME_COMMENTS_BY_USER              = "comments_by_user";
     String TABLENAME_COMMENTS_BY_VIDEO             = "comments_by_video";
+    String TABLENAME_COMMENTS_BY_VIDEO_BUCKETED    = "comments_by_video_bucketed";
+    String TABLENAME_COMMENT_BUCKETS_BY_VIDEO      = "comment_buckets_by_video";
+    String TABLENAME_COMMENT_COUNTS_BY_VIDEO       = "comment_counts_by_video";
     
     String TABLENAME_ENCODING_JOBS_NOTIFICATION    = "encoding_job_notifications";
     String TABLENAME_LATEST_VIDEOS                 = "latest_videos";
@@ -24,6 +27,7 @@ public interface Schema {
     String TABLENAME_VIDEOS                        = "videos";
     String TABLENAME_VIDEOS_RATINGS                = "video_ratings";
     String TABLENAME_VIDEOS_RATINGS_BYUSER         = "video_ratings_by_user";
+    String TABLENAME_VIDEOS_BY_TAG                 = "videos_by_tag";
 
     String TABLENAME_PLAYBACK_STATS                = "video_playback_stats";
     
@@ -0,0 +1,139 @@
+package killrvideo.entity;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.datastax.driver.mapping.annotations.Column;
+import com.datastax.driver.mapping.annotations.PartitionKey;
+import com.datastax.driver.mapping.annotations.Table;
+
+import killrvideo.utils.TypeConverter;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
+
+/**
+ * Pojo representing DTO for table 'videos_by_tag', a read model of the catalog maintained from the
+ * YouTubeVideoAdded events.
+ *
+ * <pre>
+ * CREATE TABLE IF NOT EXISTS killrvideo.videos_by_tag (
+ *     tag text,
+ *     bucket int,
+ *     added_date timestamp,
+ *     videoid uuid,
+ *     userid uuid,
+ *     name text,
+ *     preview_image_location text,
+ *     PRIMARY KEY ((tag, bucket), added_date, videoid)
+ * ) WITH CLUSTERING ORDER BY (added_date DESC, videoid ASC);
+ * </pre>
+ *
+ * The bucket is the month (<code>yyyyMM</code>) of the added date for popular tags and
+ * {@link #NO_BUCKET} for the other tags, which fit in a single partition.
+ *
+ * @author DataStax evangelist team.
+ */
+@Table(keyspace = Schema.KEYSPACE, name = Schema.TABLENAME_VIDEOS_BY_TAG)
+public class VideosByTag extends AbstractVideoList {
+
+    /** Serial. */
+    private static final long serialVersionUID = 3395622417236158210L;
+
+    /** Bucket of the tags that are not bucketed by month. */
+    public static final int NO_BUCKET = 0;
+
+    @PartitionKey
+    private String tag;
+
+    @PartitionKey(1)
+    private int bucket;
+
+    @Column
+    private UUID userid;
+
+    /**
+     * Default constructor.
+     */
+    public VideosByTag() {}
+
+    /**
+     * Constructor with all parameters.
+     */
+    public VideosByTag(String tag, int bucket, UUID userid, UUID videoid, String name, String previewImageLocation, Date addedDate) {
+        super(name, previewImageLocation, addedDate, videoid);
+        this.tag    = tag;
+        this.bucket = bucket;
+        this.userid = userid;
+    }
+
+    /**
+     * Mapping to GRPC generated classes.
+     */
+    public VideoPreview toVideoPreview() {
+        return VideoPreview
+                .newBuilder()
+                .setAddedDate(TypeConverter.dateToTimestamp(getAddedDate()))
+                .setName(getName())
+                .setPreviewImageLocation(Optional.ofNullable(getPreviewImageLocation()).orElse("N/A"))
+                .setUserId(TypeConverter.uuidToUuid(getUserid()))
+                .setVideoId(TypeConverter.uuidToUuid(getVideoid()))
+                .build();
+    }
+
+    /**
+     * Getter for attribute 'tag'.
+     *
+     * @return
+     *       current value of 'tag'
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Setter for attribute 'tag'.
+     * @param tag
+     * 		new value for 'tag '
+     */
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Getter for attribute 'bucket'.
+     *
+     * @return
+     *       current value of 'bucket'
+     */
+    public int getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Setter for attribute 'bucket'.
+     * @param bucket
+     * 		new value for 'bucket '
+     */
+    public void setBucket(int bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * Getter for attribute 'userid'.
+     *
+     * @return
+     *       current value of 'userid'
+     */
+    public UUID getUserid() {
+        return userid;
+    }
+
+    /**
+     * Setter for attribute 'userid'.
+     * @param userid
+     * 		new value for 'userid '
+     */
+    public void setUserid(UUID userid) {
+        this.userid = userid;
+    }
+}
@@ -18,7 +18,12 @@ import com.xqbase.etcd4j.EtcdClient;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.ServerServiceDefinition;
+import killrvideo.async.VideoCommentsFanOut;
+import killrvideo.cache.LatestVideosWindow;
+import killrvideo.cache.UserVideosFirstPageCache;
+import killrvideo.cache.VideoCache;
 import killrvideo.configuration.KillrVideoConfiguration;
+import killrvideo.dao.dse.VideosByTagDseDao;
 import killrvideo.dao.event.CassandraMutationErrorHandler;
 import killrvideo.service.RatingsService;
 import killrvideo.service.SearchService;
@@ -78,6 +83,21 @@ public class GrpcServer {
     @Inject
     private CassandraMutationErrorHandler cassandraMutationErrorHandler;   
 
+    @Inject
+    private LatestVideosWindow latestVideosWindow;
+
+    @Inject
+    private VideoCache videoCache;
+
+    @Inject
+    private UserVideosFirstPageCache userVideosFirstPageCache;
+
+    @Inject
+    private VideosByTagDseDao videosByTagDseDao;
+
+    @Inject
+    private VideoCommentsFanOut videoCommentsFanOut;
+
     /**
      * GRPC Server to set up.
      */
@@ -115,6 +135,11 @@ public class GrpcServer {
         // Initialize Event bus
         eventBus.register(suggestedVideosService);
         eventBus.register(cassandraMutationErrorHandler);
+        eventBus.register(latestVideosWindow);
+        eventBus.register(videoCache);
+        eventBus.register(userVideosFirstPageCache);
+        eventBus.register(videosByTagDseDao);
+        eventBus.register(videoCommentsFanOut);
 
         /**
          * Declare a shutdown hook otherwise the JVM
@@ -146,6 +171,11 @@ public class GrpcServer {
     public void stop() {
         eventBus.unregister(suggestedVideosService);
         eventBus.unregister(cassandraMutationErrorHandler);
+        eventBus.unregister(latestVideosWindow);
+        eventBus.unregister(videoCache);
+        eventBus.unregister(userVideosFirstPageCache);
+        eventBus.unregister(videosByTagDseDao);
+        eventBus.unregister(videoCommentsFanOut);
         server.shutdown();
     }
 
@@ -1,11 +1,14 @@
 package killrvideo.grpc;
 
+import static java.util.stream.Collectors.toList;
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 import static killrvideo.utils.TypeConverter.dateToTimestamp;
 import static killrvideo.utils.TypeConverter.uuidToTimeUuid;
 import static killrvideo.utils.TypeConverter.uuidToUuid;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -17,15 +20,26 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import killrvideo.async.VideoCommentsFanOut;
+import killrvideo.cache.CommentCountsCache;
+import killrvideo.cache.VideoCommentsCache;
 import killrvideo.comments.CommentsServiceGrpc.CommentsServiceImplBase;
 import killrvideo.comments.CommentsServiceOuterClass;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoResponse;
+import killrvideo.comments.CommentsServiceOuterClass.CommentCount;
+import killrvideo.comments.CommentsServiceOuterClass.GetCommentCountsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.GetCommentCountsResponse;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsResponse;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.StreamVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.SubscribeVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
 import killrvideo.dao.bean.QueryCommentByVideo;
 import killrvideo.dao.bean.CommentListResult;
 import killrvideo.dao.bean.QueryCommentByUser;
@@ -53,6 +67,18 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
     @Inject
     private CommentDseDao dseCommentDao;
     
+    /** Newest comments of the videos, kept current by commentOnVideo. */
+    @Inject
+    private VideoCommentsCache videoCommentsCache;
+    
+    /** Subscribers to the new comments of the videos. */
+    @Inject
+    private VideoCommentsFanOut videoCommentsFanOut;
+    
+    /** Comment counts of the videos, kept current by commentOnVideo. */
+    @Inject
+    private CommentCountsCache commentCountsCache;
+    
     /** JSR-303 Validator. */
     @Inject
     private KillrVideoInputValidator validator;
@@ -92,6 +118,8 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
                     grpcResObserver.onError(error);
                 } else {
                     traceSuccess("commentOnVideo", start);
+                    videoCommentsCache.append(q);
+                    incrementCommentCount(q);
                     msgDao.publishCommentCreateEvent(grpcReq, Instant.ofEpochMilli(start));
                     grpcResObserver.onNext(CommentOnVideoResponse.newBuilder().build());
                     grpcResObserver.onCompleted();
@@ -104,6 +132,8 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
             try {
                 dseCommentDao.insertComment(q);
                 traceSuccess("commentOnVideo", start);
+                videoCommentsCache.append(q);
+                incrementCommentCount(q);
                 msgDao.publishCommentCreateEvent(grpcReq, Instant.ofEpochMilli(start));
                 grpcResObserver.onNext(CommentOnVideoResponse.newBuilder().build());
                 grpcResObserver.onCompleted();
@@ -128,6 +158,19 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         // Executing request ASYNC and Mapping Back to GRPC
         final long start = System.currentTimeMillis();
         
+        // First pages of the videos being commented are served from the cache
+        final boolean firstPage = !query.getCommentId().isPresent() && isBlank(grpcReq.getPagingState());
+        if (firstPage) {
+            final Optional<CommentListResult> cached = videoCommentsCache.getFirstPage(query.getVideoId(), query.getPageSize());
+            if (cached.isPresent()) {
+                traceSuccess("getVideoComments", start);
+                responseObserver.onNext(mapFromDseVideoCommentToGrpcResponse(cached.get()));
+                responseObserver.onCompleted();
+                return;
+            }
+        }
+        final long cacheGeneration = videoCommentsCache.generation(query.getVideoId());
+        
         /** 
          * As reference application we propose 2 implementations SYNC and ASYNC.
          * => Pick the one relevant to your use cases
@@ -136,9 +179,25 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         if (asynchronousExecution) {
             
             // ASYNCHRONOUS works with ComputableFuture
+            if (!firstPage) {
+                // Rows are mapped straight into the response, first pages go through the beans kept by the cache
+                dseCommentDao.findVideoCommentsAsync(query).whenComplete((response, error) -> {
+                    if (response != null) {
+                        traceSuccess("getVideoComments", start);
+                        responseObserver.onNext(response);
+                        responseObserver.onCompleted();
+                    } else if (error != null){
+                        traceError("getVideoComments", start, error);
+                        msgDao.publishExceptionEvent(grpcReq, error);
+                        responseObserver.onError(error);
+                    }
+                });
+                return;
+            }
             dseCommentDao.findCommentsByVideosIdAsync(query).whenComplete((result, error) -> {
                 if (result != null) {
                     traceSuccess("getVideoComments", start);
+                    videoCommentsCache.putFirstPage(query.getVideoId(), result, cacheGeneration);
                     responseObserver.onNext(mapFromDseVideoCommentToGrpcResponse(result));
                     responseObserver.onCompleted();
                 } else if (error != null){
@@ -151,8 +210,14 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         } else {
            // SYNCHRONOUS with the classic try/catch
             try {
+                if (firstPage) {
+                    final CommentListResult result = dseCommentDao.findCommentsByVideoId(query);
+                    videoCommentsCache.putFirstPage(query.getVideoId(), result, cacheGeneration);
+                    responseObserver.onNext(mapFromDseVideoCommentToGrpcResponse(result));
+                } else {
+                    responseObserver.onNext(dseCommentDao.findVideoComments(query));
+                }
                 traceSuccess("getVideoComments", start);
-                responseObserver.onNext(mapFromDseVideoCommentToGrpcResponse(dseCommentDao.findCommentsByVideoId(query)));
                 responseObserver.onCompleted();
             } catch(Throwable t) {
                 traceError("getVideoComments", start, t);
@@ -162,6 +227,86 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         }
     }
     
+    /**
+     * Stream the comments of a video, pages being fetched only as fast as the client reads them.
+     * Rows are converted straight into {@link VideoComment} by the DAO, without {@link CommentListResult}.
+     */
+    @Override
+    public void streamVideoComments(final StreamVideoCommentsRequest grpcReq, StreamObserver<VideoComment> responseObserver) {
+        
+        // Parameter validations
+        Assert.isTrue(validator.isValid(grpcReq, responseObserver), "Invalid parameter for 'streamVideoComments'");
+        
+        QueryCommentByVideo query = new QueryCommentByVideo();
+        if (grpcReq.hasStartingCommentId() && 
+                !isBlank(grpcReq.getStartingCommentId().getValue())) {
+            query.setCommentId(Optional.of(UUID.fromString(grpcReq.getStartingCommentId().getValue())));
+        }
+        query.setVideoId(UUID.fromString(grpcReq.getVideoId().getValue()));
+        query.setPageSize(grpcReq.getFetchSize());
+        query.setPageState(Optional.empty());
+        
+        dseCommentDao.streamVideoComments(query, (ServerCallStreamObserver<VideoComment>) responseObserver,
+                grpcReq.getLimit()).start();
+    }
+    
+    /**
+     * Push the new comments of a video until the client cancels the call, instead of polling getVideoComments.
+     * Only the comments posted through this instance are received.
+     */
+    @Override
+    public void subscribeVideoComments(final SubscribeVideoCommentsRequest grpcReq, StreamObserver<VideoComment> responseObserver) {
+        
+        // Parameter validations
+        Assert.isTrue(validator.isValid(grpcReq, responseObserver), "Invalid parameter for 'subscribeVideoComments'");
+        
+        videoCommentsFanOut.subscribe(UUID.fromString(grpcReq.getVideoId().getValue()),
+                (ServerCallStreamObserver<VideoComment>) responseObserver);
+    }
+    
+    /**
+     * Number of comments of several videos, read from the comment counters (through a cache) rather than by
+     * paging through the comments.
+     */
+    @Override
+    public void getCommentCounts(final GetCommentCountsRequest grpcReq, StreamObserver<GetCommentCountsResponse> responseObserver) {
+        
+        // Parameter validations
+        Assert.isTrue(validator.isValid(grpcReq, responseObserver), "Invalid parameter for 'getCommentCounts'");
+        
+        if (!dseCommentDao.isCommentCountsEnabled()) {
+            responseObserver.onError(Status.UNIMPLEMENTED
+                    .withDescription("Comment counts are disabled (killrvideo.services.comment.counts.enabled)")
+                    .asRuntimeException());
+            return;
+        }
+        
+        final long start = System.currentTimeMillis();
+        final List<UUID> videoIds = grpcReq
+                .getVideoIdsList()
+                .stream()
+                .map(uuid -> UUID.fromString(uuid.getValue()))
+                .collect(toList());
+        
+        commentCountsCache.getCommentCounts(videoIds).whenComplete((counts, error) -> {
+            if (counts != null) {
+                traceSuccess("getCommentCounts", start);
+                final GetCommentCountsResponse.Builder builder = GetCommentCountsResponse.newBuilder();
+                for (int i = 0; i < counts.size(); i++) {
+                    builder.addCounts(CommentCount.newBuilder()
+                            .setVideoId(grpcReq.getVideoIds(i))
+                            .setComments(counts.get(i))
+                            .build());
+                }
+                responseObserver.onNext(builder.build());
+                responseObserver.onCompleted();
+            } else if (error != null) {
+                traceError("getCommentCounts", start, error);
+                responseObserver.onError(Status.INTERNAL.withCause(error).asRuntimeException());
+            }
+        });
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void getUserComments(final GetUserCommentsRequest grpcReq, StreamObserver<GetUserCommentsResponse> responseObserver) {
@@ -186,10 +331,10 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         if (asynchronousExecution) {
         
             // ASYNCHRONOUS works with ComputableFuture
-            dseCommentDao.findCommentsByUserIdAsync(query).whenComplete((result, error) -> {
-                if (result != null) {
+            dseCommentDao.findUserCommentsAsync(query).whenComplete((response, error) -> {
+                if (response != null) {
                     traceSuccess("getUserComments", start);
-                    responseObserver.onNext(mapFromDseUserCommentToGrpcResponse(result));
+                    responseObserver.onNext(response);
                     responseObserver.onCompleted();
                 } else if (error != null){
                     traceError("getUserComments", start, error);
@@ -201,8 +346,8 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         } else {
             // SYNCHRONOUS with the classic try/catch
             try {
+                responseObserver.onNext(dseCommentDao.findUserComments(query));
                 traceSuccess("getUserComments", start);
-                responseObserver.onNext(mapFromDseUserCommentToGrpcResponse(dseCommentDao.findCommentsByUserId(query)));
                 responseObserver.onCompleted();
             } catch(Throwable t) {
                 traceError("getUserComments", start, t);
@@ -212,6 +357,27 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         }
     }
     
+    /**
+     * Count a comment once written. A failed increment is logged and published but never retried (counter updates
+     * are not idempotent), nor reported to the client whose comment is saved.
+     *
+     * @param comment
+     *      comment written
+     */
+    private void incrementCommentCount(final Comment comment) {
+        if (!dseCommentDao.isCommentCountsEnabled()) {
+            return;
+        }
+        dseCommentDao.incrementCommentCountAsync(comment.getVideoid()).whenComplete((result, error) -> {
+            if (error != null) {
+                LOGGER.error("Exception incrementing comment count of video " + comment.getVideoid() + " : " + mergeStackTrace(error));
+                msgDao.publishExceptionEvent(comment, error);
+            } else {
+                commentCountsCache.commentCounted(comment.getVideoid());
+            }
+        });
+    }
+    
     /**
      * Utility to TRACE.
      *
@@ -278,24 +444,6 @@ public class GrpcServiceComments extends CommentsServiceImplBase {
         return builder.build();
     }
     
-    // Map from CommentDseDao response bean to expected GRPC object.
-    private GetUserCommentsResponse mapFromDseUserCommentToGrpcResponse(CommentListResult dseRes) {
-        LOGGER.debug("{} comment(s) retrieved from DSE", dseRes.getComments().size());
-        final GetUserCommentsResponse.Builder builder = GetUserCommentsResponse.newBuilder();
-        for (Comment c : dseRes.getComments()) {
-           LOGGER.debug(" + Mapping comment {} on user {} ", c.getCommentid().toString(), c.getUserid());
-           builder.setUserId(uuidToUuid(c.getUserid()));
-           builder.addComments(CommentsServiceOuterClass.UserComment.newBuilder()
-                   .setComment(c.getComment())
-                   .setCommentId(uuidToTimeUuid(c.getCommentid()))
-                   .setVideoId(uuidToUuid(c.getVideoid()))
-                   .setCommentTimestamp(dateToTimestamp(c.getDateOfComment()))
-                   .build());
-        }
-        dseRes.getPagingState().ifPresent(builder::setPagingState);
-        return builder.build();
-    }
-    
     /**
      * Utility from exposition to Dse query.
      * 
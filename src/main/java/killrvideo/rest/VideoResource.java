@@ -1,19 +1,37 @@
 package killrvideo.rest;
 
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
-import killrvideo.dao.bean.CommentListResult;
 import killrvideo.dao.bean.QueryCommentByVideo;
 import killrvideo.dao.dse.CommentDseDao;
+import killrvideo.entity.Comment;
 
 /**
  * Proposal to work on Video (API).
@@ -23,25 +41,172 @@ import killrvideo.dao.dse.CommentDseDao;
 @RestController
 @RequestMapping("/api/v1/video")
 public class VideoResource {
-    
+
     /** Loger for that class. */
     private static Logger LOGGER = LoggerFactory.getLogger(VideoResource.class);
-    
+
     @Autowired
     private CommentDseDao dseDao;
-    
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Maximum page size of the comments. */
+    @Value("${killrvideo.rest.comments.maxPageSize: 500}")
+    private int maxPageSize;
+
+    /** Time given to a comments page before the request fails. */
+    @Value("${killrvideo.rest.comments.timeoutMillis: 10000}")
+    private long timeoutMillis;
+
     /*
     @RequestMapping(method=RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public String findVideoById(@PathVariable(value = "{videoid}") String videoId) {
         return "OK";
     }*/
-    
+
+    /**
+     * Page of the comments of a video, as <code>{"comments":[...],"pagingState":"..."}</code>.
+     *
+     * The request thread is released once the query is sent. The response starts with the first comment read (or
+     * the end of an empty page) : a query failing before is answered with an error status. The JSON is then written
+     * by the async executor of Spring MVC while the DAO threads keep reading, and ends with the paging state of the
+     * next page (null on the last page). A query failing or timing out once the response has started ends the JSON
+     * with an <code>"error"</code> field and a null paging state.
+     */
     @RequestMapping(method=RequestMethod.GET, value="/{videoid}/comments", produces = MediaType.APPLICATION_JSON_VALUE)
-    public CommentListResult getVideoComments(@PathVariable String videoid) {
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getVideoComments(@PathVariable String videoid,
+            @RequestParam(value = "pageSize", defaultValue = "10") int pageSize,
+            @RequestParam(value = "pagingState", required = false) String pagingState) {
         LOGGER.debug("Listing of video comments");
+        if (pageSize <= 0 || pageSize > maxPageSize) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
         QueryCommentByVideo q = new QueryCommentByVideo();
-        q.setVideoId(UUID.fromString(videoid));
-        return dseDao.findCommentsByVideoId(q);
+        try {
+            q.setVideoId(UUID.fromString(videoid));
+        } catch (IllegalArgumentException ex) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        q.setPageSize(pageSize);
+        q.setPageState(Optional.ofNullable(pagingState).filter(StringUtils::isNotBlank));
+
+        final JsonCommentsWriter writer = new JsonCommentsWriter();
+        dseDao.forEachCommentByVideoAsync(q, writer::onComment).whenComplete((nextPagingState, error) -> {
+            if (error != null) {
+                LOGGER.error("Listing of video comments failed : " + mergeStackTrace(error));
+            }
+            writer.onEnd(nextPagingState, error);
+        });
+        return writer.response;
+    }
+
+    /**
+     * Write a page of comments to the response, one comment at a time.
+     *
+     * <br/>
+     * <br/>
+     *
+     * The DAO threads only queue the comments, the JSON is written by the thread given to
+     * {@link #writeTo(OutputStream)} so that a slow client never blocks them.
+     */
+    private class JsonCommentsWriter implements StreamingResponseBody {
+
+        /** Comments read and not yet written, then the {@link PageEnd}. */
+        private final BlockingQueue<Object> rows = new LinkedBlockingQueue<>();
+
+        /** Response, available with the first comment or the end of the page. */
+        private final CompletableFuture<ResponseEntity<StreamingResponseBody>> response = new CompletableFuture<>();
+
+        private final long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+
+        /** Set when the client is gone, to stop reading the page. */
+        private volatile boolean cancelled;
+
+        private void onComment(Comment comment) {
+            if (cancelled) {
+                throw new IllegalStateException("Client gone, stop reading the page");
+            }
+            rows.add(comment);
+            start();
+        }
+
+        private void onEnd(Optional<String> nextPagingState, Throwable error) {
+            // Nothing sent yet, the request fails with an error status
+            if (error != null && response.completeExceptionally(error)) {
+                return;
+            }
+            rows.add(new PageEnd(error == null ? nextPagingState.orElse(null) : null,
+                    error == null ? null : "Listing of video comments failed"));
+            start();
+        }
+
+        private void start() {
+            if (!response.isDone()) {
+                response.complete(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(this));
+            }
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try {
+                outputStream.write("{\"comments\":[".getBytes(StandardCharsets.UTF_8));
+                boolean first = true;
+                while (true) {
+                    final Object row = rows.poll(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    if (row == null) {
+                        cancelled = true;
+                        writeEnd(outputStream, new PageEnd(null, "Listing of video comments timed out"));
+                        return;
+                    }
+                    if (row instanceof PageEnd) {
+                        writeEnd(outputStream, (PageEnd) row);
+                        return;
+                    }
+                    if (!first) {
+                        outputStream.write(',');
+                    }
+                    outputStream.write(objectMapper.writeValueAsBytes(row));
+                    first = false;
+                    // Send what has been read, without a flush per comment
+                    if (rows.isEmpty()) {
+                        outputStream.flush();
+                    }
+                }
+            } catch (IOException ex) {
+                cancelled = true;
+                throw ex;
+            } catch (InterruptedException ex) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Listing of video comments interrupted");
+            }
+        }
+
+        private void writeEnd(OutputStream outputStream, PageEnd end) throws IOException {
+            final StringBuilder json = new StringBuilder("],\"pagingState\":")
+                    .append(objectMapper.writeValueAsString(end.pagingState));
+            if (end.error != null) {
+                json.append(",\"error\":").append(objectMapper.writeValueAsString(end.error));
+            }
+            outputStream.write(json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * End of a page : paging state of the next page, or the error which interrupted it.
+     */
+    private static final class PageEnd {
+
+        private final String pagingState;
+
+        private final String error;
+
+        private PageEnd(String pagingState, String error) {
+            this.pagingState = pagingState;
+            this.error = error;
+        }
     }
 
 }
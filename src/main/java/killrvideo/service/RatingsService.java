@@ -3,6 +3,9 @@ package killrvideo.service;
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -13,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
@@ -24,6 +28,10 @@ import com.google.common.eventbus.EventBus;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import killrvideo.async.BatchLoader;
+import killrvideo.async.BatchLoaders;
+import killrvideo.async.MultiGet;
+import killrvideo.async.SingleFlight;
 import killrvideo.dao.event.CassandraMutationError;
 import killrvideo.entity.Schema;
 import killrvideo.entity.VideoRating;
@@ -64,9 +72,26 @@ public class RatingsService extends RatingsServiceImplBase {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    BatchLoaders batchLoaders;
+
+    @Inject
+    MultiGet multiGet;
+
     private String videoRatingsTableName;
     private PreparedStatement rateVideo_updateRatingPrepared;
 
+    /** Concurrent reads of the rating of the same video share one query. */
+    private SingleFlight<UUID, VideoRating> ratingLoads;
+
+    /** Reads of distinct ratings grouped in IN(..) queries by replica, when batching is enabled. */
+    private BatchLoader<UUID, VideoRating> ratingBatches;
+
+    private PreparedStatement getRating_byIdsPrepared;
+
     @PostConstruct
     public void init(){
         videoRatingsTableName = videoRatingMapper.getTableMetadata().getName();
@@ -78,6 +103,18 @@ public class RatingsService extends RatingsServiceImplBase {
                         .and(QueryBuilder.incr("rating_total", QueryBuilder.bindMarker()))
                         .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        ratingLoads = new SingleFlight<>("ratings", metricRegistry);
+        if (batchLoaders.isEnabled()) {
+            getRating_byIdsPrepared = dseSession.prepare(
+                    QueryBuilder
+                            .select()
+                            .all()
+                            .from(Schema.KEYSPACE, videoRatingsTableName)
+                            .where(QueryBuilder.in("videoid", QueryBuilder.bindMarker()))
+            ).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            ratingBatches = batchLoaders.create("ratings", this::getRatings);
+        }
     }
 
     @Override
@@ -161,7 +198,7 @@ public class RatingsService extends RatingsServiceImplBase {
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
 
         // videoId matches the partition key set in the VideoRating class
-        FutureUtils.buildCompletableFuture(videoRatingMapper.getAsync(videoId))
+        ratingLoads.get(videoId, this::loadRating)
                 .handle((ratings, ex) -> {
                     if (ex != null) {
                         LOGGER.error("Exception when getting video rating : " + mergeStackTrace(ex));
@@ -231,4 +268,64 @@ public class RatingsService extends RatingsServiceImplBase {
                 });
     }
 
+    /**
+     * Read the rating of a video for other services, sharing the reads in flight like
+     * {@link #getRating(GetRatingRequest, StreamObserver)}.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      rating, null if the video has never been rated
+     */
+    public CompletableFuture<VideoRating> getVideoRating(UUID videoId) {
+        return ratingLoads.get(videoId, this::loadRating);
+    }
+
+    /**
+     * Read the rating of a video, with the next batch when batching is enabled.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      rating, null if the video has never been rated
+     */
+    private CompletableFuture<VideoRating> loadRating(UUID videoId) {
+        if (ratingBatches != null) {
+            return ratingBatches.load(videoId);
+        }
+        return FutureUtils.buildCompletableFuture(videoRatingMapper.getAsync(videoId));
+    }
+
+    /**
+     * Load a batch of ratings with one IN(..) query per group of videos owned by the same replicas
+     * (see {@link MultiGet#getMapByReplica(String, java.util.Collection, java.util.function.Function)}).
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      ratings found, by video id
+     */
+    private CompletableFuture<Map<UUID, VideoRating>> getRatings(List<UUID> videoIds) {
+        return multiGet.getMapByReplica(Schema.KEYSPACE, videoIds, this::getRatingsByIds);
+    }
+
+    /**
+     * Load ratings owned by the same replicas with a single IN(..) query.
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      ratings found, by video id
+     */
+    private CompletableFuture<Map<UUID, VideoRating>> getRatingsByIds(List<UUID> videoIds) {
+        BoundStatement getRatingsQuery = getRating_byIdsPrepared.bind()
+                .setList(0, videoIds, UUID.class);
+
+        return FutureUtils.buildCompletableFuture(videoRatingMapper.mapAsync(dseSession.executeAsync(getRatingsQuery)))
+                .thenApply(ratings -> {
+                    final Map<UUID, VideoRating> ratingsById = new HashMap<>();
+                    ratings.forEach(rating -> ratingsById.put(rating.getVideoid(), rating));
+                    return ratingsById;
+                });
+    }
 }
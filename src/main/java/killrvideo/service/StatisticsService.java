@@ -3,11 +3,11 @@ package killrvideo.service;
 import static java.util.stream.Collectors.toList;
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -16,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
@@ -27,6 +28,8 @@ import com.google.common.eventbus.EventBus;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import killrvideo.async.MultiGet;
+import killrvideo.async.SingleFlight;
 import killrvideo.common.CommonTypes.Uuid;
 import killrvideo.dao.event.CassandraMutationError;
 import killrvideo.entity.Schema;
@@ -61,8 +64,18 @@ public class StatisticsService extends StatisticsServiceImplBase {
     @Inject
     DseSession dseSession;
 
+    @Inject
+    MultiGet multiGet;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
     private String videoPlaybackStatsTableName;
     private PreparedStatement recordPlaybackStarted_incrStatsPrepared;
+    private PreparedStatement getPlaybackStats_byIdsPrepared;
+
+    /** Concurrent reads of the stats of the same video share one query. */
+    private SingleFlight<UUID, VideoPlaybackStats> playbackStatsLoads;
 
     @PostConstruct
     public void init(){
@@ -74,6 +87,16 @@ public class StatisticsService extends StatisticsServiceImplBase {
                         .with(QueryBuilder.incr("views")) //use incr() call to increment my counter field https://docs.datastax.com/en/developer/java-driver/3.2/faq/#how-do-i-increment-counters-with-query-builder
                         .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        getPlaybackStats_byIdsPrepared = dseSession.prepare(
+                QueryBuilder
+                        .select()
+                        .all()
+                        .from(Schema.KEYSPACE, videoPlaybackStatsTableName)
+                        .where(QueryBuilder.in("videoid", QueryBuilder.bindMarker()))
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+
+        playbackStatsLoads = new SingleFlight<>("playbackStats", metricRegistry);
     }
 
     @Override
@@ -118,34 +141,30 @@ public class StatisticsService extends StatisticsServiceImplBase {
             return;
         }
 
-        final List<CompletableFuture<VideoPlaybackStats>> statsFuture = request
+        final List<UUID> videoIds = request
                 .getVideoIdsList()
                 .stream()
                 .map(uuid -> UUID.fromString(uuid.getValue()))
-                .map(uuid -> videoPlaybackStatsMapper.getAsync(uuid))
-                .map(uuid -> FutureUtils.buildCompletableFuture(uuid))
                 .collect(toList());
 
         final GetNumberOfPlaysResponse.Builder builder = GetNumberOfPlaysResponse
                 .newBuilder();
 
         /**
-         * We fire a list of async SELECT request and wait for all of them
-         * to complete before returning a response to the client
+         * We fire an async SELECT request per distinct video id, with a bounded
+         * number of them in flight, and wait for all of them to complete before
+         * returning a response to the client
          */
-        CompletableFuture
-                .allOf(statsFuture.toArray(new CompletableFuture[statsFuture.size()]))
-                .thenApply(v -> statsFuture.stream().map(CompletableFuture::join).collect(toList()))
+        multiGet
+                .getAll(videoIds, videoId -> playbackStatsLoads.get(videoId,
+                        id -> FutureUtils.buildCompletableFuture(videoPlaybackStatsMapper.getAsync(id))))
                 .handle((list, ex) ->{
                     if (list != null) {
-                        final Map<Uuid, PlayStats> result = list.stream()
-                                .filter(x -> x != null)
-                                .map(VideoPlaybackStats::toPlayStats)
-                                .collect(Collectors.toMap(x -> x.getVideoId(), x -> x));
-
-                        for (Uuid requestedVideoId : request.getVideoIdsList()) {
-                            if (result.containsKey(requestedVideoId)) {
-                                builder.addStats(result.get(requestedVideoId));
+                        // Results come back in request order, null when the video has never been played
+                        for (int i = 0; i < list.size(); i++) {
+                            final Uuid requestedVideoId = request.getVideoIds(i);
+                            if (list.get(i) != null) {
+                                builder.addStats(list.get(i).toPlayStats());
                             } else {
                                 builder.addStats(PlayStats
                                         .newBuilder()
@@ -168,4 +187,37 @@ public class StatisticsService extends StatisticsServiceImplBase {
                     return list;
                 });
     }
+
+    /**
+     * Read the playback stats of several videos for other services. Counters are read with IN(..) queries,
+     * one per group of videos owned by the same replicas (see {@link MultiGet#getAllByReplica(String, List, java.util.function.Function)}).
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      stats in the order of the requested ids, null when a video has never been played
+     */
+    public CompletableFuture<List<VideoPlaybackStats>> getPlaybackStats(List<UUID> videoIds) {
+        return multiGet.getAllByReplica(Schema.KEYSPACE, videoIds, this::getPlaybackStatsByIds);
+    }
+
+    /**
+     * Load the stats of a batch of videos with a single IN(..) query.
+     *
+     * @param videoIds
+     *      video unique identifiers
+     * @return
+     *      stats found, by video id
+     */
+    private CompletableFuture<Map<UUID, VideoPlaybackStats>> getPlaybackStatsByIds(List<UUID> videoIds) {
+        BoundStatement getPlaybackStatsQuery = getPlaybackStats_byIdsPrepared.bind()
+                .setList(0, videoIds, UUID.class);
+
+        return FutureUtils.buildCompletableFuture(videoPlaybackStatsMapper.mapAsync(dseSession.executeAsync(getPlaybackStatsQuery)))
+                .thenApply(stats -> {
+                    final Map<UUID, VideoPlaybackStats> statsById = new HashMap<>();
+                    stats.forEach(stat -> statsById.put(stat.getVideoid(), stat));
+                    return statsById;
+                });
+    }
 }
@@ -39,6 +39,7 @@ import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 
 import io.grpc.stub.StreamObserver;
+import killrvideo.cache.VideoCache;
 import killrvideo.common.CommonTypes.Uuid;
 import killrvideo.entity.Schema;
 import killrvideo.entity.Video;
@@ -56,6 +57,7 @@ import killrvideo.utils.FutureUtils;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
 
 @Service
 //public class SuggestedVideosService extends AbstractSuggestedVideoService {
@@ -75,6 +77,9 @@ public class SuggestedVideosService extends SuggestedVideoServiceImplBase {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    VideoCache videoCache;
+
     private String videosTableName;
     private PreparedStatement getRelatedVideos_getVideosPrepared;
 
@@ -110,10 +115,10 @@ public class SuggestedVideosService extends SuggestedVideoServiceImplBase {
                 .setVideoId(videoIdUuid);
 
         /**
-         * Load the source video asynchronously
+         * Load the source video asynchronously, from the cache when possible
          */
         final CompletableFuture<Video> videoFuture =
-                FutureUtils.buildCompletableFuture(videoMapper.getAsync(videoId))
+                videoCache.getVideo(videoId)
                         .handle((video, ex) -> {
                             if (video != null) {
                                 return video;
@@ -339,6 +344,17 @@ public class SuggestedVideosService extends SuggestedVideoServiceImplBase {
         });
     }
 
+    /**
+     * Add the videos of a bulk submission to the graph. The graph writes are NOT batched : each video is still
+     * written by its own traversal, sent asynchronously, so that a failing video does not lose the others.
+     * @param youTubeVideosAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideosAdded youTubeVideosAdded) {
+        LOGGER.debug("Start handling YouTubeVideosAdded (" + youTubeVideosAdded.getVideosCount() + " videos)");
+        youTubeVideosAdded.getVideosList().forEach(this::handle);
+    }
+
     /**
      * Make @Subscribe subscriber magic happen anytime a user is created from
      * UserManagementService.createUser() with a call to eventBus.post().
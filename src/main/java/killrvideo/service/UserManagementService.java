@@ -2,10 +2,14 @@ package killrvideo.service;
 
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
-import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -26,6 +30,7 @@ import com.google.common.eventbus.EventBus;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import killrvideo.async.MultiGet;
 import killrvideo.common.CommonTypes;
 import killrvideo.dao.event.CassandraMutationError;
 import killrvideo.entity.Schema;
@@ -65,6 +70,9 @@ public class UserManagementService extends UserManagementServiceImplBase {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    MultiGet multiGet;
+
     private String usersTableName;
     private String userCredentialsTableName;
     private PreparedStatement createUser_checkEmailPrepared;
@@ -291,24 +299,28 @@ public class UserManagementService extends UserManagementServiceImplBase {
             return;
         }
 
-        final UUID[] userIds = request
+        final List<UUID> userIds = request
                 .getUserIdsList()
                 .stream()
                 .map(uuid -> UUID.fromString(uuid.getValue()))
-                .toArray(size -> new UUID[size]);
+                .collect(Collectors.toList());
 
         /**
          * Instead of firing multiple async SELECT, we can as well use
          * the IN(..) clause to fetch multiple user infos. It is recommended
          * to limit the number of values inside the IN clause to a dozen
+         * so user ids are grouped by replicas and split in small batches,
+         * each of them being a single IN(..) query. Like a single IN(..) query,
+         * a user requested several times is returned once
          */
-        BoundStatement getUsersQuery = getUserProfile_getUsersPrepared.bind()
-                .setList(0, Arrays.asList(userIds), UUID.class);
-
-        FutureUtils.buildCompletableFuture(userMapper.mapAsync(dseSession.executeAsync(getUsersQuery)))
+        multiGet
+                .getMapByReplica(Schema.KEYSPACE, userIds, this::getUsers)
                 .handle((users, ex) -> {
                     if (users != null) {
-                        users.forEach(user -> builder.addProfiles(user.toUserProfile()));
+                        new LinkedHashSet<>(userIds).stream()
+                                .map(users::get)
+                                .filter(user -> user != null)
+                                .forEach(user -> builder.addProfiles(user.toUserProfile()));
                         responseObserver.onNext(builder.build());
                         responseObserver.onCompleted();
 
@@ -322,4 +334,24 @@ public class UserManagementService extends UserManagementServiceImplBase {
                     return users;
                 });
     }
+
+    /**
+     * Load a batch of users with a single IN(..) query.
+     *
+     * @param userIds
+     *      user unique identifiers
+     * @return
+     *      users found, by user id
+     */
+    private CompletableFuture<Map<UUID, User>> getUsers(List<UUID> userIds) {
+        BoundStatement getUsersQuery = getUserProfile_getUsersPrepared.bind()
+                .setList(0, userIds, UUID.class);
+
+        return FutureUtils.buildCompletableFuture(userMapper.mapAsync(dseSession.executeAsync(getUsersQuery)))
+                .thenApply(users -> {
+                    final Map<UUID, User> usersById = new HashMap<>();
+                    users.forEach(user -> usersById.put(user.getUserid(), user));
+                    return usersById;
+                });
+    }
 }
@@ -3,24 +3,21 @@ package killrvideo.service;
 import static java.util.stream.Collectors.toList;
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
-import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.StringJoiner;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -29,34 +26,54 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.Result;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.protobuf.ProtocolStringList;
 
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import killrvideo.async.MultiGet;
+import killrvideo.async.ResultStreamer;
+import killrvideo.async.WriteOutbox;
+import killrvideo.cache.LatestVideosWindow;
+import killrvideo.cache.UserVideosFirstPageCache;
+import killrvideo.cache.VideoCache;
 import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.dao.bean.LatestVideosBuckets;
+import killrvideo.dao.bean.LatestVideosPagingState;
+import killrvideo.dao.bean.VideosByTagPagingState;
+import killrvideo.dao.dse.VideosByTagDseDao;
 import killrvideo.dao.event.CassandraMutationError;
 import killrvideo.entity.LatestVideos;
 import killrvideo.entity.Schema;
 import killrvideo.entity.UserVideos;
 import killrvideo.entity.Video;
+import killrvideo.entity.VideoPlaybackStats;
+import killrvideo.entity.VideoRating;
 import killrvideo.utils.FutureUtils;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 import killrvideo.video_catalog.VideoCatalogServiceGrpc.VideoCatalogServiceImplBase;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.BulkSubmitFailure;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.BulkSubmitYouTubeVideosResponse;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetHomepageVideoPreviewsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetHomepageVideoPreviewsResponse;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetLatestVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetLatestVideoPreviewsResponse;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetUserVideoPreviewsRequest;
@@ -65,28 +82,194 @@ import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoPreviewsRe
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoPreviewsResponse;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoResponse;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideosByTagRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideosByTagResponse;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.HomepageVideoPreview;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.StreamLatestVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoResponse;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoLocationType;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
 import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
 
 @Service
 //public class VideoCatalogService extends AbstractVideoCatalogService {
 public class VideoCatalogService extends VideoCatalogServiceImplBase {
 
-    // used as a container for custom paging state for latest videos
-    class CustomPagingState {
-        public List<String> buckets;
-        public int currentBucket;
-        public String cassandraPagingState;
+    // used as a container for a page of latest videos while its buckets are queried
+    class LatestVideosPage {
+        public LatestVideosBuckets bucketing;
+        public long anchorBucket;
+        public List<List<String>> buckets;
+        public int firstBucket;
+        public Optional<PagingState> firstBucketPagingState;
+        public Optional<Date> startingAddedDate;
+        public Optional<UUID> startingVideoId;
+        public Optional<LatestVideos> resumeAfter;
+        public int pageSize;
+        public final List<LatestVideos> results = new ArrayList<>();
+        public String nextPageState = "";
+        public boolean complete;
+
+        public int recordsStillNeeded() {
+            return pageSize - results.size();
+        }
+    }
+
+    // rows read from one bucket of 'latest_videos', merged across the shards of the bucket
+    class LatestVideosBucketRows {
+        public List<LatestVideos> rows;
+        public Optional<PagingState> pagingState = Optional.empty();
+        public boolean more;
+        public int fetchSize;
+    }
+
+    // consumes a bulk submission stream, at most bulkMaxInFlight videos being written at once
+    class BulkSubmitObserver implements StreamObserver<SubmitYouTubeVideoRequest> {
+        private final ServerCallStreamObserver<BulkSubmitYouTubeVideosResponse> responseObserver;
+        private final BulkSubmitYouTubeVideosResponse.Builder summary = BulkSubmitYouTubeVideosResponse.newBuilder();
+        private List<YouTubeVideoAdded> addedVideos = new ArrayList<>();
+        private int inFlight;
+        private boolean inputCompleted;
+        private boolean finished;
+
+        BulkSubmitObserver(ServerCallStreamObserver<BulkSubmitYouTubeVideosResponse> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public void onNext(SubmitYouTubeVideoRequest request) {
+            final Optional<String> validationError = validator.validationError(request);
+            if (validationError.isPresent()) {
+                onVideoRejected(request, validationError.get());
+                return;
+            }
+
+            synchronized (this) {
+                inFlight++;
+            }
+            final long delayNanos = reserveBulkWriteSlot();
+            if (delayNanos > 0) {
+                scheduler.schedule(() -> write(request), delayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                write(request);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOGGER.warn("Bulk submission of youtube videos cancelled by client : " + t.getMessage());
+            final List<YouTubeVideoAdded> lastVideos;
+            synchronized (this) {
+                inputCompleted = true;
+                finished = true;
+                lastVideos = takeAddedVideos();
+            }
+            // Videos already written are published anyway
+            publishAddedVideos(lastVideos);
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                inputCompleted = true;
+            }
+            requestNextOrFinish();
+        }
+
+        private void write(SubmitYouTubeVideoRequest request) {
+            final CompletableFuture<YouTubeVideoAdded> written;
+            try {
+                written = writeYouTubeVideo(request, true);
+            } catch (IllegalArgumentException ex) {
+                // Ids which are not UUIDs
+                synchronized (this) {
+                    inFlight--;
+                }
+                onVideoRejected(request, ex.getMessage());
+                return;
+            }
+            written.whenComplete((youTubeVideoAdded, ex) -> onVideoWritten(request, youTubeVideoAdded, ex));
+        }
+
+        private void onVideoRejected(SubmitYouTubeVideoRequest request, String reason) {
+            synchronized (this) {
+                summary.addFailures(BulkSubmitFailure.newBuilder()
+                        .setVideoId(request.getVideoId())
+                        .setReason(reason));
+            }
+            requestNextOrFinish();
+        }
+
+        private void onVideoWritten(SubmitYouTubeVideoRequest request, YouTubeVideoAdded youTubeVideoAdded, Throwable ex) {
+            List<YouTubeVideoAdded> fullBatch = null;
+            synchronized (this) {
+                inFlight--;
+                if (ex == null) {
+                    summary.setSubmittedCount(summary.getSubmittedCount() + 1);
+                    addedVideos.add(youTubeVideoAdded);
+                    // Once the stream is cancelled, videos still in flight are published one by one
+                    if (addedVideos.size() >= bulkEventBatchSize || finished) {
+                        fullBatch = takeAddedVideos();
+                    }
+                } else {
+                    final Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+                    LOGGER.error("Exception bulk submitting youtube video : " + mergeStackTrace(cause));
+                    eventBus.post(new CassandraMutationError(request, cause));
+                    summary.addFailures(BulkSubmitFailure.newBuilder()
+                            .setVideoId(request.getVideoId())
+                            .setReason(String.valueOf(cause.getMessage())));
+                }
+            }
+            publishAddedVideos(fullBatch);
+            requestNextOrFinish();
+        }
+
+        private void requestNextOrFinish() {
+            final BulkSubmitYouTubeVideosResponse response;
+            final List<YouTubeVideoAdded> lastVideos;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                if (!inputCompleted) {
+                    responseObserver.request(1);
+                    return;
+                }
+                if (inFlight > 0) {
+                    return;
+                }
+                finished = true;
+                response = summary.build();
+                lastVideos = takeAddedVideos();
+            }
+
+            publishAddedVideos(lastVideos);
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+
+            LOGGER.debug("End bulk submitting youtube videos, " + response.getSubmittedCount()
+                    + " submitted, " + response.getFailuresCount() + " failed");
+        }
+
+        private List<YouTubeVideoAdded> takeAddedVideos() {
+            final List<YouTubeVideoAdded> batch = addedVideos;
+            addedVideos = new ArrayList<>();
+            return batch;
+        }
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VideoCatalogService.class);
 
     public static final int MAX_DAYS_IN_PAST_FOR_LATEST_VIDEOS = 7;
     public static final int LATEST_VIDEOS_TTL_SECONDS = MAX_DAYS_IN_PAST_FOR_LATEST_VIDEOS * 24 * 3600;
-    public static final Pattern PARSE_LATEST_PAGING_STATE = Pattern.compile("((?:[0-9]{8}_){7}[0-9]{8}),([0-9]),(.*)");
+
+    /** Submit mode writing the 3 tables with one logged batch. */
+    public static final String SUBMIT_MODE_LOGGED_BATCH = "logged-batch";
+
+    /** Submit mode writing the 3 tables with parallel idempotent statements. */
+    public static final String SUBMIT_MODE_PARALLEL = "parallel";
 
     @Inject
     Mapper<Video> videoMapper;
@@ -106,16 +289,89 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    LatestVideosWindow latestVideosWindow;
+
+    @Inject
+    VideoCache videoCache;
+
+    @Inject
+    UserVideosFirstPageCache userVideosFirstPageCache;
+
+    @Inject
+    VideosByTagDseDao videosByTagDseDao;
+
+    @Inject
+    RatingsService ratingsService;
+
+    @Inject
+    StatisticsService statisticsService;
+
+    @Inject
+    MultiGet multiGet;
+
+    @Inject
+    ScheduledExecutorService scheduler;
+
+    @Inject
+    WriteOutbox writeOutbox;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    /** Number of 'latest_videos' buckets queried at once, 1 walks the buckets one at a time. */
+    @Value("${killrvideo.services.video.latest.fanout: 1}")
+    private int latestVideosFanout;
+
+    /** Delay between two merges of 'latest_videos' into the in-memory window. */
+    @Value("${killrvideo.services.video.latest.window.refreshSeconds: 30}")
+    private int latestVideosWindowRefreshSeconds;
+
+    /** Duration of the 'latest_videos' buckets in hours (24 = one partition per day). */
+    @Value("${killrvideo.services.video.latest.bucketHours: 24}")
+    private int latestVideosBucketHours;
+
+    /** Number of 'latest_videos' partitions per bucket, videos being spread by a hash of their id. */
+    @Value("${killrvideo.services.video.latest.shards: 1}")
+    private int latestVideosShards;
+
+    /** Time allowed to read the ratings and plays of the homepage once its previews are available. */
+    @Value("${killrvideo.services.video.homepage.budgetMillis: 150}")
+    private long homepageBudgetMillis;
+
+    /** How submitYouTubeVideo() writes its 3 tables, 'logged-batch' or 'parallel'. */
+    @Value("${killrvideo.services.video.submit.mode: logged-batch}")
+    private String submitMode;
+
+    /** Maximum number of videos of a bulk submission written at once. */
+    @Value("${killrvideo.services.video.bulk.maxInFlight: 32}")
+    private int bulkMaxInFlight;
+
+    /** Maximum number of videos written per second by all the bulk submissions, 0 for no limit. */
+    @Value("${killrvideo.services.video.bulk.ratePerSecond: 500}")
+    private int bulkRatePerSecond;
+
+    /** Number of videos published by each YouTubeVideosAdded event of a bulk submission. */
+    @Value("${killrvideo.services.video.bulk.eventBatchSize: 100}")
+    private int bulkEventBatchSize;
+
+    /** Next slot (System.nanoTime()) available for a bulk write, paces the bulk submissions. */
+    private final AtomicLong bulkNextWriteNanos = new AtomicLong(System.nanoTime());
+
     private String videosTableName;
     private String latestVideosTableName;
     private String userVideosTableName;
     private PreparedStatement latestVideoPreview_startingPointPrepared;
     private PreparedStatement latestVideoPreview_noStartingPointPrepared;
+    private PreparedStatement latestVideoPreview_resumeAfterPrepared;
     private PreparedStatement userVideoPreview_startingPointPrepared;
     private PreparedStatement userVideoPreview_noStartingPointPrepared;
     private PreparedStatement submitYouTubeVideo_insertVideo;
     private PreparedStatement submitYouTubeVideo_insertUserVideo;
     private PreparedStatement submitYouTubeVideo_insertLatestVideo;
+    private boolean submitInParallel;
+    private LatestVideosBuckets latestVideosBuckets;
+    private Timer submitTimer;
 
     @PostConstruct
     public void init(){
@@ -132,6 +388,7 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
          */
 
         videosTableName = videoMapper.getTableMetadata().getName();
+        latestVideosBuckets = new LatestVideosBuckets(latestVideosBucketHours, latestVideosShards);
         latestVideosTableName = latestVideosMapper.getTableMetadata().getName();
         userVideosTableName = userVideosMapper.getTableMetadata().getName();
 
@@ -151,6 +408,19 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                         "WHERE yyyymmdd = :ymd "
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
+        /**
+         * Used to resume after the last row of a page built without Cassandra paging
+         * state (in-memory window). Rows sharing the added date of this last row are
+         * filtered out in memory as their order depends on the video id
+         */
+        latestVideoPreview_resumeAfterPrepared = dseSession.prepare(
+                "" +
+                        "SELECT * " +
+                        "FROM " + Schema.KEYSPACE + "." + latestVideosTableName + " " +
+                        "WHERE yyyymmdd = :ymd " +
+                        "AND added_date <= :ad"
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
         // Prepared statements for getUserVideoPreviews()
         userVideoPreview_startingPointPrepared = dseSession.prepare(
                 "" +
@@ -204,6 +474,19 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                         .value("added_date", QueryBuilder.bindMarker())
                         .using(QueryBuilder.ttl(LATEST_VIDEOS_TTL_SECONDS))
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        submitInParallel = SUBMIT_MODE_PARALLEL.equalsIgnoreCase(submitMode);
+        submitTimer = metricRegistry.timer(MetricRegistry.name("killrvideo", "video", "submit",
+                submitInParallel ? SUBMIT_MODE_PARALLEL : SUBMIT_MODE_LOGGED_BATCH));
+
+        /**
+         * Seed the in-memory window of latest videos and merge it periodically with
+         * the table to pick up the videos submitted through other instances
+         */
+        if (latestVideosWindow.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::refreshLatestVideosWindow,
+                    0, Math.max(1, latestVideosWindowRefreshSeconds), TimeUnit.SECONDS);
+        }
     }
 
     @Override
@@ -215,9 +498,99 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
             return;
         }
 
+        final Timer.Context submitTime = submitTimer.time();
+        writeYouTubeVideo(request, submitInParallel)
+                .handle((youTubeVideoAdded, ex) -> {
+                    submitTime.stop();
+                    if (ex == null) {
+                        /**
+                         * eventbus.post() for youTubeVideoAdded below is located both in the
+                         * VideoAddedhandlers and SuggestedVideos Service classes within the handle() method.
+                         * The YouTubeVideoAdded type triggers the handler.  The call in SuggestedVideos is
+                         * responsible for adding data into our graph recommendation engine.
+                         */
+                        eventBus.post(youTubeVideoAdded);
+
+                        responseObserver.onNext(SubmitYouTubeVideoResponse.newBuilder().build());
+                        responseObserver.onCompleted();
+
+                        LOGGER.debug("End submitting youtube video");
+
+                    } else {
+                        // Report the driver exception, not the CompletionException wrapping it
+                        final Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+                        LOGGER.error("Exception submitting youtube video : " + mergeStackTrace(cause));
+
+                        eventBus.post(new CassandraMutationError(request, cause));
+                        responseObserver.onError(Status.INTERNAL.withCause(cause).asRuntimeException());
+
+                    }
+                    return youTubeVideoAdded;
+                });
+    }
+
+    @Override
+    public StreamObserver<SubmitYouTubeVideoRequest> bulkSubmitYouTubeVideos(StreamObserver<BulkSubmitYouTubeVideosResponse> responseObserver) {
+
+        LOGGER.debug("-----Start bulk submitting youtube videos-----");
+
+        /**
+         * Inbound flow control is done by hand : the client is only allowed
+         * to send a new video when a write slot is free
+         */
+        final ServerCallStreamObserver<BulkSubmitYouTubeVideosResponse> serverObserver =
+                (ServerCallStreamObserver<BulkSubmitYouTubeVideosResponse>) responseObserver;
+        serverObserver.disableAutoInboundFlowControl();
+        final BulkSubmitObserver bulkSubmitObserver = new BulkSubmitObserver(serverObserver);
+        serverObserver.request(Math.max(1, bulkMaxInFlight));
+        return bulkSubmitObserver;
+    }
+
+    /**
+     * Reserve a slot for a bulk write, the slots being spaced to honor the configured rate.
+     *
+     * @return
+     *      nanoseconds to wait before writing
+     */
+    private long reserveBulkWriteSlot() {
+        if (bulkRatePerSecond <= 0) {
+            return 0;
+        }
+        final long interval = TimeUnit.SECONDS.toNanos(1) / bulkRatePerSecond;
+        final long now = System.nanoTime();
+        long next;
+        long slot;
+        do {
+            next = bulkNextWriteNanos.get();
+            slot = (next - now > 0) ? next : now;
+        } while (!bulkNextWriteNanos.compareAndSet(next, slot + interval));
+        return slot - now;
+    }
+
+    /**
+     * Publish the videos added by a bulk submission as a single event.
+     *
+     * @param videos
+     *      videos added, nothing is published if null or empty
+     */
+    private void publishAddedVideos(List<YouTubeVideoAdded> videos) {
+        if (videos != null && !videos.isEmpty()) {
+            eventBus.post(YouTubeVideosAdded.newBuilder().addAllVideos(videos).build());
+        }
+    }
+
+    /**
+     * Write the rows of a new YouTube video in 'videos', 'user_videos' and 'latest_videos'.
+     *
+     * @param request
+     *      validated request
+     * @param inParallel
+     *      write the rows with parallel idempotent statements instead of a logged batch
+     * @return
+     *      event to publish once the video is written
+     */
+    CompletableFuture<YouTubeVideoAdded> writeYouTubeVideo(SubmitYouTubeVideoRequest request, boolean inParallel) {
         final Date now = new Date();
-        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        final String yyyyMMdd = dateFormat.format(now);
         final String location = request.getYouTubeVideoId();
         final String name = request.getName();
         final String description = request.getDescription();
@@ -225,6 +598,7 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
         final String previewImageLocation = "//img.youtube.com/vi/"+ location + "/hqdefault.jpg";
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
         final UUID userId = UUID.fromString(request.getUserId().getValue());
+        final String latestVideosBucket = latestVideosBuckets.partitionKey(now, videoId);
 
         final BoundStatement insertVideo = submitYouTubeVideo_insertVideo.bind()
                 .setUUID("videoid", videoId)
@@ -245,7 +619,7 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                 .setTimestamp("added_date", now);
 
         final BoundStatement insertLatestVideo = submitYouTubeVideo_insertLatestVideo.bind()
-                .setString("yyyymmdd", yyyyMMdd)
+                .setString("yyyymmdd", latestVideosBucket)
                 .setUUID("userid", userId)
                 .setUUID("videoid", videoId)
                 .setString("name", name)
@@ -253,53 +627,102 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                 .setTimestamp("added_date", now);
 
         /**
-         * Logged batch insert for automatic retry
+         * The 3 rows share the same write timestamp (in microseconds) whatever
+         * the mode, so that retried writes never overwrite newer data
          */
-        final BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
-        batchStatement.add(insertVideo);
-        batchStatement.add(insertUserVideo);
-        batchStatement.add(insertLatestVideo);
-        batchStatement.setDefaultTimestamp(now.getTime());
-
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
-                .handle((rs, ex) -> {
-                    if (rs != null) {
-                        /**
-                         * See class {@link VideoAddedHandlers} for the impl
-                         */
-                        final YouTubeVideoAdded.Builder youTubeVideoAdded = YouTubeVideoAdded.newBuilder()
-                                .setAddedDate(TypeConverter.dateToTimestamp(now))
-                                .setDescription(description)
-                                .setLocation(location)
-                                .setName(name)
-                                .setPreviewImageLocation(previewImageLocation)
-                                .setTimestamp(TypeConverter.dateToTimestamp(now))
-                                .setUserId(request.getUserId())
-                                .setVideoId(request.getVideoId());
-
-                        youTubeVideoAdded.addAllTags(Sets.newHashSet(tagsList));
+        final long writeTimestamp = TimeUnit.MILLISECONDS.toMicros(now.getTime());
+        final CompletableFuture<Void> writes = inParallel
+                ? writeInParallel(request, writeTimestamp, insertVideo, insertUserVideo, insertLatestVideo)
+                : writeLoggedBatch(writeTimestamp, insertVideo, insertUserVideo, insertLatestVideo);
 
-                        /**
-                         * eventbus.post() for youTubeVideoAdded below is located both in the
-                         * VideoAddedhandlers and SuggestedVideos Service classes within the handle() method.
-                         * The YouTubeVideoAdded type triggers the handler.  The call in SuggestedVideos is
-                         * responsible for adding data into our graph recommendation engine.
-                         */
-                        eventBus.post(youTubeVideoAdded.build());
-
-                        responseObserver.onNext(SubmitYouTubeVideoResponse.newBuilder().build());
-                        responseObserver.onCompleted();
+        return writes.thenApply(rs -> {
+            /**
+             * See class {@link VideoAddedHandlers} for the impl
+             */
+            final YouTubeVideoAdded.Builder youTubeVideoAdded = YouTubeVideoAdded.newBuilder()
+                    .setAddedDate(TypeConverter.dateToTimestamp(now))
+                    .setDescription(description)
+                    .setLocation(location)
+                    .setName(name)
+                    .setPreviewImageLocation(previewImageLocation)
+                    .setTimestamp(TypeConverter.dateToTimestamp(now))
+                    .setUserId(request.getUserId())
+                    .setVideoId(request.getVideoId());
+
+            youTubeVideoAdded.addAllTags(Sets.newHashSet(tagsList));
+            return youTubeVideoAdded.build();
+        });
+    }
 
-                        LOGGER.debug("End submitting youtube video");
+    /**
+     * Write the rows of a new video with a logged batch, retried by Cassandra
+     * through the batchlog at the price of an extra round trip.
+     *
+     * @param writeTimestamp
+     *      write timestamp, in microseconds
+     * @param statements
+     *      inserts of the video
+     * @return
+     *      completed when the batch has been applied
+     */
+    private CompletableFuture<Void> writeLoggedBatch(long writeTimestamp, Statement... statements) {
+        final BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
+        for (Statement statement : statements) {
+            batchStatement.add(statement);
+        }
+        batchStatement.setDefaultTimestamp(writeTimestamp);
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement)).thenApply(rs -> null);
+    }
 
-                    } else if (ex != null) {
-                        LOGGER.error("Exception submitting youtube video : " + mergeStackTrace(ex));
+    /**
+     * Write the rows of a new video with parallel idempotent statements.
+     *
+     * <br/>
+     * <br/>
+     *
+     * When only some of the writes fail, the failed ones are handed to the {@link WriteOutbox} and the
+     * submission succeeds : replaying them with the same timestamp produces the same rows. The submission
+     * fails only when every write failed.
+     *
+     * @param request
+     *      submitted video, reported if a write is given up
+     * @param writeTimestamp
+     *      write timestamp, in microseconds
+     * @param statements
+     *      inserts of the video
+     * @return
+     *      completed when every write has either been applied or handed to the outbox
+     */
+    private CompletableFuture<Void> writeInParallel(SubmitYouTubeVideoRequest request, long writeTimestamp, Statement... statements) {
+        final List<CompletableFuture<Throwable>> writes = new ArrayList<>(statements.length);
+        for (Statement statement : statements) {
+            statement.setIdempotent(true);
+            statement.setDefaultTimestamp(writeTimestamp);
+            writes.add(FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement)).handle((rs, ex) -> ex));
+        }
 
-                        eventBus.post(new CassandraMutationError(request, ex));
-                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+        return CompletableFuture
+                .allOf(writes.toArray(new CompletableFuture[writes.size()]))
+                .thenCompose(v -> {
+                    final List<Integer> failed = new ArrayList<>();
+                    for (int i = 0; i < statements.length; i++) {
+                        if (writes.get(i).join() != null) {
+                            failed.add(i);
+                        }
+                    }
 
+                    final CompletableFuture<Void> result = new CompletableFuture<>();
+                    if (failed.size() == statements.length) {
+                        result.completeExceptionally(writes.get(0).join());
+                    } else {
+                        for (int i : failed) {
+                            LOGGER.warn("Partial write of video " + request.getVideoId().getValue()
+                                    + ", retrying from outbox : " + writes.get(i).join().getMessage());
+                            writeOutbox.add(request, statements[i]);
+                        }
+                        result.complete(null);
                     }
-                    return rs;
+                    return result;
                 });
     }
 
@@ -314,33 +737,70 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
 
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
 
-        // videoId matches the partition key set in the Video class
-        FutureUtils.buildCompletableFuture(videoMapper.getAsync(videoId))
-                .handle((video, ex) -> {
-                    if (video != null) {
-                        LOGGER.debug("Video is: " + (video.getName()));
-
-                        /**
-                         * Check to see if any tags exist, if not, ensure to send
-                         * an empty set instead of null
-                         */
-                        if (CollectionUtils.isEmpty(video.getTags())) {
-                            video.setTags(Collections.emptySet());
-                        }
-                        responseObserver.onNext((video.toVideoResponse()));
-                        responseObserver.onCompleted();
-
-                    } else if (video == null) {
-                        LOGGER.warn("Video with id " + videoId + " was not found");
-                        responseObserver.onError(Status.NOT_FOUND
-                                .withDescription("Video with id " + videoId + " was not found").asRuntimeException());
-
-                    }
-                    return video;
-                });
+        /**
+         * When the client already holds a version of the video, compare it with the version
+         * kept in memory (or the write timestamp of the row) before loading the video itself
+         */
+        final CompletableFuture<GetVideoResponse> response = (request.getIfVersion() > 0)
+                ? videoCache.getVersion(videoId).thenCompose(version -> (version != null && version == request.getIfVersion())
+                        ? CompletableFuture.completedFuture(GetVideoResponse
+                                .newBuilder()
+                                .setVideoId(request.getVideoId())
+                                .setVersion(version)
+                                .setNotModified(true)
+                                .build())
+                        : loadVideoResponse(videoId))
+                : loadVideoResponse(videoId);
+
+        response.whenComplete((videoResponse, ex) -> {
+            if (videoResponse != null) {
+                LOGGER.debug("Video is: " + (videoResponse.getNotModified() ? "not modified" : videoResponse.getName()));
+                responseObserver.onNext(videoResponse);
+                responseObserver.onCompleted();
+
+            } else if (ex != null) {
+                LOGGER.error("Exception getting video : " + mergeStackTrace(ex));
+                responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+            } else {
+                LOGGER.warn("Video with id " + videoId + " was not found");
+                responseObserver.onError(Status.NOT_FOUND
+                        .withDescription("Video with id " + videoId + " was not found").asRuntimeException());
+            }
+        });
         LOGGER.debug("End getting video");
     }
 
+    /**
+     * Load a video and its version, Cassandra being only queried on a cache miss : a miss of the video reads its
+     * version in the same query, so the version is then a hit.
+     *
+     * @param videoId
+     *      video unique identifier
+     * @return
+     *      full response, null if the video does not exist
+     */
+    private CompletableFuture<GetVideoResponse> loadVideoResponse(UUID videoId) {
+        // videoId matches the partition key set in the Video class
+        return videoCache.getVideo(videoId)
+                .thenCompose(video -> (video == null)
+                        ? CompletableFuture.<GetVideoResponse>completedFuture(null)
+                        : videoCache.getVersion(videoId).thenApply(version -> {
+                            /**
+                             * Check to see if any tags exist, if not, ensure to send
+                             * an empty set instead of null
+                             */
+                            if (CollectionUtils.isEmpty(video.getTags())) {
+                                video.setTags(Collections.emptySet());
+                            }
+                            final GetVideoResponse.Builder videoResponse = video.toVideoResponse().toBuilder();
+                            if (version != null) {
+                                videoResponse.setVersion(version);
+                            }
+                            return videoResponse.build();
+                        }));
+    }
+
     @Override
     public void getVideoPreviews(GetVideoPreviewsRequest request, StreamObserver<GetVideoPreviewsResponse> responseObserver) {
 
@@ -362,22 +822,17 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
         }
 
         try {
-            /**
-             * Fire a list of async SELECT, one for each video id
-             */
-            final List<CompletableFuture<Video>> listFuture = request
+            final List<UUID> videoIds = request
                     .getVideoIdsList()
                     .stream()
                     .map(uuid -> UUID.fromString(uuid.getValue()))
-                    .map(uuid -> FutureUtils.buildCompletableFuture(videoMapper.getAsync(uuid)))
                     .collect(toList());
 
             /**
-             * Merge all the async SELECT results
+             * Fire an async SELECT for each distinct video id missing from the cache,
+             * with a bounded number of them in flight, results come back in request order
              */
-            CompletableFuture
-                    .allOf(listFuture.toArray(new CompletableFuture[listFuture.size()]))
-                    .thenApply(v -> listFuture.stream().map(CompletableFuture::join).collect(toList()))
+            multiGet.getAll(videoIds, videoCache::getVideo)
                     .handle((list, ex) -> {
                         if (list != null) {
                             list.stream()
@@ -406,18 +861,15 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
     }
 
     /**
-     * In this method, we craft our own paging state. The custom paging state format is:
-     * <br/>
-     * <br/>
-     * <code>
-     * yyyyMMdd_yyyyMMdd_yyyyMMdd_yyyyMMdd_yyyyMMdd_yyyyMMdd_yyyyMMdd_yyyyMMdd,&lt;index&gt;,&lt;Cassandra paging state as string&gt;
-     * </code>
-     * <br/>
-     * <br/>
+     * In this method, we craft our own paging state, see {@link LatestVideosPagingState} for the token format.
+     * It holds:
      * <ul>
-     *     <li>The first field is the date of 7 days in the past, starting from <strong>now</strong></li>
-     *     <li>The second field is the index in this date list, to know at which day in the past we stop at the previous query</li>
-     *     <li>The last field is the serialized form of the native Cassandra paging state</li>
+     *     <li>The bucket layout, the newest bucket (anchor) and the previous buckets covering 8 days, starting from
+     *     <strong>now</strong></li>
+     *     <li>The index in this bucket list, to know at which bucket in the past we stop at the previous query</li>
+     *     <li>The raw bytes of the native Cassandra paging state</li>
+     *     <li>Optionally the added date and the video id of the row to resume after, used instead of the Cassandra
+     *     paging state when the previous page did not come from Cassandra</li>
      * </ul>
      *
      * On the first query, we create our own custom paging state in the server by computing the list of 8 days
@@ -436,7 +888,33 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
      * Cassandra paging state is a hash of query string and bound values. We may switch partition to move one day
      * back in the past to fetch more results so the paging state will no longer be usable</strong>
      *
+     * <br/>
+     * <br/>
+     *
+     * Buckets are queried by windows of <code>killrvideo.services.video.latest.fanout</code> buckets at once. With the
+     * default value of 1 buckets are walked one at a time, a larger value trades a few extra rows read for fewer serial
+     * round trips on quiet days. The paging state format is the same in both cases.
+     *
+     * <br/>
+     * <br/>
+     *
+     * Buckets last <code>killrvideo.services.video.latest.bucketHours</code> hours and are split in
+     * <code>killrvideo.services.video.latest.shards</code> partitions (see {@link LatestVideosBuckets}). The shards of a
+     * bucket are queried together and merged newest first, such a page resumes after its last row as no Cassandra paging
+     * state spans several partitions. The paging state keeps the layout it was created with, changing the settings does
+     * not break the paging of clients.
+     *
+     * <br/>
+     * <br/>
+     *
+     * Queries are chained with {@link CompletableFuture#thenCompose(java.util.function.Function)} and the response
+     * is sent from the last completion stage : the gRPC thread never waits for Cassandra.
+     *
+     * <br/>
+     * <br/>
      *
+     * The first page without starting point is served from {@link LatestVideosWindow} when it is ready and holds
+     * enough videos, its paging state then resumes after the last video of the page.
      */
     @Override
     public void getLatestVideoPreviews(GetLatestVideoPreviewsRequest request, StreamObserver<GetLatestVideoPreviewsResponse> responseObserver) {
@@ -447,157 +925,654 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
             return;
         }
 
-        final CustomPagingState customPagingState = parseCustomPagingState(Optional.ofNullable(request.getPagingState()))
-                .orElse(this.buildFirstCustomPagingState());
+        fetchLatestVideoPreviews(request)
+                .whenComplete((response, ex) -> {
+                    if (response != null) {
+                        responseObserver.onNext(response);
+                        responseObserver.onCompleted();
 
-        final List<String> buckets = customPagingState.buckets;
-        int bucketIndex = customPagingState.currentBucket;
-        final String rowPagingState = customPagingState.cassandraPagingState;
-        LOGGER.debug("Custom paging state is: buckets: " + buckets.size() + " index: " + bucketIndex + " state: " + rowPagingState);
+                        LOGGER.debug("End getting latest video preview");
 
-        final Optional<Date> startingAddedDate = Optional
+                    } else if (ex != null) {
+                        LOGGER.error("Exception when getting latest preview videos : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                    }
+                });
+    }
+
+    /**
+     * Build a page of latest videos, from the in-memory window or from the buckets of 'latest_videos'.
+     *
+     * @param request
+     *      validated request
+     * @return
+     *      response, completed from the completion stage of the last bucket needed
+     */
+    private CompletableFuture<GetLatestVideoPreviewsResponse> fetchLatestVideoPreviews(GetLatestVideoPreviewsRequest request) {
+        final LatestVideosPagingState pagingState = LatestVideosPagingState.parse(request.getPagingState())
+                .orElse(buildFirstPagingState());
+
+        final LatestVideosPage page = new LatestVideosPage();
+        page.bucketing = pagingState.getBucketing();
+        page.anchorBucket = pagingState.getAnchorBucket();
+        page.buckets = pagingState.buckets();
+        page.firstBucket = pagingState.getBucketOffset();
+        page.pageSize = request.getPageSize();
+        LOGGER.debug("Custom paging state is: " + pagingState);
+
+        page.startingAddedDate = Optional
                 .ofNullable(request.getStartingAddedDate())
                 .filter(x -> StringUtils.isNotBlank(x.toString()))
                 .map(x -> Instant.ofEpochSecond(x.getSeconds(), x.getNanos()))
                 .map(Date::from);
 
-        final Optional<UUID> startingVideoId = Optional
+        page.startingVideoId = Optional
                 .ofNullable(request.getStartingVideoId())
                 .filter(x -> StringUtils.isNotBlank(x.toString()))
                 .map(x -> x.getValue())
                 .filter(StringUtils::isNotBlank)
                 .map(UUID::fromString);
 
-        final List<VideoPreview> results = new ArrayList<>();
-        String nextPageState = "";
+        /**
+         * The native Cassandra paging state can only be used for the
+         * bucket we stopped at during the previous query
+         */
+        page.firstBucketPagingState = pagingState.getCassandraPagingState();
+        page.resumeAfter = pagingState.getResumeAfter();
 
         /**
-         * Boolean to know if the native Cassandra paging
-         * state has been used
+         * The first page without starting point is the same for everybody,
+         * serve it from the in-memory window of the newest videos when possible
          */
-        final AtomicBoolean cassandraPagingStateUsed = new AtomicBoolean(false);
+        if (StringUtils.isBlank(request.getPagingState())
+                && !page.startingAddedDate.isPresent()
+                && !page.startingVideoId.isPresent()
+                && latestVideosWindow.canServe(page.pageSize)) {
+            final List<LatestVideos> newest = latestVideosWindow.latest(page.pageSize);
+            final long lastBucket = newest.isEmpty() ? -1 : page.anchorBucket - page.bucketing.bucketOf(newest.get(newest.size() - 1).getAddedDate());
+
+            if (newest.size() == page.pageSize && lastBucket >= 0 && lastBucket < page.buckets.size()) {
+                LOGGER.debug("Latest video preview served from memory");
+                return CompletableFuture.completedFuture(buildLatestVideoPreviewsResponse(newest,
+                        createPagingState(page, (int) lastBucket, newest.get(newest.size() - 1))));
+            }
+        }
 
-        try {
-            while (bucketIndex < buckets.size()) {
-                int recordsStillNeeded = request.getPageSize() - results.size();
-                LOGGER.debug("\nrecordsStillNeeded is: " + recordsStillNeeded + " pageSize is: " + request.getPageSize() + " results.size is: " + results.size());
+        /**
+         * Nothing below blocks, the response is built from the
+         * completion stage of the last bucket we need
+         */
+        return fetchLatestVideosPage(page, page.firstBucket)
+                .thenApply(completedPage -> {
+                    /**
+                     * Buckets are periods in the past so rows are already ordered, sorting here
+                     * only protects the page against rows written close to a bucket boundary
+                     */
+                    completedPage.results.sort(LatestVideos.NEWEST_FIRST);
+                    return buildLatestVideoPreviewsResponse(completedPage.results, completedPage.nextPageState);
+                });
+    }
 
-                final String yyyyMMdd = buckets.get(bucketIndex);
+    /**
+     * The homepage in a single call : a page of latest videos, then the ratings and the number of plays of these
+     * videos read concurrently. Ratings share the reads in flight of getRating() (and its batches when enabled),
+     * plays are read with IN(..) queries grouped by replicas, both through {@link MultiGet} which bounds the number
+     * of queries in flight.
+     *
+     * <br/>
+     * <br/>
+     *
+     * Ratings and plays must be read within <code>killrvideo.services.video.homepage.budgetMillis</code> of the
+     * previews being available : past this budget, or on error, the previews are returned without them
+     * (<code>ratings_available</code> or <code>views_available</code> set to false) rather than delaying the page.
+     */
+    @Override
+    public void getHomepageVideoPreviews(GetHomepageVideoPreviewsRequest request, StreamObserver<GetHomepageVideoPreviewsResponse> responseObserver) {
 
-                final Optional<String> pagingState =
-                        Optional.ofNullable(rowPagingState)
-                                .filter(StringUtils::isNotBlank)
-                                .filter(pg -> !cassandraPagingStateUsed.get());
+        LOGGER.debug("-----Start getting homepage video previews-----");
 
-                BoundStatement bound;
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
 
-                if (startingAddedDate.isPresent() && startingVideoId.isPresent()) {
-                    /**
-                     * The startingPointPrepared statement can be found at the top
-                     * of the class within PostConstruct
-                     */
-                    bound = latestVideoPreview_startingPointPrepared.bind()
-                            .setString("ymd", yyyyMMdd)
-                            .setTimestamp("ad", startingAddedDate.get())
-                            .setUUID("vid", startingVideoId.get());
+        final GetLatestVideoPreviewsRequest latestRequest = GetLatestVideoPreviewsRequest
+                .newBuilder()
+                .setPageSize(request.getPageSize())
+                .setPagingState(request.getPagingState())
+                .build();
+
+        fetchLatestVideoPreviews(latestRequest)
+                .thenCompose(latest -> {
+                    final List<UUID> videoIds = latest.getVideoPreviewsList()
+                            .stream()
+                            .map(preview -> UUID.fromString(preview.getVideoId().getValue()))
+                            .collect(toList());
+
+                    final CompletableFuture<List<VideoRating>> ratings = withinHomepageBudget(
+                            multiGet.getAll(videoIds, ratingsService::getVideoRating), "ratings");
+                    final CompletableFuture<List<VideoPlaybackStats>> plays = withinHomepageBudget(
+                            statisticsService.getPlaybackStats(videoIds), "plays");
+
+                    return ratings.thenCombine(plays, (ratingList, playList) ->
+                            buildHomepageVideoPreviewsResponse(latest, ratingList, playList));
+                })
+                .whenComplete((response, ex) -> {
+                    if (response != null) {
+                        responseObserver.onNext(response);
+                        responseObserver.onCompleted();
 
-                    LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString());
+                        LOGGER.debug("End getting homepage video previews");
 
-                } else {
-                    /**
-                     * The noStartingPointPrepared statement can be found at the top
-                     * of the class within PostConstruct
-                     */
-                    bound = latestVideoPreview_noStartingPointPrepared.bind()
-                            .setString("ymd", yyyyMMdd);
+                    } else if (ex != null) {
+                        LOGGER.error("Exception when getting homepage video previews : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                    }
+                });
+    }
 
-                    LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString());
-                }
+    /**
+     * Give up waiting for an enrichment of the homepage once its budget is spent, or when it fails.
+     *
+     * @param enrichment
+     *      ratings or plays of the videos, in the order of the previews
+     * @param name
+     *      name of the enrichment, for logs
+     * @return
+     *      the enrichment, null when not read in time
+     */
+    private <T> CompletableFuture<List<T>> withinHomepageBudget(CompletableFuture<List<T>> enrichment, String name) {
+        return FutureUtils
+                .completeWithin(enrichment, homepageBudgetMillis, TimeUnit.MILLISECONDS, null, scheduler)
+                .exceptionally(ex -> {
+                    LOGGER.warn("Homepage served without " + name + " : " + mergeStackTrace(ex));
+                    return null;
+                });
+    }
 
-                bound.setFetchSize(recordsStillNeeded);
-                LOGGER.debug("FETCH SIZE is: " + bound.getFetchSize() + " ymd is: " + yyyyMMdd);
+    /**
+     * Build the response of {@link #getHomepageVideoPreviews(GetHomepageVideoPreviewsRequest, StreamObserver)}.
+     *
+     * @param latest
+     *      page of latest videos
+     * @param ratings
+     *      ratings in the order of the previews (null for videos never rated), null when not available
+     * @param plays
+     *      playback stats in the order of the previews (null for videos never played), null when not available
+     * @return
+     *      response
+     */
+    private GetHomepageVideoPreviewsResponse buildHomepageVideoPreviewsResponse(GetLatestVideoPreviewsResponse latest,
+            List<VideoRating> ratings, List<VideoPlaybackStats> plays) {
+        final GetHomepageVideoPreviewsResponse.Builder builder = GetHomepageVideoPreviewsResponse
+                .newBuilder()
+                .setPagingState(latest.getPagingState());
+
+        for (int i = 0; i < latest.getVideoPreviewsCount(); i++) {
+            final HomepageVideoPreview.Builder preview = HomepageVideoPreview
+                    .newBuilder()
+                    .setPreview(latest.getVideoPreviews(i));
+            if (ratings != null) {
+                final VideoRating rating = ratings.get(i);
+                preview.setRatingsAvailable(true)
+                        .setRatingsCount(rating != null ? rating.getRatingCounter() : 0L)
+                        .setRatingsTotal(rating != null ? rating.getRatingTotal() : 0L);
+            }
+            if (plays != null) {
+                final VideoPlaybackStats stats = plays.get(i);
+                preview.setViewsAvailable(true)
+                        .setViews(stats != null ? stats.getViews() : 0L);
+            }
+            builder.addVideoPreviews(preview);
+        }
+        return builder.build();
+    }
 
-                pagingState.ifPresent(x -> {
-                            bound.setPagingState(PagingState.fromString(x));
-                            cassandraPagingStateUsed.compareAndSet(false, true);
-                        }
-                );
-
-                final CompletableFuture<Result<LatestVideos>> videosFuture = FutureUtils
-                        .buildCompletableFuture(latestVideosMapper.mapAsync(dseSession.executeAsync(bound)))
-                        .handle((latestVideos, ex) -> {
-                            if (latestVideos != null) {
-                                /**
-                                 * For those of you wondering where the call to fetchMoreResults()
-                                 * is take a look here for an explanation
-                                 * https://docs.datastax.com/en/drivers/java/3.2/com/datastax/driver/core/PagingIterable.html#getAvailableWithoutFetching--
-                                 * Quick summary, when getAvailableWithoutFetching() == 0 it automatically calls fetchMoreResults()
-                                 * We could use it to force a fetch in a "prefetch" scenario, but that
-                                 * is not what we are doing here.
-                                 */
-                                int remaining = latestVideos.getAvailableWithoutFetching();
-                                for (LatestVideos latestVideo : latestVideos) {
-                                    LOGGER.debug("latest video is: " + latestVideo.getName());
-                                    // Add each row to results
-                                    results.add(latestVideo.toVideoPreview());
-
-                                    if (--remaining == 0) {
-                                        break;
-                                    }
-                                }
+    /**
+     * Build the response of {@link #getLatestVideoPreviews(GetLatestVideoPreviewsRequest, StreamObserver)}.
+     *
+     * @param videos
+     *      videos of the page
+     * @param pagingState
+     *      paging state of the next page
+     * @return
+     *      response
+     */
+    private GetLatestVideoPreviewsResponse buildLatestVideoPreviewsResponse(List<LatestVideos> videos, String pagingState) {
+        return GetLatestVideoPreviewsResponse
+                .newBuilder()
+                .addAllVideoPreviews(videos.stream().map(LatestVideos::toVideoPreview).collect(toList()))
+                .setPagingState(pagingState)
+                .build();
+    }
 
-                            } else if (ex != null) {
-                                LOGGER.error("Exception getting latest video preview : " + mergeStackTrace(ex));
-                                responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+    /**
+     * Read the newest rows of 'latest_videos', as many as the window can hold,
+     * and merge them into the in-memory window.
+     */
+    private void refreshLatestVideosWindow() {
+        final LatestVideosPagingState firstPagingState = buildFirstPagingState();
+        final LatestVideosPage page = new LatestVideosPage();
+        page.bucketing = firstPagingState.getBucketing();
+        page.anchorBucket = firstPagingState.getAnchorBucket();
+        page.buckets = firstPagingState.buckets();
+        page.firstBucket = 0;
+        page.pageSize = latestVideosWindow.getCapacity();
+        page.firstBucketPagingState = Optional.empty();
+        page.startingAddedDate = Optional.empty();
+        page.startingVideoId = Optional.empty();
+        page.resumeAfter = Optional.empty();
+
+        fetchLatestVideosPage(page, 0)
+                .whenComplete((completedPage, ex) -> {
+                    if (completedPage != null) {
+                        latestVideosWindow.merge(completedPage.results);
+                        LOGGER.debug("Latest videos window refreshed with " + completedPage.results.size() + " videos");
 
-                            }
-                            return latestVideos;
-                        });
+                    } else if (ex != null) {
+                        LOGGER.warn("Cannot refresh latest videos window : " + mergeStackTrace(ex));
+                    }
+                });
+    }
 
-                final Result<LatestVideos> videos = videosFuture.get();
+    /**
+     * Query the buckets of the page starting at <code>bucketIndex</code>, a window of buckets at a time,
+     * until the page is full or there is no bucket left.
+     *
+     * @param page
+     *      page being built
+     * @param bucketIndex
+     *      first bucket of the window to query
+     * @return
+     *      the page when completed
+     */
+    private CompletableFuture<LatestVideosPage> fetchLatestVideosPage(LatestVideosPage page, int bucketIndex) {
+        if (page.complete || bucketIndex >= page.buckets.size()) {
+            return CompletableFuture.completedFuture(page);
+        }
 
-                // See if we can stop querying
-                LOGGER.debug("results.size() is: " + results.size() + " request.getPageSize() is : " + request.getPageSize());
-                if (results.size() == request.getPageSize()) {
-                    final PagingState cassandraPagingState = videos.getAllExecutionInfo().get(0).getPagingState();
+        final int recordsStillNeeded = page.recordsStillNeeded();
+        final int windowEnd = Math.min(page.buckets.size(), bucketIndex + Math.max(1, latestVideosFanout));
+        LOGGER.debug("recordsStillNeeded is: " + recordsStillNeeded + " buckets window is: [" + bucketIndex + ", " + windowEnd + "[");
 
-                    if (cassandraPagingState != null) {
-                        LOGGER.debug("results.size() == request.getPageSize()");
-                        // Start from where we left off in this bucket if we get the next page
-                        nextPageState = createPagingState(buckets, bucketIndex, cassandraPagingState.toString());
+        /**
+         * Query all the buckets of the window at once, each of them
+         * with the number of rows still missing to fill the page
+         */
+        final List<CompletableFuture<LatestVideosBucketRows>> window = new ArrayList<>();
+        for (int i = bucketIndex; i < windowEnd; i++) {
+            if (i == page.firstBucket && page.resumeAfter.isPresent()) {
+                // One more row as the row we resume after is read again, the paging state (single shard only) skips the rows already read
+                window.add(queryLatestVideosBucket(page.buckets.get(i), recordsStillNeeded + 1,
+                        page.startingAddedDate, page.startingVideoId,
+                        page.buckets.get(i).size() == 1 ? page.firstBucketPagingState : Optional.empty(), page.resumeAfter));
+            } else {
+                window.add(queryLatestVideosBucket(page.buckets.get(i), recordsStillNeeded,
+                        page.startingAddedDate, page.startingVideoId,
+                        i == page.firstBucket ? page.firstBucketPagingState : Optional.empty(), Optional.empty()));
+            }
+        }
 
-                        break;
+        return consumeLatestVideosWindow(page, window, bucketIndex, bucketIndex)
+                .thenCompose(p -> {
+                    // Buckets queried ahead are not needed anymore
+                    window.forEach(f -> f.cancel(false));
+                    return fetchLatestVideosPage(p, windowEnd);
+                });
+    }
+
+    /**
+     * Consume the buckets of a window in order (newest first) and stop as soon as the page is full.
+     *
+     * @param page
+     *      page being built
+     * @param window
+     *      pending queries of the window
+     * @param windowStart
+     *      index of the first bucket of the window
+     * @param bucketIndex
+     *      index of the bucket to consume
+     * @return
+     *      the page when the window has been consumed
+     */
+    private CompletableFuture<LatestVideosPage> consumeLatestVideosWindow(LatestVideosPage page,
+            List<CompletableFuture<LatestVideosBucketRows>> window, int windowStart, int bucketIndex) {
+        if (page.complete || bucketIndex >= windowStart + window.size()) {
+            return CompletableFuture.completedFuture(page);
+        }
+
+        return window.get(bucketIndex - windowStart)
+                .thenCompose(videos -> {
+                    final int stillNeeded = page.recordsStillNeeded();
+                    if (bucketIndex != page.firstBucket && videos.pagingState.isPresent() && videos.rows.size() > stillNeeded) {
+                        /**
+                         * This bucket was queried ahead with a larger fetch size than what is now
+                         * left in the page, its Cassandra paging state would skip rows. Query it again
+                         * with the exact fetch size to keep a valid paging state.
+                         */
+                        LOGGER.debug("Bucket " + page.buckets.get(bucketIndex) + " has more rows than needed, querying it again with fetch size " + stillNeeded);
+                        return queryLatestVideosBucket(page.buckets.get(bucketIndex), stillNeeded,
+                                page.startingAddedDate, page.startingVideoId, Optional.empty(), Optional.empty());
+                    }
+                    if (bucketIndex == page.firstBucket && page.resumeAfter.isPresent() && page.buckets.get(bucketIndex).size() > 1) {
+                        return readPastResumeAfter(page, bucketIndex, videos);
                     }
+                    return CompletableFuture.completedFuture(videos);
+                })
+                .thenCompose(videos -> {
+                    addLatestVideosBucket(page, bucketIndex, videos);
+                    return consumeLatestVideosWindow(page, window, windowStart, bucketIndex + 1);
+                });
+    }
 
-                // Start from the beginning of the next bucket since we're out of rows in this one
-                } else if (bucketIndex == buckets.size() - 1) {
-                    LOGGER.debug("bucketIndex == buckets.size() - 1)");
-                    nextPageState = createPagingState(buckets, bucketIndex + 1, "");
-                }
+    /**
+     * Make sure the merged rows of a sharded bucket go past the row we resume after : when more rows than the fetch
+     * size share its added date, query the shards again with twice the fetch size. Otherwise the next paging state
+     * could resume at or before this row and the client would get the same page again.
+     *
+     * @param page
+     *      page being built
+     * @param bucketIndex
+     *      index of the bucket
+     * @param videos
+     *      rows of this bucket
+     * @return
+     *      rows of this bucket, at least one of them after the row we resume after unless the bucket is exhausted
+     */
+    private CompletableFuture<LatestVideosBucketRows> readPastResumeAfter(LatestVideosPage page, int bucketIndex, LatestVideosBucketRows videos) {
+        final LatestVideos resumeAfter = page.resumeAfter.get();
+        final boolean pastResumeAfter = videos.rows.stream().anyMatch(row -> LatestVideos.NEWEST_FIRST.compare(row, resumeAfter) > 0);
+        if (pastResumeAfter || !videos.more) {
+            return CompletableFuture.completedFuture(videos);
+        }
+        LOGGER.debug("Bucket " + page.buckets.get(bucketIndex) + " has more than " + videos.fetchSize + " rows at the resumed added date, querying it again");
+        return queryLatestVideosBucket(page.buckets.get(bucketIndex), 2 * videos.fetchSize,
+                page.startingAddedDate, page.startingVideoId, Optional.empty(), page.resumeAfter)
+                .thenCompose(more -> readPastResumeAfter(page, bucketIndex, more));
+    }
 
-                LOGGER.debug("" +
-                        "buckets: " + buckets.size() +
-                        " index: " + bucketIndex +
-                        " state: " + nextPageState +
-                        " results size: " + results.size() +
-                        " request pageSize: " + request.getPageSize()
-                );
-                bucketIndex++;
+    /**
+     * Add the rows of a bucket to the page and compute the next paging state when relevant.
+     *
+     * @param page
+     *      page being built
+     * @param bucketIndex
+     *      index of the bucket
+     * @param videos
+     *      rows of this bucket
+     */
+    private void addLatestVideosBucket(LatestVideosPage page, int bucketIndex, LatestVideosBucketRows videos) {
+        final List<LatestVideos> rows = videos.rows;
+        final boolean sharded = page.buckets.get(bucketIndex).size() > 1;
+
+        if (bucketIndex == page.firstBucket && page.resumeAfter.isPresent()) {
+            final LatestVideos resumeAfter = page.resumeAfter.get();
+            page.results.addAll(rows.stream()
+                    .filter(row -> LatestVideos.NEWEST_FIRST.compare(row, resumeAfter) > 0)
+                    .limit(page.recordsStillNeeded())
+                    .collect(toList()));
+
+            if (page.results.size() == page.pageSize) {
+                // Resume after the last row of this page, we did not stop at a Cassandra page boundary
+                page.complete = true;
+                page.nextPageState = createPagingState(page, bucketIndex, page.results.get(page.results.size() - 1));
+                return;
+            }
+            if (videos.pagingState.isPresent()) {
+                /**
+                 * More rows than expected shared the added date we resumed after, return a shorter page
+                 * rather than skipping the rest of this bucket. The next page goes on with the same query
+                 * from its Cassandra paging state, the last row read may not be after the row we resumed after.
+                 */
+                page.complete = true;
+                page.nextPageState = createPagingState(page, bucketIndex, videos.pagingState.get(), resumeAfter);
+                return;
             }
+            if (videos.more && !rows.isEmpty()) {
+                // Sharded bucket, read until its last merged row is after the row we resumed after (see readPastResumeAfter)
+                page.complete = true;
+                page.nextPageState = createPagingState(page, bucketIndex, rows.get(rows.size() - 1));
+                return;
+            }
+        } else {
+            // Shards are read with the number of rows still needed each, the merge may hold more
+            page.results.addAll(rows.stream().limit(page.recordsStillNeeded()).collect(toList()));
+        }
 
-            responseObserver.onNext(GetLatestVideoPreviewsResponse
-                    .newBuilder()
-                    .addAllVideoPreviews(results)
-                    .setPagingState(nextPageState).build());
-            responseObserver.onCompleted();
+        // See if we can stop querying
+        if (page.results.size() == page.pageSize) {
+            page.complete = true;
+            if (sharded) {
+                // No Cassandra paging state spans several partitions, resume after the last row of this page
+                page.nextPageState = createPagingState(page, bucketIndex, page.results.get(page.results.size() - 1));
+            } else if (videos.pagingState.isPresent()) {
+                // Start from where we left off in this bucket if we get the next page
+                page.nextPageState = createPagingState(page, bucketIndex, videos.pagingState.get());
+            } else if (bucketIndex < page.buckets.size() - 1) {
+                // This bucket is exhausted, start from the beginning of the next one
+                page.nextPageState = createPagingState(page, bucketIndex + 1);
+            }
+
+        // Some shards of this bucket still have rows older than the last row merged, continue after it
+        } else if (sharded && videos.more && !rows.isEmpty()) {
+            page.complete = true;
+            page.nextPageState = createPagingState(page, bucketIndex, page.results.get(page.results.size() - 1));
 
-        } catch (Throwable throwable) {
-            LOGGER.error("Exception when getting latest preview videos : " + mergeStackTrace(throwable));
-            responseObserver.onError(Status.INTERNAL.withCause(throwable).asRuntimeException());
+        // Start from the beginning of the next bucket since we're out of rows in this one
+        } else if (bucketIndex == page.buckets.size() - 1) {
+            LOGGER.debug("bucketIndex == buckets.size() - 1)");
+            page.nextPageState = createPagingState(page, bucketIndex + 1);
         }
-        LOGGER.debug("End getting latest video preview");
+
+        LOGGER.debug("" +
+                "buckets: " + page.buckets.size() +
+                " index: " + bucketIndex +
+                " state: " + page.nextPageState +
+                " results size: " + page.results.size() +
+                " request pageSize: " + page.pageSize
+        );
     }
 
+    /**
+     * Query a single bucket of the 'latest_videos' table asynchronously, all its shards at once.
+     *
+     * <br/>
+     * <br/>
+     *
+     * The rows of the shards are merged newest first. As each shard only returns its first <code>fetchSize</code>
+     * rows, the merge stops at the oldest row every shard with more rows has reached : rows beyond it may be older
+     * than rows not read yet.
+     *
+     * @param partitionKeys
+     *      partition keys of the bucket, one per shard
+     * @param fetchSize
+     *      number of rows expected for this bucket
+     * @param startingAddedDate
+     *      optional starting point (added date)
+     * @param startingVideoId
+     *      optional starting point (video id)
+     * @param cassandraPagingState
+     *      optional Cassandra paging state to resume from
+     * @param resumeAfter
+     *      optional row to resume after, its added date is used as upper bound
+     * @return
+     *      first rows of this bucket
+     */
+    private CompletableFuture<LatestVideosBucketRows> queryLatestVideosBucket(List<String> partitionKeys, int fetchSize,
+            Optional<Date> startingAddedDate, Optional<UUID> startingVideoId, Optional<PagingState> cassandraPagingState,
+            Optional<LatestVideos> resumeAfter) {
+        final List<CompletableFuture<Result<LatestVideos>>> shards = new ArrayList<>(partitionKeys.size());
+        for (String partitionKey : partitionKeys) {
+            final BoundStatement bound = bindLatestVideosBucket(partitionKey, fetchSize, startingAddedDate, startingVideoId,
+                    cassandraPagingState, resumeAfter);
+            shards.add(FutureUtils.buildCompletableFuture(latestVideosMapper.mapAsync(dseSession.executeAsync(bound))));
+        }
+
+        if (shards.size() == 1) {
+            return shards.get(0).thenApply(videos -> {
+                final LatestVideosBucketRows bucketRows = new LatestVideosBucketRows();
+                bucketRows.fetchSize = fetchSize;
+                bucketRows.rows = availableRows(videos);
+                bucketRows.pagingState = Optional.ofNullable(videos.getExecutionInfo().getPagingState());
+                bucketRows.more = bucketRows.pagingState.isPresent();
+                return bucketRows;
+            });
+        }
+
+        return CompletableFuture
+                .allOf(shards.toArray(new CompletableFuture[shards.size()]))
+                .thenApply(v -> {
+                    final List<LatestVideos> merged = new ArrayList<>();
+                    LatestVideos horizon = null;
+                    for (CompletableFuture<Result<LatestVideos>> shard : shards) {
+                        final Result<LatestVideos> videos = shard.join();
+                        final List<LatestVideos> rows = availableRows(videos);
+                        merged.addAll(rows);
+                        if (videos.getExecutionInfo().getPagingState() != null && !rows.isEmpty()) {
+                            final LatestVideos lastRow = rows.get(rows.size() - 1);
+                            if (horizon == null || LatestVideos.NEWEST_FIRST.compare(lastRow, horizon) < 0) {
+                                horizon = lastRow;
+                            }
+                        }
+                    }
+                    merged.sort(LatestVideos.NEWEST_FIRST);
+
+                    final LatestVideosBucketRows bucketRows = new LatestVideosBucketRows();
+                    bucketRows.fetchSize = fetchSize;
+                    if (horizon == null) {
+                        bucketRows.rows = merged;
+                    } else {
+                        final LatestVideos oldestSafe = horizon;
+                        bucketRows.rows = merged.stream()
+                                .filter(row -> LatestVideos.NEWEST_FIRST.compare(row, oldestSafe) <= 0)
+                                .collect(toList());
+                        bucketRows.more = true;
+                    }
+                    return bucketRows;
+                });
+    }
+
+    /**
+     * Bind the query of a single partition of the 'latest_videos' table.
+     *
+     * @param yyyyMMdd
+     *      partition key to query
+     * @param fetchSize
+     *      number of rows read per round trip
+     * @param startingAddedDate
+     *      optional starting point (added date)
+     * @param startingVideoId
+     *      optional starting point (video id)
+     * @param cassandraPagingState
+     *      optional Cassandra paging state to resume from
+     * @param resumeAfter
+     *      optional row to resume after, its added date is used as upper bound
+     * @return
+     *      statement to execute
+     */
+    private BoundStatement bindLatestVideosBucket(String yyyyMMdd, int fetchSize,
+            Optional<Date> startingAddedDate, Optional<UUID> startingVideoId, Optional<PagingState> cassandraPagingState,
+            Optional<LatestVideos> resumeAfter) {
+        BoundStatement bound;
+
+        if (resumeAfter.isPresent()) {
+            bound = latestVideoPreview_resumeAfterPrepared.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setTimestamp("ad", resumeAfter.get().getAddedDate());
+
+        } else if (startingAddedDate.isPresent() && startingVideoId.isPresent()) {
+            /**
+             * The startingPointPrepared statement can be found at the top
+             * of the class within PostConstruct
+             */
+            bound = latestVideoPreview_startingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setTimestamp("ad", startingAddedDate.get())
+                    .setUUID("vid", startingVideoId.get());
+
+        } else {
+            /**
+             * The noStartingPointPrepared statement can be found at the top
+             * of the class within PostConstruct
+             */
+            bound = latestVideoPreview_noStartingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd);
+        }
+        LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString());
+
+        bound.setFetchSize(fetchSize);
+        LOGGER.debug("FETCH SIZE is: " + bound.getFetchSize() + " ymd is: " + yyyyMMdd);
+
+        cassandraPagingState.ifPresent(bound::setPagingState);
+        return bound;
+    }
+
+    /**
+     * For those of you wondering where the call to fetchMoreResults()
+     * is take a look here for an explanation
+     * https://docs.datastax.com/en/drivers/java/3.2/com/datastax/driver/core/PagingIterable.html#getAvailableWithoutFetching--
+     * Quick summary, when getAvailableWithoutFetching() == 0 it automatically calls fetchMoreResults()
+     * We only want the rows of the current page here, so we never iterate past them.
+     *
+     * @param latestVideos
+     *      current page of results
+     * @return
+     *      rows available without fetching
+     */
+    private List<LatestVideos> availableRows(Result<LatestVideos> latestVideos) {
+        final int available = latestVideos.getAvailableWithoutFetching();
+        final List<LatestVideos> rows = new ArrayList<>(available);
+        final Iterator<LatestVideos> iterator = latestVideos.iterator();
+        for (int i = 0; i < available; i++) {
+            final LatestVideos latestVideo = iterator.next();
+            LOGGER.debug("latest video is: " + latestVideo.getName());
+            rows.add(latestVideo);
+        }
+        return rows;
+    }
+
+
+    @Override
+    public void streamLatestVideoPreviews(StreamLatestVideoPreviewsRequest request, StreamObserver<VideoPreview> responseObserver) {
+
+        LOGGER.debug("-----Start streaming latest video preview-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        final Optional<Date> startingAddedDate = Optional
+                .of(request)
+                .filter(StreamLatestVideoPreviewsRequest::hasStartingAddedDate)
+                .map(StreamLatestVideoPreviewsRequest::getStartingAddedDate)
+                .map(ts -> Date.from(Instant.ofEpochSecond(ts.getSeconds(), ts.getNanos())));
+
+        final Optional<UUID> startingVideoId = Optional
+                .of(request)
+                .filter(StreamLatestVideoPreviewsRequest::hasStartingVideoId)
+                .map(StreamLatestVideoPreviewsRequest::getStartingVideoId)
+                .map(Uuid::getValue)
+                .filter(StringUtils::isNotBlank)
+                .map(UUID::fromString);
+
+        /**
+         * One query per shard, newest bucket first, bound lazily : the queries of a bucket are only
+         * run once the client consumed all the videos of the previous ones. The shards of a bucket
+         * are merged newest first, like the pages of getLatestVideoPreviews.
+         */
+        final Iterator<List<BoundStatement>> bucketQueries = buildFirstPagingState()
+                .buckets()
+                .stream()
+                .map(partitionKeys -> partitionKeys.stream()
+                        .map(partitionKey -> bindLatestVideosBucket(partitionKey, request.getFetchSize(),
+                                startingAddedDate, startingVideoId, Optional.empty(), Optional.empty()))
+                        .collect(toList()))
+                .iterator();
+
+        new ResultStreamer<>((ServerCallStreamObserver<VideoPreview>) responseObserver, dseSession,
+                latestVideosMapper, bucketQueries, LatestVideos.NEWEST_FIRST, LatestVideos::toVideoPreview,
+                request.getLimit())
+                .start();
+    }
 
     @Override
     public void getUserVideoPreviews(GetUserVideoPreviewsRequest request, StreamObserver<GetUserVideoPreviewsResponse> responseObserver) {
@@ -623,6 +1598,23 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
         final Optional<String> pagingState = Optional.ofNullable(request.getPagingState()).filter(StringUtils::isNotBlank);
         BoundStatement bound;
 
+        /**
+         * The first page of a user (no starting point, no paging state)
+         * is served from the cache when possible
+         */
+        final boolean firstPage = !pagingState.isPresent() && !(startingVideoId.isPresent() && startingAddedDate.isPresent());
+        final long firstPageGeneration = userVideosFirstPageCache.generation(userId);
+        if (firstPage) {
+            final Optional<GetUserVideoPreviewsResponse> cachedFirstPage = userVideosFirstPageCache.getFirstPage(userId, request.getPageSize());
+            if (cachedFirstPage.isPresent()) {
+                responseObserver.onNext(cachedFirstPage.get());
+                responseObserver.onCompleted();
+
+                LOGGER.debug("End getting user video preview (cached first page)");
+                return;
+            }
+        }
+
         /**
          * If startingAddedDate and startingVideoId are provided,
          * we do NOT use the paging state
@@ -677,7 +1669,11 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                             Optional.ofNullable(userVideos.getExecutionInfo().getPagingState())
                                     .map(PagingState::toString)
                                     .ifPresent(builder::setPagingState);
-                            responseObserver.onNext(builder.build());
+                            final GetUserVideoPreviewsResponse response = builder.build();
+                            if (firstPage) {
+                                userVideosFirstPageCache.putFirstPage(userId, request.getPageSize(), response, firstPageGeneration);
+                            }
+                            responseObserver.onNext(response);
                             responseObserver.onCompleted();
 
                             LOGGER.debug("End getting user video preview");
@@ -699,59 +1695,99 @@ public class VideoCatalogService extends VideoCatalogServiceImplBase {
                 });
     }
 
+    /**
+     * Videos of a tag, newest first, read from the 'videos_by_tag' read model (see {@link VideosByTagDseDao})
+     * instead of a DSE Search query : a page is a single partition read unless it spans monthly buckets.
+     */
+    @Override
+    public void getVideosByTag(GetVideosByTagRequest request, StreamObserver<GetVideosByTagResponse> responseObserver) {
+
+        LOGGER.debug("-----Start getting videos by tag-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        final Optional<VideosByTagPagingState> pagingState = VideosByTagPagingState.parse(request.getPagingState());
+
+        videosByTagDseDao.findVideosByTagAsync(request.getTag(), request.getPageSize(), pagingState)
+                .handle((page, ex) -> {
+                    try {
+                        if (page != null) {
+                            final GetVideosByTagResponse.Builder builder = GetVideosByTagResponse.newBuilder()
+                                    .setTag(request.getTag());
+                            page.getVideos().forEach(video -> builder.addVideoPreviews(video.toVideoPreview()));
+                            page.getPagingState().ifPresent(builder::setPagingState);
+                            responseObserver.onNext(builder.build());
+                            responseObserver.onCompleted();
+
+                            LOGGER.debug("End getting videos by tag");
+
+                        } else if (ex != null) {
+                            LOGGER.error("Exception getting videos by tag : " + mergeStackTrace(ex));
+
+                            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                        }
+
+                    } catch (Exception e) {
+                        LOGGER.error("Exception CATCH getting videos by tag : " + mergeStackTrace(e));
+
+                        responseObserver.onError(Status.INTERNAL.withCause(e).asRuntimeException());
+                    }
+                    return page;
+                });
+    }
+
 
     /**
-     * Create a paging state string from the passed in parameters
-     * @param buckets
+     * Create the paging state starting at the beginning of a bucket.
+     * @param page
      * @param bucketIndex
-     * @param rowsPagingState
      * @return String
      */
-    private String createPagingState(List<String> buckets, int bucketIndex, String rowsPagingState) {
-        StringJoiner joiner = new StringJoiner("_");
-        buckets.forEach(joiner::add);
-        return joiner.toString() + "," + bucketIndex + "," + rowsPagingState;
+    private String createPagingState(LatestVideosPage page, int bucketIndex) {
+        return new LatestVideosPagingState(page.bucketing, page.anchorBucket, bucketIndex, Optional.empty(), Optional.empty()).serialize();
     }
 
+    /**
+     * Create the paging state resuming from a Cassandra paging state in a bucket.
+     * @param page
+     * @param bucketIndex
+     * @param cassandraPagingState
+     * @return String
+     */
+    private String createPagingState(LatestVideosPage page, int bucketIndex, PagingState cassandraPagingState) {
+        return new LatestVideosPagingState(page.bucketing, page.anchorBucket, bucketIndex, Optional.of(cassandraPagingState), Optional.empty()).serialize();
+    }
 
     /**
-     * Parse the passed in paging state and return an object containing the 3 elements of the state
-     * (List<String>, Integer, String) as Optional.
-     * @param customPagingStateString
-     * @return Optional
+     * Create the paging state resuming after a given row of a bucket instead of a Cassandra paging state.
+     * @param page
+     * @param bucketIndex
+     * @param resumeAfter
+     * @return String
      */
-    private Optional<CustomPagingState> parseCustomPagingState(Optional<String> customPagingStateString) {
-        return customPagingStateString
-                .map(pagingState -> {
-                    Matcher matcher = PARSE_LATEST_PAGING_STATE.matcher(pagingState);
-                    if (matcher.matches()) {
-                        final CustomPagingState customPagingState = new CustomPagingState();
-                        customPagingState.buckets = Lists.newArrayList(matcher.group(1).split("_"));
-                        customPagingState.currentBucket = Integer.parseInt(matcher.group(2));
-                        customPagingState.cassandraPagingState = matcher.group(3);
-                        return customPagingState;
-                    } else {
-                        return null;
-                    }
-                });
+    private String createPagingState(LatestVideosPage page, int bucketIndex, LatestVideos resumeAfter) {
+        return new LatestVideosPagingState(page.bucketing, page.anchorBucket, bucketIndex, Optional.empty(), Optional.of(resumeAfter)).serialize();
     }
 
+    /**
+     * Create the paging state resuming from the Cassandra paging state of a query resuming after a row.
+     * @param page
+     * @param bucketIndex
+     * @param cassandraPagingState
+     * @param resumeAfter
+     * @return String
+     */
+    private String createPagingState(LatestVideosPage page, int bucketIndex, PagingState cassandraPagingState, LatestVideos resumeAfter) {
+        return new LatestVideosPagingState(page.bucketing, page.anchorBucket, bucketIndex, Optional.of(cassandraPagingState), Optional.of(resumeAfter)).serialize();
+    }
 
     /**
-     * Build the first paging state if one does not already exist and return an object containing 3 elements
-     * representing the initial state (List<String>, Integer, String).
-     * @return CustomPagingState
+     * Build the first paging state, starting in the current bucket.
+     * @return LatestVideosPagingState
      */
-    private CustomPagingState buildFirstCustomPagingState() {
-            final CustomPagingState customPagingState = new CustomPagingState();
-            final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
-            final ZonedDateTime now = Instant.now().atZone(ZoneId.systemDefault());
-            customPagingState.buckets = LongStream.rangeClosed(0L, 7L).boxed()
-                    .map(now::minusDays)
-                    .map(x -> x.format(formatter))
-                    .collect(Collectors.toList());
-            customPagingState.currentBucket = 0;
-            customPagingState.cassandraPagingState = null;
-            return customPagingState;
+    private LatestVideosPagingState buildFirstPagingState() {
+        return LatestVideosPagingState.firstPage(LocalDateTime.now(ZoneId.systemDefault()), latestVideosBuckets);
     }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package killrvideo.utils;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -52,4 +54,37 @@ public class FutureUtils {
         });
         return completable;
     }
+
+    /**
+     * Complete with a fallback value when a future is not done within a delay. The future itself keeps
+     * running, only the returned future stops waiting for it.
+     *
+     * @param future
+     *      future to wait for
+     * @param timeout
+     *      maximum delay
+     * @param unit
+     *      unit of the delay
+     * @param fallback
+     *      value used when the delay expires first
+     * @param scheduler
+     *      scheduler of the delay
+     * @return
+     *      future completing with the result of <code>future</code> or <code>fallback</code>
+     */
+    public static <T> CompletableFuture<T> completeWithin(CompletableFuture<T> future, long timeout, TimeUnit unit,
+            T fallback, ScheduledExecutorService scheduler) {
+        final CompletableFuture<T> bounded = new CompletableFuture<>();
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                bounded.completeExceptionally(ex);
+            } else {
+                bounded.complete(result);
+            }
+        });
+        if (!bounded.isDone()) {
+            scheduler.schedule(() -> bounded.complete(fallback), timeout, unit);
+        }
+        return bounded;
+    }
 }
@@ -24,6 +24,15 @@ public class TypeConverter {
         return Timestamp.newBuilder().setSeconds(epoch).build();
     }
 
+    /**
+     * Timestamp of epoch milliseconds, without an intermediate {@link Date} or {@link Instant}.
+     */
+    public static Timestamp epochMillisToTimestamp(long epochMillis) {
+        return Timestamp.newBuilder()
+                .setSeconds(Math.floorDiv(epochMillis, 1000L))
+                .setNanos((int) Math.floorMod(epochMillis, 1000L) * 1_000_000).build();
+    }
+
     public static Timestamp dateToTimestamp(Date date) {
         return instantToTimeStamp(date.toInstant());
     }
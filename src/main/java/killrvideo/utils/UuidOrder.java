@@ -0,0 +1,61 @@
+package killrvideo.utils;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Order of the CQL <code>uuid</code> type, the order of a <code>uuid</code> clustering column in a partition.
+ *
+ * <br/>
+ * <br/>
+ *
+ * {@link UUID#compareTo(UUID)} compares the signed most then least significant bits, which is not the order
+ * Cassandra sorts rows by : it compares the versions first, then the timestamps of time based (version 1) uuids or
+ * the unsigned most significant bits of the others, and finally the unsigned least significant bits.
+ *
+ * @author DataStax evangelist team.
+ */
+public class UuidOrder {
+
+    /** Order of the CQL <code>uuid</code> type. */
+    public static final Comparator<UUID> CQL_UUID = UuidOrder::compare;
+
+    /**
+     * Hide constructor.
+     */
+    private UuidOrder() {}
+
+    /**
+     * Compare two uuids as Cassandra does for a column of type <code>uuid</code>.
+     *
+     * @param u1
+     *      first uuid
+     * @param u2
+     *      second uuid
+     * @return
+     *      negative, zero or positive if the first uuid sorts before, with or after the second one
+     */
+    public static int compare(UUID u1, UUID u2) {
+        final long msb1 = u1.getMostSignificantBits();
+        final long msb2 = u2.getMostSignificantBits();
+        final int version1 = (int) ((msb1 >>> 12) & 0xf);
+        final int version2 = (int) ((msb2 >>> 12) & 0xf);
+        if (version1 != version2) {
+            return Integer.compare(version1, version2);
+        }
+        final int c = (version1 == 1)
+                ? Long.compare(timestamp(msb1), timestamp(msb2))
+                : Long.compareUnsigned(msb1, msb2);
+        if (c != 0) {
+            return c;
+        }
+        return Long.compareUnsigned(u1.getLeastSignificantBits(), u2.getLeastSignificantBits());
+    }
+
+    /**
+     * Timestamp of a time based uuid (time_hi, time_mid then time_low), positive as the version bits are dropped.
+     */
+    private static long timestamp(long msb) {
+        return ((msb & 0x0FFFL) << 48) | ((msb & 0xFFFF0000L) << 16) | (msb >>> 32);
+    }
+}
@@ -2,16 +2,22 @@ package killrvideo.validation;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.util.Optional;
+
 import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
+import killrvideo.comments.CommentsServiceOuterClass.GetCommentCountsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.StreamVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.SubscribeVideoCommentsRequest;
 import killrvideo.common.CommonTypes;
 import killrvideo.ratings.RatingsServiceOuterClass.GetRatingRequest;
 import killrvideo.ratings.RatingsServiceOuterClass.GetUserRatingRequest;
@@ -24,10 +30,13 @@ import killrvideo.suggested_videos.SuggestedVideosService.GetRelatedVideosReques
 import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetHomepageVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetLatestVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetUserVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideosByTagRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.StreamLatestVideoPreviewsRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitUploadedVideoRequest;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
 
@@ -44,6 +53,18 @@ public class KillrVideoInputValidator {
 
     /**  Logger to class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(KillrVideoInputValidator.class);
+
+    /** Maximum number of ids in a multi-get request (video previews, number of plays, user profiles). */
+    @Value("${killrvideo.multiget.maxIds: 100}")
+    private int maxIds;
+
+    /** Maximum page size of the paged read models (videos by tag). */
+    @Value("${killrvideo.paging.maxPageSize: 100}")
+    private int maxPageSize;
+
+    /** Maximum fetch size of the streaming RPCs (latest video previews, video comments). */
+    @Value("${killrvideo.paging.maxFetchSize: 500}")
+    private int maxFetchSize;
     
     /**
      * Valid inputs.
@@ -102,6 +123,64 @@ public class KillrVideoInputValidator {
         return validate(streamObserver, errorMessage, isValid);
     }
 
+    public boolean isValid(StreamVideoCommentsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
+            errorMessage.append("\t\tvideo id should be provided for stream video comments request\n");
+            isValid = false;
+        }
+
+        if (request.getFetchSize() <= 0) {
+            errorMessage.append("\t\tfetch size should be strictly positive for stream video comments request\n");
+            isValid = false;
+        }
+
+        if (request.getFetchSize() > maxFetchSize) {
+            errorMessage.append("\t\tfetch size cannot exceed " + maxFetchSize + " for stream video comments request\n");
+            isValid = false;
+        }
+
+        if (request.getLimit() < 0) {
+            errorMessage.append("\t\tlimit should be positive for stream video comments request\n");
+            isValid = false;
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
+    public boolean isValid(SubscribeVideoCommentsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
+            errorMessage.append("\t\tvideo id should be provided for subscribe video comments request\n");
+            isValid = false;
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
+    public boolean isValid(GetCommentCountsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (request.getVideoIdsCount() > maxIds) {
+            errorMessage.append("\t\tcannot get more than " + maxIds + " videos at once for get comment counts request\n");
+            isValid = false;
+        }
+
+        for (CommonTypes.Uuid uuid : request.getVideoIdsList()) {
+            if (uuid == null || isBlank(uuid.getValue())) {
+                errorMessage.append("\t\tprovided UUID values cannot be null or blank for get comment counts request\n");
+                isValid = false;
+            }
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
     public boolean isValid(RateVideoRequest request, StreamObserver<?> streamObserver) {
         final StringBuilder errorMessage = initErrorString(request);
         boolean isValid = true;
@@ -202,8 +281,8 @@ public class KillrVideoInputValidator {
             isValid = false;
         }
 
-        if (request.getVideoIdsCount() > 20) {
-            errorMessage.append("\t\tcannot do a get more than 20 videos at once for get number of plays request\n");
+        if (request.getVideoIdsCount() > maxIds) {
+            errorMessage.append("\t\tcannot do a get more than " + maxIds + " videos at once for get number of plays request\n");
             isValid = false;
         }
 
@@ -272,8 +351,8 @@ public class KillrVideoInputValidator {
         boolean isValid = true;
 
 
-        if (request.getUserIdsCount() > 20) {
-            errorMessage.append("\t\tcannot get more than 20 user profiles at once for get user profile request\n");
+        if (request.getUserIdsCount() > maxIds) {
+            errorMessage.append("\t\tcannot get more than " + maxIds + " user profiles at once for get user profile request\n");
             isValid = false;
         }
 
@@ -326,6 +405,23 @@ public class KillrVideoInputValidator {
 
     public boolean isValid(SubmitYouTubeVideoRequest request, StreamObserver<?> streamObserver) {
         final StringBuilder errorMessage = initErrorString(request);
+        return validate(streamObserver, errorMessage, checkSubmitYouTubeVideo(request, errorMessage));
+    }
+
+    /**
+     * Validate a video of a bulk submission, an invalid video must not end the stream.
+     *
+     * @param request
+     *      current video
+     * @return
+     *      error message, empty if the video is valid
+     */
+    public Optional<String> validationError(SubmitYouTubeVideoRequest request) {
+        final StringBuilder errorMessage = new StringBuilder();
+        return checkSubmitYouTubeVideo(request, errorMessage) ? Optional.empty() : Optional.of(errorMessage.toString().trim());
+    }
+
+    private boolean checkSubmitYouTubeVideo(SubmitYouTubeVideoRequest request, StringBuilder errorMessage) {
         boolean isValid = true;
 
         if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
@@ -353,7 +449,7 @@ public class KillrVideoInputValidator {
             isValid = false;
         }
 
-        return validate(streamObserver, errorMessage, isValid);
+        return isValid;
     }
 
     public boolean isValid(GetVideoRequest request, StreamObserver<?> streamObserver) {
@@ -372,8 +468,8 @@ public class KillrVideoInputValidator {
         boolean isValid = true;
 
 
-        if (request.getVideoIdsCount() >= 20) {
-            errorMessage.append("\t\tcannot get more than 20 videos at once for get video previews request\n");
+        if (request.getVideoIdsCount() > maxIds) {
+            errorMessage.append("\t\tcannot get more than " + maxIds + " videos at once for get video previews request\n");
             isValid = false;
         }
 
@@ -400,6 +496,45 @@ public class KillrVideoInputValidator {
         return validate(streamObserver, errorMessage, isValid);
     }
 
+    public boolean isValid(GetHomepageVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (request.getPageSize() <= 0) {
+            errorMessage.append("\t\tpage size should be strictly positive for get homepage video previews request\n");
+            isValid = false;
+        }
+
+        if (request.getPageSize() > maxIds) {
+            errorMessage.append("\t\tcannot get more than " + maxIds + " videos at once for get homepage video previews request\n");
+            isValid = false;
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
+    public boolean isValid(StreamLatestVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (request.getFetchSize() <= 0) {
+            errorMessage.append("\t\tfetch size should be strictly positive for stream latest preview video request\n");
+            isValid = false;
+        }
+
+        if (request.getFetchSize() > maxFetchSize) {
+            errorMessage.append("\t\tfetch size cannot exceed " + maxFetchSize + " for stream latest preview video request\n");
+            isValid = false;
+        }
+
+        if (request.getLimit() < 0) {
+            errorMessage.append("\t\tlimit should be positive for stream latest preview video request\n");
+            isValid = false;
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
     public boolean isValid(GetUserVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
         final StringBuilder errorMessage = initErrorString(request);
         boolean isValid = true;
@@ -417,6 +552,28 @@ public class KillrVideoInputValidator {
         return validate(streamObserver, errorMessage, isValid);
     }
 
+    public boolean isValid(GetVideosByTagRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+
+        if (isBlank(request.getTag())) {
+            errorMessage.append("\t\ttag should be provided for get videos by tag request\n");
+            isValid = false;
+        }
+
+        if (request.getPageSize() <= 0) {
+            errorMessage.append("\t\tpage size should be strictly positive for get videos by tag request\n");
+            isValid = false;
+        }
+
+        if (request.getPageSize() > maxPageSize) {
+            errorMessage.append("\t\tpage size cannot exceed " + maxPageSize + " for get videos by tag request\n");
+            isValid = false;
+        }
+
+        return validate(streamObserver, errorMessage, isValid);
+    }
+
     private StringBuilder initErrorString(Object request) {
         return new StringBuilder("Validation error for '" + request.toString() + "' : \n");
     }
@@ -0,0 +1,36 @@
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Build native {@link PagingState}s without a cluster, for the tests of the paging tokens.
+ *
+ * <br/>
+ * <br/>
+ *
+ * Paging states are only created by the driver from the results of a query, this class lives in its package
+ * to reach their constructor.
+ *
+ * @author DataStax evangelist team.
+ */
+public class TestPagingStates {
+
+    /**
+     * Hide constructor.
+     */
+    private TestPagingStates() {}
+
+    /**
+     * Paging state of a query, as returned with a page of its results.
+     *
+     * @param query
+     *      CQL query the paging state belongs to
+     * @param position
+     *      raw position in the results, as sent by Cassandra
+     * @return
+     *      paging state
+     */
+    public static PagingState of(String query, byte... position) {
+        return new PagingState(ByteBuffer.wrap(position), new SimpleStatement(query), ProtocolVersion.V4, CodecRegistry.DEFAULT_INSTANCE);
+    }
+}
@@ -0,0 +1,71 @@
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build driver {@link Row}s without a cluster, for benchmarks and tests of the row mappings.
+ *
+ * <br/>
+ * <br/>
+ *
+ * {@link ColumnDefinitions} and the rows of a result are only created by the driver itself, this class lives in
+ * its package to reach their constructors.
+ *
+ * @author DataStax evangelist team.
+ */
+public class TestRows {
+
+    private static final ProtocolVersion PROTOCOL_VERSION = ProtocolVersion.V4;
+
+    private final ColumnDefinitions definitions;
+
+    private final List<TypeCodec<Object>> codecs = new ArrayList<>();
+
+    /**
+     * Columns of the result.
+     *
+     * @param keyspace
+     *      keyspace of the table
+     * @param table
+     *      table queried
+     * @param namesAndTypes
+     *      name then type of each column
+     */
+    public TestRows(String keyspace, String table, Object... namesAndTypes) {
+        final ColumnDefinitions.Definition[] columns = new ColumnDefinitions.Definition[namesAndTypes.length / 2];
+        for (int i = 0; i < columns.length; i++) {
+            final DataType type = (DataType) namesAndTypes[2 * i + 1];
+            columns[i] = new ColumnDefinitions.Definition(keyspace, table, (String) namesAndTypes[2 * i], type);
+            codecs.add(CodecRegistry.DEFAULT_INSTANCE.codecFor(type));
+        }
+        this.definitions = new ColumnDefinitions(columns, CodecRegistry.DEFAULT_INSTANCE);
+    }
+
+    /**
+     * Metadata shared by the rows, like the rows of the executions of a prepared statement.
+     *
+     * @return
+     *      column definitions
+     */
+    public ColumnDefinitions getColumnDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * A row of the result, values serialized as sent by Cassandra.
+     *
+     * @param values
+     *      value of each column, in the order of the columns
+     * @return
+     *      row
+     */
+    public Row row(Object... values) {
+        final List<ByteBuffer> data = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            data.add(codecs.get(i).serialize(values[i], PROTOCOL_VERSION));
+        }
+        return ArrayBackedRow.fromData(definitions, null, PROTOCOL_VERSION, data);
+    }
+}
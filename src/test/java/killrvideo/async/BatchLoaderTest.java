@@ -0,0 +1,160 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class BatchLoaderTest {
+
+    private static final long WINDOW_MICROS = 1000;
+
+    /** Scheduler never running anything by itself, windows are closed by the tests. */
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> flushTask;
+
+    /** Batches requested, in order. */
+    private List<List<String>> batches;
+
+    /** Results of the batches, completed by the tests. */
+    private List<CompletableFuture<Map<String, Integer>>> results;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        flushTask = mock(ScheduledFuture.class);
+        doReturn(flushTask).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        batches = new ArrayList<>();
+        results = new ArrayList<>();
+    }
+
+    private BatchLoader<String, Integer> batchLoader(int maxBatchSize) {
+        return new BatchLoader<>("test", keys -> {
+            final CompletableFuture<Map<String, Integer>> result = new CompletableFuture<>();
+            batches.add(keys);
+            results.add(result);
+            return result;
+        }, scheduler, WINDOW_MICROS, maxBatchSize, new MetricRegistry());
+    }
+
+    /** Close the window opened by the first key of a batch. */
+    private void closeWindow() {
+        final ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), eq(WINDOW_MICROS), eq(TimeUnit.MICROSECONDS));
+        flush.getValue().run();
+    }
+
+    @Test
+    public void keysOfAWindowAreLoadedTogether() throws Exception {
+        final BatchLoader<String, Integer> loader = batchLoader(10);
+        final CompletableFuture<Integer> a = loader.load("a");
+        final CompletableFuture<Integer> b = loader.load("b");
+        final CompletableFuture<Integer> sameA = loader.load("a");
+        assertTrue(batches.isEmpty());
+
+        closeWindow();
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), batches);
+        final Map<String, Integer> values = new HashMap<>();
+        values.put("a", 1);
+        results.get(0).complete(values);
+        assertEquals(Integer.valueOf(1), a.get());
+        assertEquals(Integer.valueOf(1), sameA.get());
+        // Keys missing from the batch result complete with null
+        assertNull(b.get());
+    }
+
+    @Test
+    public void fullBatchIsIssuedWithoutWaitingForTheWindow() {
+        final BatchLoader<String, Integer> loader = batchLoader(2);
+        loader.load("a");
+        assertTrue(batches.isEmpty());
+
+        loader.load("b");
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), batches);
+        verify(flushTask).cancel(false);
+    }
+
+    @Test
+    public void keysAfterAFullBatchOpenANewWindow() {
+        final BatchLoader<String, Integer> loader = batchLoader(2);
+        loader.load("a");
+        loader.load("b");
+        loader.load("c");
+
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(WINDOW_MICROS), eq(TimeUnit.MICROSECONDS));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void windowClosingAfterAFullBatchIssuesNothing() {
+        final BatchLoader<String, Integer> loader = batchLoader(2);
+        loader.load("a");
+        loader.load("b");
+
+        // Flush task cancelled too late
+        closeWindow();
+
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void batchFailureFailsEveryKey() throws Exception {
+        final BatchLoader<String, Integer> loader = batchLoader(10);
+        final CompletableFuture<Integer> a = loader.load("a");
+        final CompletableFuture<Integer> b = loader.load("b");
+        closeWindow();
+        final IllegalStateException failure = new IllegalStateException("read failed");
+
+        results.get(0).completeExceptionally(failure);
+
+        for (CompletableFuture<Integer> key : Arrays.asList(a, b)) {
+            try {
+                key.get();
+            } catch (ExecutionException ex) {
+                assertSame(failure, ex.getCause());
+                continue;
+            }
+            throw new AssertionError("key should have failed");
+        }
+    }
+
+    @Test
+    public void batchFunctionThrowingFailsEveryKey() {
+        final BatchLoader<String, Integer> loader = new BatchLoader<>("test", keys -> {
+            throw new IllegalStateException("no session");
+        }, scheduler, WINDOW_MICROS, 2, new MetricRegistry());
+        final CompletableFuture<Integer> a = loader.load("a");
+        final CompletableFuture<Integer> b = loader.load("b");
+
+        assertTrue(a.isCompletedExceptionally());
+        assertTrue(b.isCompletedExceptionally());
+        assertTrue(batches.isEmpty());
+    }
+}
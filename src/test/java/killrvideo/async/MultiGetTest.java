@@ -0,0 +1,155 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.dse.DseSession;
+
+public class MultiGetTest {
+
+    private static final UUID A = new UUID(1, 1);
+    private static final UUID B = new UUID(2, 2);
+    private static final UUID C = new UUID(3, 3);
+
+    private MultiGet multiGet;
+
+    @Before
+    public void setUp() {
+        multiGet = new MultiGet();
+        ReflectionTestUtils.setField(multiGet, "maxInFlight", 64);
+        ReflectionTestUtils.setField(multiGet, "maxBatchSize", 10);
+    }
+
+    @Test
+    public void resultsComeBackInRequestOrder() throws Exception {
+        final List<UUID> loaded = new ArrayList<>();
+
+        final List<String> results = multiGet.getAll(Arrays.asList(A, B, A, C), id -> {
+            loaded.add(id);
+            return CompletableFuture.completedFuture(id.equals(C) ? null : "entity " + id.getLeastSignificantBits());
+        }).get();
+
+        // Duplicates are loaded once, missing entities are null
+        assertEquals(Arrays.asList(A, B, C), loaded);
+        assertEquals(Arrays.asList("entity 1", "entity 2", "entity 1", null), results);
+    }
+
+    @Test
+    public void queriesInFlightAreCapped() throws Exception {
+        ReflectionTestUtils.setField(multiGet, "maxInFlight", 2);
+        final List<CompletableFuture<String>> queries = new ArrayList<>();
+        final List<UUID> ids = Arrays.asList(new UUID(0, 0), new UUID(0, 1), new UUID(0, 2), new UUID(0, 3), new UUID(0, 4));
+
+        final CompletableFuture<List<String>> results = multiGet.getAll(ids, id -> {
+            final CompletableFuture<String> query = new CompletableFuture<>();
+            queries.add(query);
+            return query;
+        });
+        assertEquals(2, queries.size());
+
+        queries.get(0).complete("0");
+        assertEquals(3, queries.size());
+        queries.get(1).complete("1");
+        queries.get(2).complete("2");
+        assertEquals(5, queries.size());
+        assertFalse(results.isDone());
+
+        queries.get(3).complete("3");
+        queries.get(4).complete("4");
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), results.get());
+    }
+
+    @Test
+    public void synchronousLoadersDoNotRecurse() throws Exception {
+        ReflectionTestUtils.setField(multiGet, "maxInFlight", 1);
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            ids.add(new UUID(0, i));
+        }
+        final CompletableFuture<Long> firstQuery = new CompletableFuture<>();
+        final int[] stackDepths = new int[2];
+
+        final CompletableFuture<List<Long>> results = multiGet.getAll(ids, id -> {
+            if (id.getLeastSignificantBits() == 0) {
+                return firstQuery;
+            }
+            if (id.getLeastSignificantBits() == 1) {
+                stackDepths[0] = Thread.currentThread().getStackTrace().length;
+            } else if (id.getLeastSignificantBits() == 1999) {
+                stackDepths[1] = Thread.currentThread().getStackTrace().length;
+            }
+            return CompletableFuture.completedFuture(id.getLeastSignificantBits());
+        });
+
+        // The other queries wait for the slot of the first one, then complete as soon as they are started
+        firstQuery.complete(0L);
+
+        assertEquals(10000, results.get().size());
+        assertEquals(Long.valueOf(9999), results.get().get(9999));
+        // The last waiting query is started from the same drain loop as the first one
+        assertEquals(stackDepths[0], stackDepths[1]);
+    }
+
+    @Test
+    public void failedLoaderReleasesItsSlot() {
+        ReflectionTestUtils.setField(multiGet, "maxInFlight", 1);
+        final List<UUID> loaded = new ArrayList<>();
+
+        final CompletableFuture<List<String>> results = multiGet.getAll(Arrays.asList(A, B), id -> {
+            loaded.add(id);
+            if (id.equals(A)) {
+                throw new IllegalStateException("no session");
+            }
+            return CompletableFuture.completedFuture("entity");
+        });
+
+        assertEquals(Arrays.asList(A, B), loaded);
+        assertTrue(results.isCompletedExceptionally());
+    }
+
+    @Test
+    public void idsAreGroupedByReplicasAndSplitInBatches() throws Exception {
+        ReflectionTestUtils.setField(multiGet, "maxBatchSize", 2);
+        final Host host1 = mock(Host.class);
+        final Host host2 = mock(Host.class);
+        final DseSession dseSession = mock(DseSession.class, RETURNS_DEEP_STUBS);
+        // Odd ids are owned by the first host, even ids by the second one
+        when(dseSession.getCluster().getMetadata().getReplicas(eq("killrvideo"), any(ByteBuffer.class))).thenAnswer(invocation -> {
+            final ByteBuffer partitionKey = invocation.getArgument(1);
+            return Collections.singleton(partitionKey.getLong(partitionKey.position()) % 2 == 1 ? host1 : host2);
+        });
+        ReflectionTestUtils.setField(multiGet, "dseSession", dseSession);
+        final List<List<UUID>> batches = new ArrayList<>();
+
+        final List<String> results = multiGet.getAllByReplica("killrvideo", Arrays.asList(A, B, C, new UUID(5, 5), A), batch -> {
+            batches.add(batch);
+            final Map<UUID, String> entities = new HashMap<>();
+            batch.forEach(id -> entities.put(id, "entity " + id.getLeastSignificantBits()));
+            return CompletableFuture.completedFuture(entities);
+        }).get();
+
+        assertEquals(Arrays.asList(Arrays.asList(A, C), Arrays.asList(new UUID(5, 5)), Arrays.asList(B)), batches);
+        assertEquals(Arrays.asList("entity 1", "entity 2", "entity 3", "entity 5", "entity 1"), results);
+    }
+}
@@ -0,0 +1,132 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.Result;
+import com.google.common.util.concurrent.Futures;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+public class ResultStreamerTest {
+
+    private DseSession dseSession;
+
+    private Mapper<Integer> mapper;
+
+    private ServerCallStreamObserver<Integer> responseObserver;
+
+    /** Integers sent to the client. */
+    private List<Integer> sent;
+
+    /** Pages of each query, by query string. */
+    private Map<String, Deque<List<Integer>>> pagesByQuery;
+
+    /** Query string of each execution. */
+    private Map<ResultSetFuture, String> executions;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        sent = new ArrayList<>();
+        pagesByQuery = new HashMap<>();
+        executions = new HashMap<>();
+        responseObserver = mock(ServerCallStreamObserver.class);
+        when(responseObserver.isReady()).thenReturn(true);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(responseObserver).onNext(any(Integer.class));
+
+        // Each execution is mapped into the pages of its query
+        dseSession = mock(DseSession.class);
+        when(dseSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final ResultSetFuture execution = mock(ResultSetFuture.class);
+            executions.put(execution, invocation.getArgument(0).toString());
+            return execution;
+        });
+        mapper = mock(Mapper.class);
+        when(mapper.mapAsync(any(ResultSetFuture.class))).thenAnswer(invocation ->
+                Futures.immediateFuture(result(pagesByQuery.get(executions.get(invocation.getArgument(0))))));
+    }
+
+    /** Query whose rows are read in pages. */
+    @SafeVarargs
+    private final Statement query(String name, List<Integer>... pages) {
+        pagesByQuery.put(name, new ArrayDeque<>(Arrays.asList(pages)));
+        return new SimpleStatement(name);
+    }
+
+    /** Rows of a query, the next page being read by fetchMoreResults(). */
+    @SuppressWarnings("unchecked")
+    private static Result<Integer> result(Deque<List<Integer>> pages) {
+        final Deque<Integer> available = new ArrayDeque<>(pages.poll());
+        final Result<Integer> result = mock(Result.class);
+        when(result.getAvailableWithoutFetching()).thenAnswer(invocation -> available.size());
+        when(result.one()).thenAnswer(invocation -> available.poll());
+        when(result.isFullyFetched()).thenAnswer(invocation -> pages.isEmpty());
+        when(result.fetchMoreResults()).thenAnswer(invocation -> {
+            available.addAll(pages.poll());
+            return Futures.immediateFuture(null);
+        });
+        return result;
+    }
+
+    @Test
+    public void queriesAreStreamedInOrder() {
+        new ResultStreamer<>(responseObserver, dseSession, mapper,
+                Arrays.asList(query("q1", Arrays.asList(1, 2), Arrays.asList(3)), query("q2", Arrays.asList(4))).iterator(),
+                i -> i, 0).start();
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), sent);
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    public void queriesOfAGroupAreMerged() {
+        final List<List<Statement>> groups = Arrays.asList(
+                Arrays.asList(
+                        query("shard1", Arrays.asList(9, 6), Arrays.asList(3)),
+                        query("shard2", Arrays.asList(8, 7), Arrays.asList(2, 1)),
+                        query("shard3", Arrays.asList(5, 4))),
+                Arrays.asList(
+                        query("olderBucket", Arrays.asList(0))));
+
+        new ResultStreamer<>(responseObserver, dseSession, mapper, groups.iterator(), Comparator.<Integer>reverseOrder(),
+                i -> i, 0).start();
+
+        assertEquals(Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), sent);
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    public void limitStopsTheMerge() {
+        final List<List<Statement>> groups = Arrays.<List<Statement>>asList(Arrays.asList(
+                query("shard1", Arrays.asList(9, 6)),
+                query("shard2", Arrays.asList(8, 7))));
+
+        new ResultStreamer<>(responseObserver, dseSession, mapper, groups.iterator(), Comparator.<Integer>reverseOrder(),
+                i -> i, 3).start();
+
+        assertEquals(Arrays.asList(9, 8, 7), sent);
+        verify(responseObserver).onCompleted();
+    }
+}
@@ -0,0 +1,124 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SingleFlightTest {
+
+    private MetricRegistry metricRegistry;
+
+    private SingleFlight<String, String> singleFlight;
+
+    /** Loads started, completed by the tests. */
+    private List<CompletableFuture<String>> loads;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        singleFlight = new SingleFlight<>("test", metricRegistry);
+        loads = new ArrayList<>();
+    }
+
+    private CompletableFuture<String> load(String key) {
+        final CompletableFuture<String> load = new CompletableFuture<>();
+        loads.add(load);
+        return load;
+    }
+
+    @Test
+    public void concurrentLookupsShareOneLoad() throws Exception {
+        final CompletableFuture<String> first = singleFlight.get("a", this::load);
+        final CompletableFuture<String> second = singleFlight.get("a", this::load);
+
+        assertEquals(1, loads.size());
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        loads.get(0).complete("value");
+
+        assertEquals("value", first.get());
+        assertEquals("value", second.get());
+        assertEquals(1, metricRegistry.counter("killrvideo.singleflight.test.loads").getCount());
+        assertEquals(1, metricRegistry.counter("killrvideo.singleflight.test.merged").getCount());
+    }
+
+    @Test
+    public void distinctKeysAreLoadedSeparately() {
+        singleFlight.get("a", this::load);
+        singleFlight.get("b", this::load);
+
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void eachLookupGetsItsOwnFuture() throws Exception {
+        final CompletableFuture<String> first = singleFlight.get("a", this::load);
+        final CompletableFuture<String> second = singleFlight.get("a", this::load);
+        assertNotSame(first, second);
+
+        // A caller giving up does not affect the others
+        first.cancel(false);
+        loads.get(0).complete("value");
+
+        assertTrue(first.isCancelled());
+        assertEquals("value", second.get());
+    }
+
+    @Test
+    public void lookupAfterCompletionLoadsAgain() throws Exception {
+        final CompletableFuture<String> first = singleFlight.get("a", this::load);
+        loads.get(0).complete("old");
+        assertEquals("old", first.get());
+
+        final CompletableFuture<String> second = singleFlight.get("a", this::load);
+        assertEquals(2, loads.size());
+        loads.get(1).complete("new");
+        assertEquals("new", second.get());
+    }
+
+    @Test
+    public void failureIsSharedWithTheOriginalException() throws Exception {
+        final CompletableFuture<String> first = singleFlight.get("a", this::load);
+        final CompletableFuture<String> second = singleFlight.get("a", this::load);
+        final IllegalStateException failure = new IllegalStateException("read failed");
+
+        loads.get(0).completeExceptionally(failure);
+
+        for (CompletableFuture<String> lookup : Arrays.asList(first, second)) {
+            try {
+                lookup.get();
+            } catch (ExecutionException ex) {
+                assertSame(failure, ex.getCause());
+                continue;
+            }
+            throw new AssertionError("lookup should have failed");
+        }
+    }
+
+    @Test
+    public void loaderThrowingFailsTheLookupAndIsNotKept() throws Exception {
+        final CompletableFuture<String> failed = singleFlight.get("a", key -> {
+            throw new IllegalArgumentException("bad key");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+
+        final CompletableFuture<String> next = singleFlight.get("a", this::load);
+        assertEquals(1, loads.size());
+        loads.get(0).complete("value");
+        assertEquals("value", next.get());
+    }
+}
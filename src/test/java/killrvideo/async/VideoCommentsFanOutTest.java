@@ -0,0 +1,130 @@
+package killrvideo.async;
+
+import static killrvideo.utils.TypeConverter.uuidToTimeUuid;
+import static killrvideo.utils.TypeConverter.uuidToUuid;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.comments.events.CommentsEvents.UserCommentedOnVideo;
+
+public class VideoCommentsFanOutTest {
+
+    private static final UUID VIDEO_ID = UUID.fromString("5b6962dd-3f90-4c93-8f61-eabfa4a803e2");
+
+    private VideoCommentsFanOut fanOut;
+
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        fanOut = new VideoCommentsFanOut();
+        fanOut.metricRegistry = metricRegistry;
+        ReflectionTestUtils.setField(fanOut, "bufferSize", 2);
+        ReflectionTestUtils.setField(fanOut, "maxSubscribers", 10);
+        fanOut.init();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCallStreamObserver<VideoComment> stream(boolean ready, boolean cancelled) {
+        final ServerCallStreamObserver<VideoComment> stream = mock(ServerCallStreamObserver.class);
+        when(stream.isReady()).thenReturn(ready);
+        when(stream.isCancelled()).thenReturn(cancelled);
+        return stream;
+    }
+
+    /** Cancel a stream as gRPC does, through the handler registered by the fan-out. */
+    private static void cancel(ServerCallStreamObserver<VideoComment> stream) {
+        final ArgumentCaptor<Runnable> onCancel = ArgumentCaptor.forClass(Runnable.class);
+        verify(stream).setOnCancelHandler(onCancel.capture());
+        onCancel.getValue().run();
+    }
+
+    private void postComment() {
+        fanOut.handle(UserCommentedOnVideo.newBuilder()
+                .setVideoId(uuidToUuid(VIDEO_ID))
+                .setUserId(uuidToUuid(UUID.randomUUID()))
+                .setCommentId(uuidToTimeUuid(UUID.randomUUID()))
+                .setComment("First !")
+                .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private int subscriberCount() {
+        return ((Gauge<Integer>) metricRegistry.getGauges().get("killrvideo.subscriptions.comments.subscribers")).getValue();
+    }
+
+    @Test
+    public void commentsArePushedToTheSubscribersOfTheirVideo() {
+        final ServerCallStreamObserver<VideoComment> subscriber = stream(true, false);
+        final ServerCallStreamObserver<VideoComment> otherVideo = stream(true, false);
+        fanOut.subscribe(VIDEO_ID, subscriber);
+        fanOut.subscribe(UUID.randomUUID(), otherVideo);
+
+        postComment();
+
+        verify(subscriber).onNext(any(VideoComment.class));
+        verify(otherVideo, never()).onNext(any(VideoComment.class));
+    }
+
+    @Test
+    public void subscriberFollowingTheLastUnsubscriptionIsRegistered() {
+        final ServerCallStreamObserver<VideoComment> first = stream(true, false);
+        fanOut.subscribe(VIDEO_ID, first);
+        cancel(first);
+        assertEquals(0, subscriberCount());
+
+        final ServerCallStreamObserver<VideoComment> next = stream(true, false);
+        fanOut.subscribe(VIDEO_ID, next);
+        postComment();
+
+        verify(next).onNext(any(VideoComment.class));
+        assertEquals(1, subscriberCount());
+    }
+
+    @Test
+    public void streamCancelledBeforeRegistrationIsNotKept() {
+        final ServerCallStreamObserver<VideoComment> cancelled = stream(true, true);
+        fanOut.subscribe(VIDEO_ID, cancelled);
+
+        assertEquals(0, subscriberCount());
+        postComment();
+        verify(cancelled, never()).onNext(any(VideoComment.class));
+        // A late cancel handler does not count the subscriber twice
+        cancel(cancelled);
+        assertEquals(0, subscriberCount());
+    }
+
+    @Test
+    public void slowSubscriberIsDropped() {
+        final ServerCallStreamObserver<VideoComment> slow = stream(false, false);
+        fanOut.subscribe(VIDEO_ID, slow);
+
+        postComment();
+        postComment();
+        assertEquals(1, subscriberCount());
+        postComment();
+
+        verify(slow, never()).onNext(any(VideoComment.class));
+        verify(slow, times(1)).onError(any(Throwable.class));
+        assertEquals(0, subscriberCount());
+        assertEquals(1, metricRegistry.counter("killrvideo.subscriptions.comments.dropped").getCount());
+    }
+}
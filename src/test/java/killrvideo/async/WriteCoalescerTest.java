@@ -0,0 +1,201 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.util.concurrent.AbstractFuture;
+
+public class WriteCoalescerTest {
+
+    private static final long WINDOW_MILLIS = 5;
+
+    /** Scheduler never running anything by itself, windows are closed by the tests. */
+    private ScheduledExecutorService scheduler;
+
+    private DseSession dseSession;
+
+    private MetricRegistry metricRegistry;
+
+    /** Statements executed, in order. */
+    private List<Statement> executed;
+
+    /** Results of the executed statements, completed by the tests. */
+    private List<TestResultSetFuture> results;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        executed = new ArrayList<>();
+        results = new ArrayList<>();
+        dseSession = mock(DseSession.class);
+        when(dseSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final TestResultSetFuture result = new TestResultSetFuture();
+            executed.add(invocation.getArgument(0));
+            results.add(result);
+            return result;
+        });
+        metricRegistry = new MetricRegistry();
+    }
+
+    private WriteCoalescer writeCoalescer(int maxBatchSize) {
+        return new WriteCoalescer("test", dseSession, scheduler, WINDOW_MILLIS, maxBatchSize, metricRegistry);
+    }
+
+    /** Close the window opened by the first write. */
+    private void closeWindow() {
+        final ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), eq(WINDOW_MILLIS), eq(TimeUnit.MILLISECONDS));
+        flush.getValue().run();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int pendingWrites() {
+        return ((Gauge<Integer>) metricRegistry.getGauges().get("killrvideo.coalescer.test.pending")).getValue();
+    }
+
+    @Test
+    public void writesOfAPartitionAreBatchedAtWindowClose() {
+        final WriteCoalescer coalescer = writeCoalescer(10);
+        final Statement a1 = new SimpleStatement("INSERT a1");
+        final Statement a2 = new SimpleStatement("INSERT a2");
+        final Statement a3 = new SimpleStatement("INSERT a3");
+        final Statement b1 = new SimpleStatement("INSERT b1");
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        writes.add(coalescer.write("a", a1));
+        writes.add(coalescer.write("b", b1));
+        writes.add(coalescer.write("a", a2));
+        writes.add(coalescer.write("a", a3));
+        assertTrue(executed.isEmpty());
+        assertEquals(4, pendingWrites());
+
+        closeWindow();
+
+        assertEquals(2, executed.size());
+        final BatchStatement batch = (BatchStatement) executed.get(0);
+        assertEquals(BatchStatement.Type.UNLOGGED, ReflectionTestUtils.getField(batch, "batchType"));
+        assertEquals(3, batch.size());
+        final List<Statement> batched = new ArrayList<>(batch.getStatements());
+        assertSame(a1, batched.get(0));
+        assertSame(a2, batched.get(1));
+        assertSame(a3, batched.get(2));
+        // A partition with a single write is not wrapped in a batch
+        assertSame(b1, executed.get(1));
+        writes.forEach(write -> assertFalse(write.isDone()));
+
+        results.forEach(result -> result.set(null));
+
+        writes.forEach(write -> assertTrue(write.isDone() && !write.isCompletedExceptionally()));
+        assertEquals(0, pendingWrites());
+    }
+
+    @Test
+    public void fullPartitionIsWrittenRightAway() {
+        final WriteCoalescer coalescer = writeCoalescer(2);
+        coalescer.write("a", new SimpleStatement("INSERT a1"));
+        coalescer.write("b", new SimpleStatement("INSERT b1"));
+        assertTrue(executed.isEmpty());
+
+        coalescer.write("a", new SimpleStatement("INSERT a2"));
+
+        assertEquals(1, executed.size());
+        assertEquals(2, ((BatchStatement) executed.get(0)).size());
+
+        // The window only writes what is left
+        closeWindow();
+        assertEquals(2, executed.size());
+        assertEquals("INSERT b1", executed.get(1).toString());
+    }
+
+    @Test
+    public void batchKeepsTheConsistencyLevelOfItsStatements() {
+        final WriteCoalescer coalescer = writeCoalescer(2);
+        coalescer.write("a", new SimpleStatement("INSERT a1").setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+        coalescer.write("a", new SimpleStatement("INSERT a2").setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+
+        assertEquals(ConsistencyLevel.LOCAL_QUORUM, executed.get(0).getConsistencyLevel());
+    }
+
+    @Test
+    public void failedBatchFailsEveryWrite() throws Exception {
+        final WriteCoalescer coalescer = writeCoalescer(10);
+        final CompletableFuture<Void> a1 = coalescer.write("a", new SimpleStatement("INSERT a1"));
+        final CompletableFuture<Void> a2 = coalescer.write("a", new SimpleStatement("INSERT a2"));
+        final CompletableFuture<Void> b1 = coalescer.write("b", new SimpleStatement("INSERT b1"));
+        closeWindow();
+
+        final IllegalStateException failure = new IllegalStateException("write timeout");
+        results.get(0).setException(failure);
+        results.get(1).set(null);
+
+        for (CompletableFuture<Void> write : Arrays.asList(a1, a2)) {
+            try {
+                write.get();
+                fail("write of a failed batch should fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        b1.get();
+        assertEquals(0, pendingWrites());
+    }
+
+    /**
+     * Result of an asynchronous execution, completed by the tests.
+     */
+    private static final class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
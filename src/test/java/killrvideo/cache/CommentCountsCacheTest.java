@@ -0,0 +1,92 @@
+package killrvideo.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+
+import killrvideo.dao.dse.CommentDseDao;
+
+public class CommentCountsCacheTest {
+
+    private static final UUID VIDEO_ID = UUID.fromString("5b6962dd-3f90-4c93-8f61-eabfa4a803e2");
+
+    private CommentCountsCache cache;
+
+    /** Reads sent to Cassandra, completed by the tests. */
+    private List<CompletableFuture<List<Long>>> reads;
+
+    @Before
+    public void setUp() {
+        reads = new ArrayList<>();
+        final CommentDseDao commentDseDao = mock(CommentDseDao.class);
+        when(commentDseDao.findCommentCountsAsync(anyList())).thenAnswer(invocation -> {
+            final CompletableFuture<List<Long>> read = new CompletableFuture<>();
+            reads.add(read);
+            return read;
+        });
+        cache = new CommentCountsCache();
+        cache.commentDseDao = commentDseDao;
+        cache.metricRegistry = new MetricRegistry();
+        ReflectionTestUtils.setField(cache, "maxVideos", 100L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        cache.init();
+    }
+
+    private CompletableFuture<List<Long>> getCommentCount() {
+        return cache.getCommentCounts(Collections.singletonList(VIDEO_ID));
+    }
+
+    @Test
+    public void countsAreCachedBetweenComments() throws Exception {
+        final CompletableFuture<List<Long>> first = getCommentCount();
+        reads.get(0).complete(Arrays.asList(3L));
+
+        assertEquals(Arrays.asList(3L), first.get());
+        assertEquals(Arrays.asList(3L), getCommentCount().get());
+        assertEquals(1, reads.size());
+    }
+
+    @Test
+    public void countReadBeforeACommentIsNotCached() throws Exception {
+        final CompletableFuture<List<Long>> read = getCommentCount();
+        // The comment is counted while the read is in flight, the read may have missed it
+        cache.commentCounted(VIDEO_ID);
+        reads.get(0).complete(Arrays.asList(3L));
+        assertEquals(Arrays.asList(3L), read.get());
+
+        final CompletableFuture<List<Long>> next = getCommentCount();
+        assertEquals(2, reads.size());
+        reads.get(1).complete(Arrays.asList(4L));
+        assertEquals(Arrays.asList(4L), next.get());
+    }
+
+    @Test
+    public void countReadAfterACounterWriteIsNotCountedTwice() throws Exception {
+        // The counter is written, the read sees the new comment before the cache is told about it
+        final CompletableFuture<List<Long>> read = getCommentCount();
+        reads.get(0).complete(Arrays.asList(4L));
+        assertEquals(Arrays.asList(4L), read.get());
+        cache.commentCounted(VIDEO_ID);
+
+        final CompletableFuture<List<Long>> next = getCommentCount();
+        assertEquals(2, reads.size());
+        reads.get(1).complete(Arrays.asList(4L));
+        assertEquals(Arrays.asList(4L), next.get());
+        assertEquals(Arrays.asList(4L), getCommentCount().get());
+        assertEquals(2, reads.size());
+    }
+}
@@ -0,0 +1,124 @@
+package killrvideo.cache;
+
+import static killrvideo.utils.TypeConverter.uuidToUuid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetUserVideoPreviewsResponse;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideosAdded;
+
+public class UserVideosFirstPageCacheTest {
+
+    /** Users of distinct generation stripes. */
+    private static final UUID USER_ID = new UUID(0L, 1L);
+
+    private static final UUID OTHER_USER_ID = new UUID(0L, 2L);
+
+    private static final GetUserVideoPreviewsResponse FIRST_PAGE = GetUserVideoPreviewsResponse.newBuilder()
+            .setUserId(uuidToUuid(USER_ID))
+            .setPagingState("0a0b0c")
+            .build();
+
+    private UserVideosFirstPageCache cache;
+
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        cache = new UserVideosFirstPageCache();
+        cache.metricRegistry = metricRegistry;
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        cache.init();
+    }
+
+    private static YouTubeVideoAdded video(UUID userId) {
+        return YouTubeVideoAdded.newBuilder()
+                .setUserId(uuidToUuid(userId))
+                .setVideoId(uuidToUuid(UUID.randomUUID()))
+                .build();
+    }
+
+    private void videoAdded(UUID userId) {
+        cache.handle(video(userId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private long gauge(String name) {
+        return ((Gauge<Long>) metricRegistry.getGauges().get("killrvideo.cache.userVideos." + name)).getValue();
+    }
+
+    @Test
+    public void pagesAreCachedByPageSize() {
+        cache.putFirstPage(USER_ID, 10, FIRST_PAGE, cache.generation(USER_ID));
+
+        assertSame(FIRST_PAGE, cache.getFirstPage(USER_ID, 10).get());
+        assertFalse(cache.getFirstPage(USER_ID, 20).isPresent());
+        // A page size not cached for the user is a miss
+        assertEquals(1, gauge("hits"));
+        assertEquals(1, gauge("misses"));
+    }
+
+    @Test
+    public void videoAddedInvalidatesEveryPageSizeOfItsUser() {
+        cache.putFirstPage(USER_ID, 10, FIRST_PAGE, cache.generation(USER_ID));
+        cache.putFirstPage(USER_ID, 20, FIRST_PAGE, cache.generation(USER_ID));
+        cache.putFirstPage(OTHER_USER_ID, 10, FIRST_PAGE, cache.generation(OTHER_USER_ID));
+
+        videoAdded(USER_ID);
+
+        assertFalse(cache.getFirstPage(USER_ID, 10).isPresent());
+        assertFalse(cache.getFirstPage(USER_ID, 20).isPresent());
+        assertTrue(cache.getFirstPage(OTHER_USER_ID, 10).isPresent());
+    }
+
+    @Test
+    public void pageReadBeforeAVideoOfItsUserIsNotCached() {
+        final long generation = cache.generation(USER_ID);
+        videoAdded(USER_ID);
+
+        cache.putFirstPage(USER_ID, 10, FIRST_PAGE, generation);
+
+        assertFalse(cache.getFirstPage(USER_ID, 10).isPresent());
+    }
+
+    @Test
+    public void videoOfAnotherUserDoesNotPreventCaching() {
+        final long generation = cache.generation(USER_ID);
+        videoAdded(OTHER_USER_ID);
+
+        cache.putFirstPage(USER_ID, 10, FIRST_PAGE, generation);
+
+        assertTrue(cache.getFirstPage(USER_ID, 10).isPresent());
+    }
+
+    @Test
+    public void bulkSubmissionInvalidatesEachOfItsUsers() {
+        cache.putFirstPage(USER_ID, 10, FIRST_PAGE, cache.generation(USER_ID));
+        cache.putFirstPage(OTHER_USER_ID, 10, FIRST_PAGE, cache.generation(OTHER_USER_ID));
+        final long generation = cache.generation(USER_ID);
+
+        cache.handle(YouTubeVideosAdded.newBuilder()
+                .addVideos(video(USER_ID))
+                .addVideos(video(USER_ID))
+                .addVideos(video(OTHER_USER_ID))
+                .build());
+
+        assertFalse(cache.getFirstPage(USER_ID, 10).isPresent());
+        assertFalse(cache.getFirstPage(OTHER_USER_ID, 10).isPresent());
+        assertEquals(generation + 1, cache.generation(USER_ID));
+    }
+}
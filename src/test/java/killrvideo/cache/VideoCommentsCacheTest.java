@@ -0,0 +1,94 @@
+package killrvideo.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.utils.UUIDs;
+
+import killrvideo.dao.bean.CommentListResult;
+import killrvideo.entity.Comment;
+
+public class VideoCommentsCacheTest {
+
+    private static final UUID VIDEO_ID = UUID.fromString("5b6962dd-3f90-4c93-8f61-eabfa4a803e2");
+
+    private VideoCommentsCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new VideoCommentsCache();
+        cache.metricRegistry = new MetricRegistry();
+        ReflectionTestUtils.setField(cache, "maxVideos", 100L);
+        ReflectionTestUtils.setField(cache, "maxCommentsPerVideo", 10);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        cache.init();
+    }
+
+    private static Comment comment(long timestamp) {
+        final Comment comment = new Comment();
+        comment.setVideoid(VIDEO_ID);
+        comment.setCommentid(UUIDs.startOf(timestamp));
+        comment.setUserid(UUID.randomUUID());
+        comment.setComment("Comment at " + timestamp);
+        return comment;
+    }
+
+    private static CommentListResult page(Comment... comments) {
+        final CommentListResult page = new CommentListResult();
+        page.setComments(new ArrayList<>(Arrays.asList(comments)));
+        return page;
+    }
+
+    private List<UUID> cachedCommentIds() {
+        return cache.getFirstPage(VIDEO_ID, 10).get().getComments().stream()
+                .map(Comment::getCommentid)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void commentsAreAppendedToTheCachedPage() {
+        final Comment older = comment(1000);
+        cache.putFirstPage(VIDEO_ID, page(older), cache.generation(VIDEO_ID));
+
+        final Comment newer = comment(2000);
+        cache.append(newer);
+
+        assertEquals(Arrays.asList(newer.getCommentid(), older.getCommentid()), cachedCommentIds());
+    }
+
+    @Test
+    public void pageReadBeforeACommentIsNotCached() {
+        final long generation = cache.generation(VIDEO_ID);
+        // The page is read, then a comment is posted before the page is cached
+        final CommentListResult page = page(comment(1000));
+        cache.append(comment(2000));
+
+        cache.putFirstPage(VIDEO_ID, page, generation);
+
+        assertFalse(cache.getFirstPage(VIDEO_ID, 1).isPresent());
+    }
+
+    @Test
+    public void latePutDoesNotOverwriteAnAppendedComment() {
+        final long generation = cache.generation(VIDEO_ID);
+        final Comment older = comment(1000);
+        cache.putFirstPage(VIDEO_ID, page(older), generation);
+        final Comment newer = comment(2000);
+        cache.append(newer);
+        // A late put of the same read must not overwrite the appended comment
+        cache.putFirstPage(VIDEO_ID, page(older), generation);
+
+        assertEquals(Arrays.asList(newer.getCommentid(), older.getCommentid()), cachedCommentIds());
+    }
+}
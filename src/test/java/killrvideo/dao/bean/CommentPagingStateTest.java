@@ -0,0 +1,88 @@
+package killrvideo.dao.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.TestPagingStates;
+
+public class CommentPagingStateTest {
+
+    private static final PagingState CASSANDRA_PAGING_STATE = TestPagingStates.of(
+            "SELECT * FROM killrvideo.comments_by_video WHERE videoid = ?", (byte) 0x01, (byte) 0x02);
+
+    private static final UUID COMMENT_ID = UUID.fromString("5b6962dd-3f90-11e8-8f61-eabfa4a803e2");
+
+    @Test
+    public void roundTripOfNativePagingState() {
+        final String token = new CommentPagingState(Optional.empty(), Optional.of(CASSANDRA_PAGING_STATE)).serialize();
+
+        final CommentPagingState parsed = CommentPagingState.parse(token).get();
+
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), token);
+        assertFalse(parsed.getBucket().isPresent());
+        assertFalse(parsed.getResumeAfter().isPresent());
+        assertEquals(token, parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void roundTripResumingAfterComment() {
+        final CommentPagingState parsed = CommentPagingState.parse(CommentPagingState.resumeAfter(COMMENT_ID).serialize()).get();
+
+        assertEquals(COMMENT_ID, parsed.getResumeAfter().get());
+        assertFalse(parsed.getCassandraPagingState().isPresent());
+        assertFalse(parsed.getBucket().isPresent());
+    }
+
+    @Test
+    public void roundTripResumingAfterCommentWithPagingState() {
+        final String token = new CommentPagingState(Optional.of(COMMENT_ID), Optional.of(CASSANDRA_PAGING_STATE)).serialize();
+
+        final CommentPagingState parsed = CommentPagingState.parse(token).get();
+
+        assertEquals(COMMENT_ID + "," + CASSANDRA_PAGING_STATE, token);
+        assertEquals(COMMENT_ID, parsed.getResumeAfter().get());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void roundTripOfBucketedTokens() {
+        final CommentPagingState bucketOnly = CommentPagingState.parse(
+                new CommentPagingState(Optional.of(201802), Optional.empty(), Optional.empty()).serialize()).get();
+        assertEquals(Integer.valueOf(201802), bucketOnly.getBucket().get());
+        assertFalse(bucketOnly.getResumeAfter().isPresent());
+        assertFalse(bucketOnly.getCassandraPagingState().isPresent());
+
+        final String token = new CommentPagingState(Optional.of(201803), Optional.of(COMMENT_ID), Optional.of(CASSANDRA_PAGING_STATE)).serialize();
+        final CommentPagingState parsed = CommentPagingState.parse(token).get();
+        assertEquals("201803/" + COMMENT_ID + "," + CASSANDRA_PAGING_STATE, token);
+        assertEquals(Integer.valueOf(201803), parsed.getBucket().get());
+        assertEquals(COMMENT_ID, parsed.getResumeAfter().get());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void parseLegacyNativeToken() {
+        // Tokens issued before the comments cache are the bare hexadecimal paging state
+        final CommentPagingState parsed = CommentPagingState.parse(CASSANDRA_PAGING_STATE.toString()).get();
+
+        assertFalse(parsed.getBucket().isPresent());
+        assertFalse(parsed.getResumeAfter().isPresent());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void invalidTokensStartOver() {
+        assertFalse(CommentPagingState.parse(null).isPresent());
+        assertFalse(CommentPagingState.parse("").isPresent());
+        assertFalse(CommentPagingState.parse("not-a-token").isPresent());
+        assertFalse(CommentPagingState.parse("abc/" + COMMENT_ID).isPresent());
+        assertFalse(CommentPagingState.parse("201803/201802/" + COMMENT_ID).isPresent());
+        assertFalse(CommentPagingState.parse(COMMENT_ID + ",xyz").isPresent());
+    }
+}
@@ -0,0 +1,132 @@
+package killrvideo.dao.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.TestPagingStates;
+
+import killrvideo.entity.LatestVideos;
+
+public class LatestVideosPagingStateTest {
+
+    private static final PagingState CASSANDRA_PAGING_STATE = TestPagingStates.of(
+            "SELECT * FROM killrvideo.latest_videos WHERE yyyymmdd = ?", (byte) 0x0a, (byte) 0x0b, (byte) 0x0c);
+
+    private static final UUID VIDEO_ID = UUID.fromString("5b6962dd-3f90-4c93-8f61-eabfa4a803e2");
+
+    private static final long ADDED_DATE = 1520000000000L;
+
+    @Test
+    public void roundTripOfFirstPage() {
+        final LatestVideosBuckets bucketing = new LatestVideosBuckets(6, 4);
+        final LatestVideosPagingState state = LatestVideosPagingState.firstPage(LocalDateTime.of(2018, 3, 1, 13, 30), bucketing);
+
+        final LatestVideosPagingState parsed = LatestVideosPagingState.parse(state.serialize()).get();
+
+        assertEquals(bucketing, parsed.getBucketing());
+        assertEquals(state.getAnchorBucket(), parsed.getAnchorBucket());
+        assertEquals(0, parsed.getBucketOffset());
+        assertFalse(parsed.getCassandraPagingState().isPresent());
+        assertFalse(parsed.getResumeAfter().isPresent());
+    }
+
+    @Test
+    public void roundTripWithPagingStateAndResumeAfter() {
+        final LatestVideosPagingState state = new LatestVideosPagingState(new LatestVideosBuckets(1, 127), 424242L, 191,
+                Optional.of(CASSANDRA_PAGING_STATE), Optional.of(resumeAfter(ADDED_DATE, VIDEO_ID)));
+
+        final String token = state.serialize();
+        final LatestVideosPagingState parsed = LatestVideosPagingState.parse(token).get();
+
+        assertTrue("token should be URL safe : " + token, token.matches("[A-Za-z0-9_-]+"));
+        assertEquals(new LatestVideosBuckets(1, 127), parsed.getBucketing());
+        assertEquals(424242L, parsed.getAnchorBucket());
+        assertEquals(191, parsed.getBucketOffset());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+        assertEquals(ADDED_DATE, parsed.getResumeAfter().get().getAddedDate().getTime());
+        assertEquals(VIDEO_ID, parsed.getResumeAfter().get().getVideoid());
+    }
+
+    @Test
+    public void parseVersion1() {
+        final long epochDay = LocalDate.of(2018, 3, 1).toEpochDay();
+        final byte[] pagingState = CASSANDRA_PAGING_STATE.toBytes();
+        final ByteBuffer buffer = ByteBuffer.allocate(7 + 2 + pagingState.length);
+        buffer.put((byte) 1);
+        buffer.putInt((int) epochDay);
+        buffer.put((byte) 3);
+        buffer.put((byte) 0x01);
+        buffer.putShort((short) pagingState.length);
+        buffer.put(pagingState);
+
+        final LatestVideosPagingState parsed = LatestVideosPagingState
+                .parse(Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array())).get();
+
+        assertEquals(LatestVideosBuckets.DAILY, parsed.getBucketing());
+        assertEquals(epochDay, parsed.getAnchorBucket());
+        assertEquals(3, parsed.getBucketOffset());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+        assertFalse(parsed.getResumeAfter().isPresent());
+    }
+
+    @Test
+    public void parseLegacyText() {
+        final String buckets = "20180301_20180228_20180227_20180226_20180225_20180224_20180223_20180222";
+
+        final LatestVideosPagingState parsed = LatestVideosPagingState
+                .parse(buckets + ",2," + CASSANDRA_PAGING_STATE.toString()).get();
+
+        assertEquals(LatestVideosBuckets.DAILY, parsed.getBucketing());
+        assertEquals(LocalDate.of(2018, 3, 1).toEpochDay(), parsed.getAnchorBucket());
+        assertEquals(2, parsed.getBucketOffset());
+        assertEquals("20180227", parsed.buckets().get(parsed.getBucketOffset()).get(0));
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+        assertFalse(parsed.getResumeAfter().isPresent());
+    }
+
+    @Test
+    public void parseLegacyTextResumingAfterRow() {
+        final String buckets = "20180301_20180228_20180227_20180226_20180225_20180224_20180223_20180222";
+
+        final LatestVideosPagingState parsed = LatestVideosPagingState
+                .parse(buckets + ",0,," + ADDED_DATE + "," + VIDEO_ID).get();
+
+        assertEquals(0, parsed.getBucketOffset());
+        assertFalse(parsed.getCassandraPagingState().isPresent());
+        assertEquals(ADDED_DATE, parsed.getResumeAfter().get().getAddedDate().getTime());
+        assertEquals(VIDEO_ID, parsed.getResumeAfter().get().getVideoid());
+    }
+
+    @Test
+    public void invalidTokensStartOver() {
+        assertFalse(LatestVideosPagingState.parse(null).isPresent());
+        assertFalse(LatestVideosPagingState.parse("").isPresent());
+        assertFalse(LatestVideosPagingState.parse("not-a-token").isPresent());
+        assertFalse(LatestVideosPagingState.parse("20180301,0,").isPresent());
+        // Unknown version
+        assertFalse(LatestVideosPagingState.parse(Base64.getUrlEncoder().encodeToString(new byte[] { 9, 0, 0 })).isPresent());
+        // Truncated token
+        final String token = new LatestVideosPagingState(LatestVideosBuckets.DAILY, 17000L, 1,
+                Optional.of(CASSANDRA_PAGING_STATE), Optional.empty()).serialize();
+        assertFalse(LatestVideosPagingState.parse(token.substring(0, token.length() - 4)).isPresent());
+    }
+
+    private static LatestVideos resumeAfter(long addedDate, UUID videoId) {
+        final LatestVideos row = new LatestVideos();
+        row.setAddedDate(new Date(addedDate));
+        row.setVideoid(videoId);
+        return row;
+    }
+}
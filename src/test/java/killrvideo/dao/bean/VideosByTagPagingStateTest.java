@@ -0,0 +1,58 @@
+package killrvideo.dao.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.TestPagingStates;
+
+import killrvideo.entity.VideosByTag;
+
+public class VideosByTagPagingStateTest {
+
+    private static final PagingState CASSANDRA_PAGING_STATE = TestPagingStates.of(
+            "SELECT * FROM killrvideo.videos_by_tag WHERE tag = ? AND bucket = ?", (byte) 0x0f, (byte) 0x10);
+
+    @Test
+    public void roundTripOfMonthlyBucket() {
+        final String token = new VideosByTagPagingState(201803, Optional.of(CASSANDRA_PAGING_STATE)).serialize();
+
+        final VideosByTagPagingState parsed = VideosByTagPagingState.parse(token).get();
+
+        assertEquals("201803," + CASSANDRA_PAGING_STATE, token);
+        assertEquals(201803, parsed.getBucket());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void roundTripOfNextBucket() {
+        final VideosByTagPagingState parsed = VideosByTagPagingState
+                .parse(new VideosByTagPagingState(201712, Optional.empty()).serialize()).get();
+
+        assertEquals(201712, parsed.getBucket());
+        assertFalse(parsed.getCassandraPagingState().isPresent());
+    }
+
+    @Test
+    public void roundTripOfUnbucketedPartition() {
+        final VideosByTagPagingState parsed = VideosByTagPagingState
+                .parse(new VideosByTagPagingState(VideosByTag.NO_BUCKET, Optional.of(CASSANDRA_PAGING_STATE)).serialize()).get();
+
+        assertEquals(VideosByTag.NO_BUCKET, parsed.getBucket());
+        assertEquals(CASSANDRA_PAGING_STATE.toString(), parsed.getCassandraPagingState().get().toString());
+    }
+
+    @Test
+    public void invalidTokensStartOver() {
+        assertFalse(VideosByTagPagingState.parse(null).isPresent());
+        assertFalse(VideosByTagPagingState.parse("").isPresent());
+        assertFalse(VideosByTagPagingState.parse("not-a-token").isPresent());
+        // Not a month
+        assertFalse(VideosByTagPagingState.parse("201813").isPresent());
+        assertFalse(VideosByTagPagingState.parse("201803,xyz").isPresent());
+    }
+}
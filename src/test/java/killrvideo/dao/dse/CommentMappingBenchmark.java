@@ -0,0 +1,119 @@
+package killrvideo.dao.dse;
+
+import static killrvideo.utils.TypeConverter.dateToTimestamp;
+import static killrvideo.utils.TypeConverter.uuidToTimeUuid;
+import static killrvideo.utils.TypeConverter.uuidToUuid;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TestRows;
+import com.datastax.driver.core.utils.UUIDs;
+
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.dao.bean.CommentListResult;
+import killrvideo.entity.Comment;
+import killrvideo.entity.Schema;
+
+/**
+ * Cost of mapping a page of comments_by_video rows into a gRPC response : through the {@link Comment} bean and
+ * {@link CommentListResult} as the cached first pages are, or straight into the builders by column index
+ * ({@link CommentDseDao#addVideoComment(GetVideoCommentsResponse.Builder, CommentDseDao.CommentColumns, Row)}).
+ *
+ * <br/>
+ * <br/>
+ *
+ * Run with the GC profiler to get the allocations, <code>gc.alloc.rate.norm</code> divided by <code>rows</code>
+ * being the bytes allocated per row :
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main CommentMappingBenchmark -prof gc
+ * </pre>
+ *
+ * @author DataStax evangelist team.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentMappingBenchmark {
+
+    /** Rows of a page. */
+    @Param({ "10", "100" })
+    public int rows;
+
+    private UUID videoId;
+
+    private List<Row> page;
+
+    private CommentDseDao.CommentColumns columns;
+
+    @Setup
+    public void setup() {
+        // Columns of the comments_by_video queries
+        final TestRows result = new TestRows(Schema.KEYSPACE, Schema.TABLENAME_COMMENTS_BY_VIDEO,
+                Comment.COLUMN_VIDEOID, DataType.uuid(),
+                Comment.COLUMN_COMMENTID, DataType.timeuuid(),
+                Comment.COLUMN_USERID, DataType.uuid(),
+                Comment.COLUMN_COMMENT, DataType.text(),
+                "comment_timestamp", DataType.timestamp());
+        videoId = UUID.randomUUID();
+        page = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            final UUID commentId = UUIDs.timeBased();
+            page.add(result.row(videoId, commentId, UUID.randomUUID(),
+                    "Comment number " + i + " on this video", new Date(UUIDs.unixTimestamp(commentId))));
+        }
+        columns = new CommentDseDao.CommentColumns(result.getColumnDefinitions());
+    }
+
+    @Benchmark
+    public GetVideoCommentsResponse beanPath() {
+        final CommentListResult result = new CommentListResult();
+        for (Row row : page) {
+            result.getComments().add(CommentDseDao.mapRowToComment(row));
+        }
+        // Bean to gRPC response, as GrpcServiceComments does
+        final GetVideoCommentsResponse.Builder builder = GetVideoCommentsResponse.newBuilder();
+        for (Comment c : result.getComments()) {
+            builder.setVideoId(uuidToUuid(c.getVideoid()));
+            builder.addComments(VideoComment.newBuilder()
+                    .setComment(c.getComment())
+                    .setUserId(uuidToUuid(c.getUserid()))
+                    .setCommentId(uuidToTimeUuid(c.getCommentid()))
+                    .setCommentTimestamp(dateToTimestamp(c.getDateOfComment()))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public GetVideoCommentsResponse builderPath() {
+        final GetVideoCommentsResponse.Builder response = GetVideoCommentsResponse.newBuilder();
+        for (Row row : page) {
+            CommentDseDao.addVideoComment(response, columns, row);
+        }
+        response.setVideoId(uuidToUuid(videoId));
+        return response.build();
+    }
+}
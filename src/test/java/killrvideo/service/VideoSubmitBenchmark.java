@@ -0,0 +1,136 @@
+package killrvideo.service;
+
+import static killrvideo.utils.TypeConverter.uuidToUuid;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.dse.DseCluster;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.MappingManager;
+import com.google.common.eventbus.EventBus;
+
+import killrvideo.async.WriteOutbox;
+import killrvideo.cache.LatestVideosWindow;
+import killrvideo.entity.LatestVideos;
+import killrvideo.entity.UserVideos;
+import killrvideo.entity.Video;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
+
+/**
+ * Latency of the writes of a new video (tables 'videos', 'user_videos' and 'latest_videos') with the two
+ * <code>killrvideo.services.video.submit.mode</code> of {@link VideoCatalogService} : one LOGGED batch, or three
+ * idempotent statements executed in parallel with a shared write timestamp, the failed ones going to the
+ * {@link WriteOutbox}.
+ *
+ * <br/>
+ * <br/>
+ *
+ * The writes are those of VideoCatalogService.writeYouTubeVideo(), on a service wired by hand with its default
+ * settings ('latest_videos' bucketed by day, no shard). It needs a cluster with the killrvideo schema,
+ * <code>-Dkillrvideo.bench.contactPoint</code> (default 127.0.0.1), and reports the latency percentiles
+ * (<code>p0.99</code>) of each mode under concurrent submissions :
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main VideoSubmitBenchmark
+ * </pre>
+ *
+ * @author DataStax evangelist team.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class VideoSubmitBenchmark {
+
+    private DseCluster cluster;
+
+    private ScheduledExecutorService scheduler;
+
+    private VideoCatalogService videoCatalogService;
+
+    @Setup
+    public void setup() {
+        cluster = DseCluster.builder()
+                .addContactPoint(System.getProperty("killrvideo.bench.contactPoint", "127.0.0.1"))
+                .build();
+        final DseSession session = cluster.connect();
+        final MappingManager mappingManager = new MappingManager(session);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        final WriteOutbox writeOutbox = new WriteOutbox();
+        ReflectionTestUtils.setField(writeOutbox, "dseSession", session);
+        ReflectionTestUtils.setField(writeOutbox, "scheduler", scheduler);
+        ReflectionTestUtils.setField(writeOutbox, "eventBus", new EventBus());
+        ReflectionTestUtils.setField(writeOutbox, "metricRegistry", metricRegistry);
+        ReflectionTestUtils.setField(writeOutbox, "maxAttempts", 10);
+        ReflectionTestUtils.setField(writeOutbox, "retryDelayMillis", 500L);
+        writeOutbox.init();
+
+        videoCatalogService = new VideoCatalogService();
+        videoCatalogService.dseSession = session;
+        videoCatalogService.videoMapper = mappingManager.mapper(Video.class);
+        videoCatalogService.userVideosMapper = mappingManager.mapper(UserVideos.class);
+        videoCatalogService.latestVideosMapper = mappingManager.mapper(LatestVideos.class);
+        videoCatalogService.scheduler = scheduler;
+        videoCatalogService.writeOutbox = writeOutbox;
+        videoCatalogService.metricRegistry = metricRegistry;
+        // Window of capacity 0 : disabled, not refreshed from the table
+        videoCatalogService.latestVideosWindow = new LatestVideosWindow();
+        ReflectionTestUtils.setField(videoCatalogService, "latestVideosBucketHours", 24);
+        ReflectionTestUtils.setField(videoCatalogService, "latestVideosShards", 1);
+        ReflectionTestUtils.setField(videoCatalogService, "submitMode", VideoCatalogService.SUBMIT_MODE_LOGGED_BATCH);
+        videoCatalogService.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+        cluster.close();
+    }
+
+    @Benchmark
+    public void loggedBatch() {
+        videoCatalogService.writeYouTubeVideo(video(), false).join();
+    }
+
+    @Benchmark
+    public void parallelIdempotent() {
+        videoCatalogService.writeYouTubeVideo(video(), true).join();
+    }
+
+    /**
+     * Submission of a new video.
+     */
+    private static SubmitYouTubeVideoRequest video() {
+        return SubmitYouTubeVideoRequest.newBuilder()
+                .setVideoId(uuidToUuid(UUID.randomUUID()))
+                .setUserId(uuidToUuid(UUID.randomUUID()))
+                .setName("Benchmark video")
+                .setDescription("Video written by VideoSubmitBenchmark")
+                .setYouTubeVideoId("dQw4w9WgXcQ")
+                .addTags("benchmark")
+                .build();
+    }
+}